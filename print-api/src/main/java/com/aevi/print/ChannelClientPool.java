@@ -0,0 +1,318 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.aevi.android.rxmessenger.ChannelClient;
+import com.aevi.android.rxmessenger.Channels;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+/**
+ * Keeps bound {@link ChannelClient} connections to the print services warm so that they can be reused between requests.
+ *
+ * The messenger protocol does not tag replies with a request id, so a single channel can only carry one conversation at a time.
+ * Concurrent requests to the same service therefore lease separate connections, and a connection is handed back to the pool once
+ * its conversation has completed. Connections that are not used again within the idle timeout are unbound.
+ */
+class ChannelClientPool {
+
+    private static final String TAG = ChannelClientPool.class.getSimpleName();
+
+    static final int MAX_IDLE_CLIENTS_PER_COMPONENT = 4;
+
+    private final Context context;
+    private final long idleTimeoutMs;
+    private final Scheduler scheduler;
+    private final Map<ComponentName, Deque<IdleClient>> idleClients = new HashMap<>();
+    // incremented when all connections are closed, so that connections leased before are not pooled again
+    private int generation;
+
+    ChannelClientPool(Context context, long idleTimeoutMs, Scheduler scheduler) {
+        // only the application context is held, so that a pool created from an Activity does not leak it
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Sends an idempotent message (e.g. a settings or status request) over a pooled connection to the given service. The connection is
+     * returned to the pool if the service completes the conversation, otherwise it is closed. If a reused connection turns out to be
+     * dead before any reply has been received the message is sent again over a fresh connection.
+     *
+     * @param componentName The service to send the message to
+     * @param message       The message to send
+     * @return An observable stream of replies from the service
+     */
+    Observable<String> sendMessage(ComponentName componentName, String message) {
+        return sendMessage(componentName, message, true, null);
+    }
+
+    /**
+     * Sends a message over a pooled connection to the given service, reporting the time it took to bind the connection.
+     *
+     * A message that is not idempotent, such as a print payload, is never sent twice: if the connection fails it can not be known
+     * whether the service has already acted on the message, so the error is passed on instead.
+     *
+     * @param componentName      The service to send the message to
+     * @param message            The message to send
+     * @param idempotent         True if the message may be sent again over a fresh connection when a reused connection turns out to be dead
+     * @param connectionListener Notified once the connection is bound, may be null
+     * @return An observable stream of replies from the service
+     * @see #sendMessage(ComponentName, String)
+     */
+    Observable<String> sendMessage(final ComponentName componentName, final String message, boolean idempotent,
+                                   final ConnectionListener connectionListener) {
+        if (!idempotent) {
+            return Observable.defer(new Callable<ObservableSource<String>>() {
+                @Override
+                public ObservableSource<String> call() throws Exception {
+                    return send(acquire(componentName), message, connectionListener);
+                }
+            });
+        }
+        return Observable.defer(new Callable<ObservableSource<String>>() {
+            @Override
+            public ObservableSource<String> call() throws Exception {
+                final Lease lease = acquire(componentName);
+                final AtomicBoolean receivedReply = new AtomicBoolean();
+                Observable<String> replies = send(lease, message, connectionListener)
+                        .doOnNext(new Consumer<String>() {
+                            @Override
+                            public void accept(String reply) throws Exception {
+                                receivedReply.set(true);
+                            }
+                        });
+                if (!lease.isReused()) {
+                    return replies;
+                }
+                return replies.onErrorResumeNext(new Function<Throwable, ObservableSource<String>>() {
+                    @Override
+                    public ObservableSource<String> apply(Throwable throwable) throws Exception {
+                        if (receivedReply.get()) {
+                            return Observable.error(throwable);
+                        }
+                        Log.d(TAG, "Pooled connection to " + componentName.getClassName() + " failed, reconnecting", throwable);
+                        return send(acquireNew(componentName), message, connectionListener);
+                    }
+                });
+            }
+        });
+    }
+
+    private Observable<String> send(final Lease lease, String message, ConnectionListener connectionListener) {
+        final AtomicBoolean completed = new AtomicBoolean();
+        return sendOnLease(lease, message, connectionListener)
+                .doOnComplete(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        completed.set(true);
+                    }
+                })
+                .doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        release(lease, completed.get());
+                    }
+                });
+    }
+
+    /**
+     * Sends a message over a connection that has already been leased. The lease is not released.
+     *
+     * If a connection listener is given the connection is bound explicitly before the message is sent, so that the bind time can be
+     * reported. A connection that is already bound is reported with a bind time of zero.
+     *
+     * @param lease              The leased connection
+     * @param message            The message to send
+     * @param connectionListener Notified once the connection is bound, may be null
+     * @return An observable stream of replies from the service
+     */
+    Observable<String> sendOnLease(Lease lease, final String message, final ConnectionListener connectionListener) {
+        final ChannelClient client = lease.getClient();
+        if (connectionListener == null) {
+            return client.sendMessage(message);
+        }
+        return Observable.defer(new Callable<ObservableSource<String>>() {
+            @Override
+            public ObservableSource<String> call() throws Exception {
+                if (client.isConnected()) {
+                    connectionListener.onConnected(0);
+                    return client.sendMessage(message);
+                }
+                final long start = SystemClock.elapsedRealtime();
+                return client.connect()
+                        .doOnComplete(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                connectionListener.onConnected(SystemClock.elapsedRealtime() - start);
+                            }
+                        })
+                        .andThen(Observable.defer(new Callable<ObservableSource<String>>() {
+                            @Override
+                            public ObservableSource<String> call() throws Exception {
+                                return client.sendMessage(message);
+                            }
+                        }));
+            }
+        });
+    }
+
+    /**
+     * Leases a connection to the given service, reusing an idle one if available.
+     *
+     * @param componentName The service to connect to
+     * @return A lease that must be handed back via {@link #release(Lease, boolean)}
+     */
+    synchronized Lease acquire(ComponentName componentName) {
+        Deque<IdleClient> idle = idleClients.get(componentName);
+        while (idle != null && !idle.isEmpty()) {
+            IdleClient idleClient = idle.pollFirst();
+            idleClient.expiry.dispose();
+            if (idleClient.client.isConnected()) {
+                return new Lease(componentName, idleClient.client, true, generation);
+            }
+            idleClient.client.closeConnection();
+        }
+        return acquireNew(componentName);
+    }
+
+    private synchronized Lease acquireNew(ComponentName componentName) {
+        return new Lease(componentName, createChannelClient(componentName), false, generation);
+    }
+
+    /**
+     * Hands a leased connection back to the pool.
+     *
+     * @param lease    The lease to return
+     * @param reusable True if the conversation over this connection completed and it can carry another one
+     */
+    synchronized void release(final Lease lease, boolean reusable) {
+        final ChannelClient client = lease.getClient();
+        Deque<IdleClient> idle = idleClients.get(lease.getComponentName());
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleClients.put(lease.getComponentName(), idle);
+        }
+        if (!reusable || lease.generation != generation || idleTimeoutMs <= 0 || idle.size() >= MAX_IDLE_CLIENTS_PER_COMPONENT
+                || !client.isConnected()) {
+            client.closeConnection();
+            return;
+        }
+        final Deque<IdleClient> idleForComponent = idle;
+        final IdleClient idleClient = new IdleClient(client);
+        idleClient.expiry = scheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ChannelClientPool.this) {
+                    if (!idleForComponent.remove(idleClient)) {
+                        return;
+                    }
+                }
+                client.closeConnection();
+            }
+        }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+        idle.addFirst(idleClient);
+    }
+
+    /**
+     * Closes all idle connections held by this pool. Connections that are currently leased are closed when they are released instead of
+     * being pooled. Connections leased afterwards are pooled as usual.
+     */
+    synchronized void closeConnections() {
+        generation++;
+        for (Deque<IdleClient> idle : idleClients.values()) {
+            for (IdleClient idleClient : idle) {
+                idleClient.expiry.dispose();
+                idleClient.client.closeConnection();
+            }
+            idle.clear();
+        }
+    }
+
+    synchronized int getIdleCount(ComponentName componentName) {
+        Deque<IdleClient> idle = idleClients.get(componentName);
+        return idle == null ? 0 : idle.size();
+    }
+
+    ChannelClient createChannelClient(ComponentName componentName) {
+        return Channels.messenger(context, componentName);
+    }
+
+    /**
+     * Notified when a connection used for a request has been bound.
+     */
+    interface ConnectionListener {
+
+        /**
+         * @param bindTimeMs The time in milliseconds it took to bind the connection, or zero if it was already bound
+         */
+        void onConnected(long bindTimeMs);
+    }
+
+    static final class Lease {
+
+        private final ComponentName componentName;
+        private final ChannelClient client;
+        private final boolean reused;
+        private final int generation;
+
+        Lease(ComponentName componentName, ChannelClient client, boolean reused, int generation) {
+            this.componentName = componentName;
+            this.client = client;
+            this.reused = reused;
+            this.generation = generation;
+        }
+
+        ComponentName getComponentName() {
+            return componentName;
+        }
+
+        ChannelClient getClient() {
+            return client;
+        }
+
+        boolean isReused() {
+            return reused;
+        }
+    }
+
+    private static final class IdleClient {
+
+        private final ChannelClient client;
+        private Disposable expiry;
+
+        IdleClient(ChannelClient client) {
+            this.client = client;
+        }
+    }
+}
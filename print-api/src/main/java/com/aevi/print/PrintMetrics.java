@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import com.aevi.print.model.PrintJob;
+
+/**
+ * The timing and size metrics of a single print job. All times are in milliseconds and measured from the moment the print was
+ * subscribed to.
+ */
+public final class PrintMetrics {
+
+    private final String printerId;
+    private final int rowCount;
+    private final int payloadBytes;
+    private final int uncompressedPayloadBytes;
+    private final int imageBytes;
+    private final long serializationTimeMs;
+    private final long bindTimeMs;
+    private final long timeToFirstStateMs;
+    private final long totalTimeMs;
+    private final PrintJob.State finalState;
+    private final String failedReason;
+
+    PrintMetrics(String printerId, int rowCount, int payloadBytes, int uncompressedPayloadBytes, int imageBytes, long serializationTimeMs,
+                 long bindTimeMs, long timeToFirstStateMs, long totalTimeMs, PrintJob.State finalState, String failedReason) {
+        this.printerId = printerId;
+        this.rowCount = rowCount;
+        this.payloadBytes = payloadBytes;
+        this.uncompressedPayloadBytes = uncompressedPayloadBytes;
+        this.imageBytes = imageBytes;
+        this.serializationTimeMs = serializationTimeMs;
+        this.bindTimeMs = bindTimeMs;
+        this.timeToFirstStateMs = timeToFirstStateMs;
+        this.totalTimeMs = totalTimeMs;
+        this.finalState = finalState;
+        this.failedReason = failedReason;
+    }
+
+    /**
+     * @return The id of the printer the payload was addressed to, or null for the default printer
+     */
+    public String getPrinterId() {
+        return printerId;
+    }
+
+    /**
+     * @return The number of rows in the payload
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The size of the serialized payload in bytes as sent, i.e. after compression if it was compressed
+     */
+    public int getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * @return The size of the serialized payload in bytes before compression. This is the same as {@link #getPayloadBytes()} if the
+     * payload was not compressed
+     */
+    public int getUncompressedPayloadBytes() {
+        return uncompressedPayloadBytes;
+    }
+
+    /**
+     * @return The number of bytes of the serialized payload taken up by images
+     */
+    public int getImageBytes() {
+        return imageBytes;
+    }
+
+    /**
+     * @return The time it took to serialize the payload
+     */
+    public long getSerializationTimeMs() {
+        return serializationTimeMs;
+    }
+
+    /**
+     * @return The time it took to bind to the print service, or zero if a pooled connection was reused
+     */
+    public long getBindTimeMs() {
+        return bindTimeMs;
+    }
+
+    /**
+     * @return The time until the first {@link PrintJob} update was received, or -1 if none was received
+     */
+    public long getTimeToFirstStateMs() {
+        return timeToFirstStateMs;
+    }
+
+    /**
+     * @return The time until the job reached its final state, or until the stream of updates ended if it did not reach one
+     */
+    public long getTotalTimeMs() {
+        return totalTimeMs;
+    }
+
+    /**
+     * @return {@link PrintJob.State#PRINTED} or {@link PrintJob.State#FAILED}, or null if the job was disposed before it reached a final
+     * state
+     */
+    public PrintJob.State getFinalState() {
+        return finalState;
+    }
+
+    /**
+     * @return The reason the job failed (see {@link com.aevi.print.model.PrinterMessages}), or null if it did not fail
+     */
+    public String getFailedReason() {
+        return failedReason;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("printerId=%s,rows=%d,bytes=%d,uncompressedBytes=%d,imageBytes=%d,serializationMs=%d,bindMs=%d,firstStateMs=%d,"
+                                     + "totalMs=%d,state=%s,reason=%s",
+                             printerId, rowCount, payloadBytes, uncompressedPayloadBytes, imageBytes, serializationTimeMs, bindTimeMs, timeToFirstStateMs, totalTimeMs,
+                             finalState, failedReason);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+/**
+ * Receives timing and size metrics for the print jobs sent via a {@link PrinterManager}.
+ *
+ * Set a listener via {@link PrinterManagerConfig.Builder#withPrintMetricsListener(PrintMetricsListener)}. Use
+ * {@link PrintMetricsRegistry} to aggregate the metrics per printer.
+ */
+public interface PrintMetricsListener {
+
+    /**
+     * Called once for every print job when its stream of {@link com.aevi.print.model.PrintJob} updates ends.
+     *
+     * This method is called on the thread that delivered the last update and should return quickly.
+     *
+     * @param printMetrics The metrics of the print job
+     */
+    void onPrintMetrics(PrintMetrics printMetrics);
+}
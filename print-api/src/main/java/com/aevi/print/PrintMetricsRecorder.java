@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.aevi.print.model.PreparedPrintPayload;
+import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PrinterMessages;
+
+/**
+ * Collects the metrics of one print job and hands them to a {@link PrintMetricsListener} when the job ends.
+ */
+class PrintMetricsRecorder implements ChannelClientPool.ConnectionListener {
+
+    private static final String TAG = PrintMetricsRecorder.class.getSimpleName();
+
+    private final PrintMetricsListener listener;
+    private final PreparedPrintPayload preparedPayload;
+    private long start;
+    private long bindTimeMs;
+    private long timeToFirstStateMs = -1;
+    private long totalTimeMs = -1;
+    private PrintJob.State finalState;
+    private String failedReason;
+    private boolean reported;
+
+    PrintMetricsRecorder(PrintMetricsListener listener, PreparedPrintPayload preparedPayload) {
+        this.listener = listener;
+        this.preparedPayload = preparedPayload;
+    }
+
+    synchronized void onStart() {
+        start = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public synchronized void onConnected(long bindTimeMs) {
+        // a pooled connection that turns out to be dead is replaced, so the bind times are added up
+        this.bindTimeMs += bindTimeMs;
+    }
+
+    synchronized void onPrintJob(PrintJob printJob) {
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        if (timeToFirstStateMs < 0) {
+            timeToFirstStateMs = elapsed;
+        }
+        if (finalState == null && printJob.getPrintJobState() != PrintJob.State.IN_PROGRESS) {
+            totalTimeMs = elapsed;
+            finalState = printJob.getPrintJobState();
+            failedReason = printJob.getFailedReason();
+        }
+    }
+
+    synchronized void onError(Throwable throwable) {
+        if (finalState == null) {
+            totalTimeMs = SystemClock.elapsedRealtime() - start;
+            finalState = PrintJob.State.FAILED;
+            failedReason = PrinterMessages.ERROR_PRINT_FAILED;
+        }
+    }
+
+    void report() {
+        PrintMetrics printMetrics;
+        synchronized (this) {
+            if (reported) {
+                return;
+            }
+            reported = true;
+            printMetrics = new PrintMetrics(preparedPayload.getPrinterId(), preparedPayload.getRowCount(), preparedPayload.getByteSize(),
+                                            preparedPayload.getUncompressedByteSize(), preparedPayload.getImageByteSize(), preparedPayload.getSerializationTimeMs(), bindTimeMs,
+                                            timeToFirstStateMs, totalTimeMs >= 0 ? totalTimeMs : SystemClock.elapsedRealtime() - start,
+                                            finalState, failedReason);
+        }
+        try {
+            listener.onPrintMetrics(printMetrics);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Print metrics listener failed", e);
+        }
+    }
+}
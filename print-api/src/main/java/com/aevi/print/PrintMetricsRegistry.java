@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import com.aevi.print.model.PrintJob;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link PrintMetricsListener} that aggregates print metrics per printer into histograms.
+ *
+ * Use {@link #getSummary(String)} to take a snapshot of the metrics of a printer, for example to report slow printers or oversized
+ * receipts.
+ */
+public class PrintMetricsRegistry implements PrintMetricsListener {
+
+    private static final String DEFAULT_PRINTER = "";
+
+    private final Map<String, PrinterMetrics> printerMetrics = new HashMap<>();
+
+    @Override
+    public synchronized void onPrintMetrics(PrintMetrics printMetrics) {
+        String key = printerKey(printMetrics.getPrinterId());
+        PrinterMetrics metrics = printerMetrics.get(key);
+        if (metrics == null) {
+            metrics = new PrinterMetrics();
+            printerMetrics.put(key, metrics);
+        }
+        metrics.record(printMetrics);
+    }
+
+    /**
+     * @return The ids of the printers that metrics have been recorded for. The default printer is included as null
+     */
+    public synchronized Set<String> getPrinterIds() {
+        Set<String> printerIds = new HashSet<>();
+        for (String key : printerMetrics.keySet()) {
+            printerIds.add(DEFAULT_PRINTER.equals(key) ? null : key);
+        }
+        return printerIds;
+    }
+
+    /**
+     * @param printerId The printer id, or null for the default printer
+     * @return A snapshot of the metrics recorded for the printer
+     */
+    public synchronized Summary getSummary(String printerId) {
+        PrinterMetrics metrics = printerMetrics.get(printerKey(printerId));
+        return metrics == null ? new PrinterMetrics().snapshot() : metrics.snapshot();
+    }
+
+    /**
+     * Discards all recorded metrics.
+     */
+    public synchronized void reset() {
+        printerMetrics.clear();
+    }
+
+    private static String printerKey(String printerId) {
+        return printerId == null || printerId.isEmpty() ? DEFAULT_PRINTER : printerId;
+    }
+
+    private static final class PrinterMetrics {
+
+        private final Histogram serializationTimeMs = new Histogram();
+        private final Histogram bindTimeMs = new Histogram();
+        private final Histogram timeToFirstStateMs = new Histogram();
+        private final Histogram totalTimeMs = new Histogram();
+        private final Histogram payloadBytes = new Histogram();
+        private final Histogram uncompressedPayloadBytes = new Histogram();
+        private final Histogram imageBytes = new Histogram();
+        private final Map<String, Integer> failedReasons = new HashMap<>();
+        private int jobCount;
+        private int printedCount;
+        private int failedCount;
+
+        void record(PrintMetrics printMetrics) {
+            jobCount++;
+            serializationTimeMs.record(printMetrics.getSerializationTimeMs());
+            bindTimeMs.record(printMetrics.getBindTimeMs());
+            timeToFirstStateMs.record(printMetrics.getTimeToFirstStateMs());
+            totalTimeMs.record(printMetrics.getTotalTimeMs());
+            payloadBytes.record(printMetrics.getPayloadBytes());
+            uncompressedPayloadBytes.record(printMetrics.getUncompressedPayloadBytes());
+            imageBytes.record(printMetrics.getImageBytes());
+            if (printMetrics.getFinalState() == PrintJob.State.PRINTED) {
+                printedCount++;
+            } else if (printMetrics.getFinalState() == PrintJob.State.FAILED) {
+                failedCount++;
+                String reason = printMetrics.getFailedReason();
+                Integer count = failedReasons.get(reason);
+                failedReasons.put(reason, count == null ? 1 : count + 1);
+            }
+        }
+
+        Summary snapshot() {
+            return new Summary(jobCount, printedCount, failedCount, new HashMap<>(failedReasons), serializationTimeMs.copy(), bindTimeMs.copy(),
+                               timeToFirstStateMs.copy(), totalTimeMs.copy(), payloadBytes.copy(), uncompressedPayloadBytes.copy(),
+                               imageBytes.copy());
+        }
+    }
+
+    /**
+     * A snapshot of the metrics recorded for a printer.
+     */
+    public static final class Summary {
+
+        private final int jobCount;
+        private final int printedCount;
+        private final int failedCount;
+        private final Map<String, Integer> failedReasons;
+        private final Histogram serializationTimeMs;
+        private final Histogram bindTimeMs;
+        private final Histogram timeToFirstStateMs;
+        private final Histogram totalTimeMs;
+        private final Histogram payloadBytes;
+        private final Histogram uncompressedPayloadBytes;
+        private final Histogram imageBytes;
+
+        Summary(int jobCount, int printedCount, int failedCount, Map<String, Integer> failedReasons, Histogram serializationTimeMs,
+                Histogram bindTimeMs, Histogram timeToFirstStateMs, Histogram totalTimeMs, Histogram payloadBytes,
+                Histogram uncompressedPayloadBytes, Histogram imageBytes) {
+            this.jobCount = jobCount;
+            this.printedCount = printedCount;
+            this.failedCount = failedCount;
+            this.failedReasons = Collections.unmodifiableMap(failedReasons);
+            this.serializationTimeMs = serializationTimeMs;
+            this.bindTimeMs = bindTimeMs;
+            this.timeToFirstStateMs = timeToFirstStateMs;
+            this.totalTimeMs = totalTimeMs;
+            this.payloadBytes = payloadBytes;
+            this.uncompressedPayloadBytes = uncompressedPayloadBytes;
+            this.imageBytes = imageBytes;
+        }
+
+        /**
+         * @return The number of print jobs recorded
+         */
+        public int getJobCount() {
+            return jobCount;
+        }
+
+        /**
+         * @return The number of print jobs that were printed
+         */
+        public int getPrintedCount() {
+            return printedCount;
+        }
+
+        /**
+         * @return The number of print jobs that failed
+         */
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return The number of failed print jobs per failure reason
+         */
+        public Map<String, Integer> getFailedReasons() {
+            return failedReasons;
+        }
+
+        /**
+         * @return The time in milliseconds it took to serialize payloads
+         */
+        public Histogram getSerializationTimeMs() {
+            return serializationTimeMs;
+        }
+
+        /**
+         * @return The time in milliseconds it took to bind to the print service
+         */
+        public Histogram getBindTimeMs() {
+            return bindTimeMs;
+        }
+
+        /**
+         * @return The time in milliseconds until the first print job update was received
+         */
+        public Histogram getTimeToFirstStateMs() {
+            return timeToFirstStateMs;
+        }
+
+        /**
+         * @return The time in milliseconds until print jobs reached their final state
+         */
+        public Histogram getTotalTimeMs() {
+            return totalTimeMs;
+        }
+
+        /**
+         * @return The size of serialized payloads in bytes as sent
+         */
+        public Histogram getPayloadBytes() {
+            return payloadBytes;
+        }
+
+        /**
+         * @return The size of serialized payloads in bytes before compression
+         */
+        public Histogram getUncompressedPayloadBytes() {
+            return uncompressedPayloadBytes;
+        }
+
+        /**
+         * @return The number of bytes of serialized payloads taken up by images
+         */
+        public Histogram getImageBytes() {
+            return imageBytes;
+        }
+    }
+}
@@ -25,11 +25,13 @@ import android.util.Log;
 import com.aevi.print.model.Alignment;
 import com.aevi.print.model.FontStyle;
 import com.aevi.print.model.ImageRow;
+import com.aevi.print.model.PrintEstimate;
 import com.aevi.print.model.PrintPayload;
 import com.aevi.print.model.PrintRow;
 import com.aevi.print.model.PrinterFont;
 import com.aevi.print.model.PrinterSettings;
 import com.aevi.print.model.TextRow;
+import com.aevi.print.model.TextWrapper;
 import com.aevi.print.model.Underline;
 
 import java.io.ByteArrayOutputStream;
@@ -42,12 +44,6 @@ public final class PrintPreview {
 
     private static final String TAG = PrintPreview.class.getSimpleName();
 
-    // margin used to add some padding between images and at the start/end of the print preview
-    private static final int VERTICAL_MARGIN = 8;
-    // font to be used for preview if printer driver returns no font details
-    protected static final PrinterFont UNKNOWN_FONT =
-            new PrinterFont(PrinterFont.DEFAULT_FONT, "Unknown font", 12, 24, true, 48, 32, FontStyle.values());
-
     private final PrintPayload printPayload;
     private final PrinterSettings printerSettings;
     private final Canvas canvas;
@@ -60,7 +56,7 @@ public final class PrintPreview {
         this.availableWidth = Math.round(printerSettings.getPaperDotsPerMm() * printerSettings.getPrintableWidth());
         this.printPayload = printPayload;
         this.printerSettings = printerSettings;
-        setupDefaultFont();
+        this.defaultFont = printerSettings.getDefaultFont();
         bitmap = Bitmap.createBitmap(availableWidth, determineHeight(), Bitmap.Config.ARGB_8888);
         canvas = new Canvas(bitmap);
         fillBitmap();
@@ -83,7 +79,7 @@ public final class PrintPreview {
      * @return A scaled bitmap that can be shown on the screen to provide an indication of what the exact printout will look like
      */
     public Bitmap getScaledBitmap(Context context) {
-        cursor = VERTICAL_MARGIN;
+        cursor = PrintEstimate.VERTICAL_MARGIN;
         DisplayMetrics metrics = context.getResources().getDisplayMetrics();
         Bitmap bitmap = getBitmap();
         float pxPerMm = metrics.xdpi / 25.4f; // convert from dpi to dpmm
@@ -104,50 +100,40 @@ public final class PrintPreview {
     }
 
     private void fillBitmap() {
-        for (PrintRow row : processRowsBeforePreviewing(printPayload.getRows())) {
-            try {
-                if (row instanceof TextRow) {
-                    drawTextRow((TextRow) row);
-                } else if (row instanceof ImageRow) {
-                    drawImageRow((ImageRow) row);
+        // long text rows are split one at a time, so that only the lines of the current row are held in memory
+        for (PrintRow row : printPayload.getRowView()) {
+            if (row instanceof TextRow) {
+                for (TextRow line : splitLongTextRow((TextRow) row)) {
+                    drawRow(line);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to add item to print receipt", e);
+            } else {
+                drawRow(row);
             }
         }
     }
 
-    private List<PrintRow> processRowsBeforePreviewing(PrintRow[] rows) {
-        List<PrintRow> result = new ArrayList<>();
-        for (PrintRow row : rows) {
+    private void drawRow(PrintRow row) {
+        try {
             if (row instanceof TextRow) {
-                result.addAll(splitLongTextRow((TextRow) row));
-            } else {
-                result.add(row);
+                drawTextRow((TextRow) row);
+            } else if (row instanceof ImageRow) {
+                drawImageRow((ImageRow) row);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to add item to print receipt", e);
         }
-        return result;
     }
 
     protected List<TextRow> splitLongTextRow(TextRow textRow) {
         List<TextRow> result = new ArrayList<>();
         PrinterFont font = getFont(textRow.getPrinterFontId());
-        String line = textRow.getText();
-        String remaining = "";
-        while (line.length() > 0) {
-            if (line.length() > font.getNumColumns()) {
-                remaining = line.charAt(line.length() - 1) + remaining;
-                line = line.substring(0, line.length() - 1);
-            } else {
-                TextRow newRow = new TextRow(line)
-                        .align(textRow.getAlignmentStyle())
-                        .fontStyle(textRow.getFontStyle())
-                        .underline(textRow.getUnderlineStyle())
-                        .setFont(font);
-                result.add(newRow);
-                line = remaining;
-                remaining = "";
-            }
+        for (String line : TextWrapper.wrap(textRow.getText(), font.getNumColumns())) {
+            TextRow newRow = new TextRow(line)
+                    .align(textRow.getAlignmentStyle())
+                    .fontStyle(textRow.getFontStyle())
+                    .underline(textRow.getUnderlineStyle())
+                    .setFont(font);
+            result.add(newRow);
         }
         return result;
     }
@@ -158,47 +144,11 @@ public final class PrintPreview {
      * @return The estimated height in pixels
      */
     public int determineHeight() {
-        int height = 0;
-        for (PrintRow row : processRowsBeforePreviewing(printPayload.getRows())) {
-            if (row instanceof TextRow) {
-                PrinterFont font = getFont(((TextRow) row).getPrinterFontId());
-                height += font.getLineHeight();
-            } else if (row instanceof ImageRow) {
-                height += ((ImageRow) row).getImage().getHeight() + VERTICAL_MARGIN * 2;
-            }
-        }
-        return height + VERTICAL_MARGIN * 2;
-    }
-
-    private void setupDefaultFont() {
-        PrinterFont[] fonts = printerSettings.getPrinterFonts();
-        if (fonts != null && fonts.length > 0) {
-            for (PrinterFont font : printerSettings.getPrinterFonts()) {
-                if (font.isDefault()) {
-                    defaultFont = font;
-                    return;
-                }
-            }
-            defaultFont = fonts[0];
-            return;
-        }
-        defaultFont = UNKNOWN_FONT;
+        return PrintEstimate.measureHeight(printPayload, printerSettings);
     }
 
     private PrinterFont getFont(int printerFontId) {
-
-        if (printerFontId == PrinterFont.DEFAULT_FONT) {
-            return defaultFont;
-        }
-
-        if (printerSettings.getPrinterFonts() != null) {
-            for (PrinterFont font : printerSettings.getPrinterFonts()) {
-                if (font.getId() == printerFontId) {
-                    return font;
-                }
-            }
-        }
-        return UNKNOWN_FONT;
+        return printerFontId == PrinterFont.DEFAULT_FONT ? defaultFont : printerSettings.getFont(printerFontId);
     }
 
     private void drawTextRow(TextRow textRow) {
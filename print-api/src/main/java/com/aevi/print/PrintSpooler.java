@@ -0,0 +1,373 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import android.util.Log;
+
+import com.aevi.print.model.PreparedPrintPayload;
+import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PrintPayload;
+import com.aevi.print.model.PrinterMessages;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Cancellable;
+import io.reactivex.observers.DisposableObserver;
+import io.reactivex.schedulers.Schedulers;
+
+import static com.aevi.print.util.Preconditions.checkArgument;
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * A client side print queue that sits on top of a {@link PrinterManager}.
+ *
+ * Payloads are queued per printer and sent one at a time. The next payload is sent as soon as the previous {@link PrintJob} has reached
+ * {@link PrintJob.State#PRINTED} or {@link PrintJob.State#FAILED}. If the print service reports the printer as
+ * {@link PrinterMessages#ERROR_BUSY} (for example because another application is printing) the job stays at the head of its queue and
+ * is sent again after an exponential backoff.
+ */
+public class PrintSpooler {
+
+    private static final String TAG = PrintSpooler.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_BUSY_RETRIES = 10;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 500;
+    public static final long MAX_BACKOFF_MS = 8000;
+
+    private static final String DEFAULT_PRINTER_QUEUE = "";
+
+    private final PrinterManager printerManager;
+    private final int maxBusyRetries;
+    private final long initialBackoffMs;
+    private final Scheduler scheduler;
+    private final Map<String, PrinterQueue> queues = new HashMap<>();
+
+    public PrintSpooler(PrinterManager printerManager) {
+        this(printerManager, DEFAULT_MAX_BUSY_RETRIES, DEFAULT_INITIAL_BACKOFF_MS, Schedulers.computation());
+    }
+
+    /**
+     * @param printerManager   The printer manager used to send the payloads
+     * @param maxBusyRetries   The number of times a job is retried after the printer reported it is busy
+     * @param initialBackoffMs The delay before the first retry of a busy job. The delay doubles for every further retry
+     * @param scheduler        The scheduler used to time retries
+     */
+    public PrintSpooler(PrinterManager printerManager, int maxBusyRetries, long initialBackoffMs, Scheduler scheduler) {
+        this.printerManager = checkNotNull(printerManager, "printerManager must not be null");
+        checkArgument(maxBusyRetries >= 0, "maxBusyRetries must not be negative");
+        checkArgument(initialBackoffMs >= 0, "initialBackoffMs must not be negative");
+        this.maxBusyRetries = maxBusyRetries;
+        this.initialBackoffMs = initialBackoffMs;
+        this.scheduler = checkNotNull(scheduler, "scheduler must not be null");
+    }
+
+    /**
+     * Adds a payload to the queue of the printer it is addressed to. The payload is serialized via
+     * {@link PrinterManager#prepare(PrintPayload)} once for every subscription, so retries do not serialize it again and changes made
+     * after subscribing are not printed. Images put into an image store while preparing it are released when that subscription
+     * terminates or is disposed.
+     *
+     * The payload is prepared and queued when the returned observable is subscribed to. Disposing the subscription removes the payload
+     * from the queue, or stops listening to the print job if it has already been sent.
+     *
+     * @param printPayload The payload to print
+     * @return An observable stream of {@link PrintJob} which indicates the status of the printout. Busy responses that are retried are not
+     * emitted
+     */
+    public Observable<PrintJob> enqueue(final PrintPayload printPayload) {
+        checkNotNull(printPayload, "printPayload must not be null");
+        return Observable.defer(new Callable<ObservableSource<PrintJob>>() {
+            @Override
+            public ObservableSource<PrintJob> call() throws Exception {
+                final PreparedPrintPayload preparedPayload = printerManager.prepare(printPayload);
+                return enqueue(preparedPayload).doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        preparedPayload.releaseImages();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Adds a prepared payload to the queue of the printer it is addressed to.
+     *
+     * @param printPayload The prepared payload to print
+     * @return An observable stream of {@link PrintJob} which indicates the status of the printout. Busy responses that are retried are not
+     * emitted
+     * @see #enqueue(PrintPayload)
+     */
+    public Observable<PrintJob> enqueue(final PreparedPrintPayload printPayload) {
+        checkNotNull(printPayload, "printPayload must not be null");
+        return Observable.create(new ObservableOnSubscribe<PrintJob>() {
+            @Override
+            public void subscribe(ObservableEmitter<PrintJob> emitter) throws Exception {
+                final PrinterQueue queue = getQueue(printPayload);
+                final SpooledJob job = new SpooledJob(queue, printPayload, emitter, now());
+                emitter.setCancellable(new Cancellable() {
+                    @Override
+                    public void cancel() throws Exception {
+                        cancelJob(job);
+                    }
+                });
+                synchronized (PrintSpooler.this) {
+                    if (!emitter.isDisposed()) {
+                        queue.pending.add(job);
+                    }
+                }
+                dispatchNext(queue);
+            }
+        });
+    }
+
+    /**
+     * @param printerId The printer id, or null for the default printer
+     * @return The number of payloads waiting to be sent to the printer, not including the one currently printing
+     */
+    public synchronized int getQueueDepth(String printerId) {
+        PrinterQueue queue = queues.get(queueKey(printerId));
+        return queue == null ? 0 : queue.pending.size();
+    }
+
+    /**
+     * @param printerId The printer id, or null for the default printer
+     * @return A snapshot of the queue statistics for the printer
+     */
+    public synchronized Statistics getStatistics(String printerId) {
+        PrinterQueue queue = queues.get(queueKey(printerId));
+        if (queue == null) {
+            return new Statistics(0, 0, 0, 0, 0);
+        }
+        return new Statistics(queue.pending.size(), queue.dispatchedCount, queue.totalWaitMs, queue.maxWaitMs, queue.busyRetries);
+    }
+
+    private synchronized PrinterQueue getQueue(PreparedPrintPayload printPayload) {
+        String key = queueKey(printPayload.hasPrinterId() ? printPayload.getPrinterId() : null);
+        PrinterQueue queue = queues.get(key);
+        if (queue == null) {
+            queue = new PrinterQueue();
+            queues.put(key, queue);
+        }
+        return queue;
+    }
+
+    private void dispatchNext(PrinterQueue queue) {
+        SpooledJob job;
+        synchronized (this) {
+            if (queue.active != null || queue.pending.isEmpty()) {
+                return;
+            }
+            job = queue.pending.poll();
+            queue.active = job;
+            long waitMs = now() - job.enqueuedAt;
+            queue.dispatchedCount++;
+            queue.totalWaitMs += waitMs;
+            queue.maxWaitMs = Math.max(queue.maxWaitMs, waitMs);
+        }
+        send(job);
+    }
+
+    private void send(SpooledJob job) {
+        JobObserver observer = new JobObserver(job);
+        synchronized (this) {
+            if (job.finished) {
+                return;
+            }
+            job.observer = observer;
+        }
+        printerManager.print(job.printPayload).subscribe(observer);
+    }
+
+    private void retryLater(final SpooledJob job) {
+        long backoffMs = Math.min(MAX_BACKOFF_MS, initialBackoffMs << Math.min(job.busyRetries, 16));
+        Log.d(TAG, "Printer busy, retrying in " + backoffMs + "ms");
+        synchronized (this) {
+            job.busyRetries++;
+            job.queue.busyRetries++;
+            job.retry = scheduler.scheduleDirect(new Runnable() {
+                @Override
+                public void run() {
+                    send(job);
+                }
+            }, backoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void finishJob(SpooledJob job) {
+        synchronized (this) {
+            if (job.finished) {
+                return;
+            }
+            job.finished = true;
+            if (job.retry != null) {
+                job.retry.dispose();
+            }
+            if (job.observer != null) {
+                job.observer.dispose();
+            }
+            if (job.queue.active == job) {
+                job.queue.active = null;
+            }
+        }
+        dispatchNext(job.queue);
+    }
+
+    private void cancelJob(SpooledJob job) {
+        synchronized (this) {
+            job.queue.pending.remove(job);
+        }
+        finishJob(job);
+    }
+
+    private long now() {
+        return scheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    private static String queueKey(String printerId) {
+        return printerId == null || printerId.isEmpty() ? DEFAULT_PRINTER_QUEUE : printerId;
+    }
+
+    private class JobObserver extends DisposableObserver<PrintJob> {
+
+        private final SpooledJob job;
+
+        JobObserver(SpooledJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onNext(PrintJob printJob) {
+            if (printJob.getPrintJobState() == PrintJob.State.FAILED && PrinterMessages.ERROR_BUSY.equals(printJob.getFailedReason())
+                    && job.busyRetries < maxBusyRetries) {
+                dispose();
+                retryLater(job);
+                return;
+            }
+            job.emitter.onNext(printJob);
+            if (printJob.getPrintJobState() != PrintJob.State.IN_PROGRESS) {
+                job.emitter.onComplete();
+                finishJob(job);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            job.emitter.onError(throwable);
+            finishJob(job);
+        }
+
+        @Override
+        public void onComplete() {
+            job.emitter.onComplete();
+            finishJob(job);
+        }
+    }
+
+    private static final class PrinterQueue {
+
+        private final Deque<SpooledJob> pending = new ArrayDeque<>();
+        private SpooledJob active;
+        private int dispatchedCount;
+        private long totalWaitMs;
+        private long maxWaitMs;
+        private int busyRetries;
+    }
+
+    private static final class SpooledJob {
+
+        private final PrinterQueue queue;
+        private final PreparedPrintPayload printPayload;
+        private final ObservableEmitter<PrintJob> emitter;
+        private final long enqueuedAt;
+        private int busyRetries;
+        private boolean finished;
+        private Disposable observer;
+        private Disposable retry;
+
+        SpooledJob(PrinterQueue queue, PreparedPrintPayload printPayload, ObservableEmitter<PrintJob> emitter, long enqueuedAt) {
+            this.queue = queue;
+            this.printPayload = printPayload;
+            this.emitter = emitter;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * A snapshot of the queue statistics for a printer.
+     */
+    public static final class Statistics {
+
+        private final int queueDepth;
+        private final int dispatchedCount;
+        private final long totalWaitMs;
+        private final long maxWaitMs;
+        private final int busyRetries;
+
+        Statistics(int queueDepth, int dispatchedCount, long totalWaitMs, long maxWaitMs, int busyRetries) {
+            this.queueDepth = queueDepth;
+            this.dispatchedCount = dispatchedCount;
+            this.totalWaitMs = totalWaitMs;
+            this.maxWaitMs = maxWaitMs;
+            this.busyRetries = busyRetries;
+        }
+
+        /**
+         * @return The number of payloads waiting to be sent, not including the one currently printing
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return The number of payloads that have been sent to the printer
+         */
+        public int getDispatchedCount() {
+            return dispatchedCount;
+        }
+
+        /**
+         * @return The average time in milliseconds a payload waited in the queue before it was first sent
+         */
+        public long getAverageWaitMs() {
+            return dispatchedCount == 0 ? 0 : totalWaitMs / dispatchedCount;
+        }
+
+        /**
+         * @return The longest time in milliseconds a payload waited in the queue before it was first sent
+         */
+        public long getMaxWaitMs() {
+            return maxWaitMs;
+        }
+
+        /**
+         * @return The number of times a payload was sent again because the printer was busy
+         */
+        public int getBusyRetries() {
+            return busyRetries;
+        }
+    }
+}
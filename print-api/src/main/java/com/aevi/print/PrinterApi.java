@@ -15,9 +15,45 @@ package com.aevi.print;
 
 import android.content.Context;
 
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
 public class PrinterApi {
 
-    public static PrinterManager getPrinterManager(Context context) {
-        return new PrinterManagerImpl(context);
+    private static PrinterManager defaultPrinterManager;
+    private static Context defaultPrinterManagerContext;
+
+    /**
+     * Gets the {@link PrinterManager} of the application, using the default configuration.
+     *
+     * The manager is created once per process and shared by all callers, so that its pooled connections to the print service, cached
+     * printer settings and registered images are reused across calls such as {@code PrinterApi.getPrinterManager(context).print(...)}.
+     * Only the application context is held.
+     *
+     * @param context Any context of the application
+     * @return The shared printer manager
+     */
+    public static synchronized PrinterManager getPrinterManager(Context context) {
+        checkNotNull(context, "context must not be null");
+        Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        if (defaultPrinterManager == null || defaultPrinterManagerContext != applicationContext) {
+            defaultPrinterManager = new PrinterManagerImpl(applicationContext);
+            defaultPrinterManagerContext = applicationContext;
+        }
+        return defaultPrinterManager;
+    }
+
+    /**
+     * Creates a {@link PrinterManager} using the given configuration.
+     *
+     * Unlike {@link #getPrinterManager(Context)} this creates a new manager on every call, and connections to the print service are
+     * pooled per manager, so keep hold of the returned instance rather than creating a new one for every print.
+     *
+     * @param context The Android context
+     * @param config  The configuration to use
+     * @return A printer manager
+     */
+    public static PrinterManager getPrinterManager(Context context, PrinterManagerConfig config) {
+        checkNotNull(config, "config must not be null");
+        return new PrinterManagerImpl(context, config);
     }
 }
\ No newline at end of file
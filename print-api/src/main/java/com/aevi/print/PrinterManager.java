@@ -13,30 +13,144 @@
  */
 package com.aevi.print;
 
+import android.graphics.Bitmap;
+
+import com.aevi.print.model.BatchPrintJob;
 import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PreparedPrintPayload;
 import com.aevi.print.model.PrintPayload;
 import com.aevi.print.model.PrinterSettings;
 import com.aevi.print.model.PrinterSettingsList;
 import com.aevi.print.model.PrinterStatus;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 
 public interface PrinterManager {
 
     /**
+     * The result is cached and only looked up again when the print service package is installed, updated or removed, so this is cheap
+     * enough to call before every operation.
+     *
      * @return True if the printing service is installed and available
      */
     boolean isPrinterServiceAvailable();
 
+    /**
+     * Returns which of the print service components are installed. Like {@link #isPrinterServiceAvailable()} the result is cached until
+     * the print service package changes.
+     *
+     * @return The availability of each print service component
+     */
+    PrinterServiceAvailability getPrinterServiceAvailability();
+
+    /**
+     * Serializes a payload once for sending via {@link #print(PreparedPrintPayload)}.
+     *
+     * Unlike {@link PrintPayload#prepare()} this picks the preferred wire format (see {@link PrinterManagerConfig#getWireFormat()}) if
+     * the printer the payload is addressed to supports it, and JSON otherwise. Likewise images are put into the
+     * {@link PrinterManagerConfig#getImageStore()} if the printer supports it; release them via
+     * {@link PreparedPrintPayload#releaseImages()} once the payload has been printed. Payloads larger than
+     * {@link PrinterManagerConfig#getCompressionThreshold()} are compressed if the printer supports it.
+     *
+     * @param printPayload The payload to prepare
+     * @return The prepared payload
+     */
+    PreparedPrintPayload prepare(PrintPayload printPayload);
+
+    /**
+     * Registers an image under a key, so that payloads can show it via {@link PrintPayload#appendImageRef(String)} without carrying it.
+     *
+     * The image is kept by this manager and, if any printer sets the {@link PrinterSettings#OPTION_IMAGE_REGISTRY} option, uploaded to
+     * the print service once. Payloads then only carry the key for those printers. For other printers, or if the print service reports
+     * the key as unknown ({@link com.aevi.print.model.PrinterMessages#ERROR_UNKNOWN_IMAGE}), the image is sent inline instead.
+     * Registering another image under the same key replaces it.
+     *
+     * The returned completable fails if the print service rejects the image, or with a {@link PrinterTimeoutException} if it does not
+     * reply within {@link PrinterManagerConfig#getPrintTimeoutMs()}. The image is still sent inline in that case.
+     *
+     * @param imageKey The key payloads refer to the image by
+     * @param image    The image
+     * @return A completable that completes once the image can be used
+     */
+    Completable registerImage(String imageKey, Bitmap image);
+
     /**
      * Send a payload for printing
      *
+     * The job must be printed or have failed within {@link PrinterManagerConfig#getPrintTimeoutMs()}, otherwise a
+     * {@link PrintJob.State#FAILED} job with reason {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted.
+     *
      * @param printPayload The payload to print
      * @return An observable stream of {@link PrintJob} which indicates the status of the printout
      */
     Observable<PrintJob> print(PrintPayload printPayload);
 
+    /**
+     * Send a payload that has already been serialized via {@link PrintPayload#prepare()} for printing
+     *
+     * Use this to retry or reprint the same payload without serializing it again.
+     *
+     * @param preparedPayload The prepared payload to print
+     * @return An observable stream of {@link PrintJob} which indicates the status of the printout
+     */
+    Observable<PrintJob> print(PreparedPrintPayload preparedPayload);
+
+    /**
+     * Send a payload for printing with a deadline for this call only
+     *
+     * If the payload has not been printed or failed before the deadline expires, the connection to the print service is closed and a
+     * {@link PrintJob.State#FAILED} job with reason {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted.
+     *
+     * @param printPayload The payload to print
+     * @param timeout      The deadline, overriding {@link PrinterManagerConfig#getPrintTimeoutMs()}. Zero means no deadline
+     * @param unit         The unit of the deadline
+     * @return An observable stream of {@link PrintJob} which indicates the status of the printout
+     */
+    Observable<PrintJob> print(PrintPayload printPayload, long timeout, TimeUnit unit);
+
+    /**
+     * Send a prepared payload for printing with a deadline for this call only
+     *
+     * @param preparedPayload The prepared payload to print
+     * @param timeout         The deadline, overriding {@link PrinterManagerConfig#getPrintTimeoutMs()}. Zero means no deadline
+     * @param unit            The unit of the deadline
+     * @return An observable stream of {@link PrintJob} which indicates the status of the printout
+     * @see #print(PrintPayload, long, TimeUnit)
+     */
+    Observable<PrintJob> print(PreparedPrintPayload preparedPayload, long timeout, TimeUnit unit);
+
+    /**
+     * Send a batch of payloads for printing
+     *
+     * All payloads are sent one after the other over a single connection to the print service. The next payload is sent as soon as the
+     * print service has finished with the previous one.
+     *
+     * Each payload has its own print deadline (see {@link PrinterManagerConfig#getPrintTimeoutMs()}). If it expires a
+     * {@link PrintJob.State#FAILED} job with reason {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted for that payload and
+     * the stream fails with a {@link PrinterTimeoutException} without sending the remaining payloads.
+     *
+     * @param printPayloads The payloads to print, in order
+     * @return An observable stream of {@link BatchPrintJob} which indicates the status of each printout along with its index in the batch
+     */
+    Observable<BatchPrintJob> print(List<PrintPayload> printPayloads);
+
+    /**
+     * Send a stream of payloads for printing
+     *
+     * This works like {@link #print(List)}, but payloads are only requested from the given flowable as the print service is ready for
+     * them. A bounded number of payloads is prepared ahead of the current one (see {@link PrinterManagerConfig#getBatchWindow()}).
+     *
+     * @param printPayloads The payloads to print, in order
+     * @return An observable stream of {@link BatchPrintJob} which indicates the status of each printout along with its index in the stream
+     */
+    Observable<BatchPrintJob> print(Flowable<PrintPayload> printPayloads);
+
     /**
      * Send an action to a printer
      *
@@ -45,25 +159,120 @@ public interface PrinterManager {
      */
     void sendAction(String printerId, String action);
 
+    /**
+     * Send an ordered batch of actions to a printer
+     *
+     * All actions are sent over a single connection to the print service. Each action is only sent once the print service has replied to
+     * the previous one and completed it, so there is no need to wait between actions (e.g. between cutting the paper and opening the cash
+     * drawer).
+     *
+     * If the print service does not complete an action within {@link PrinterManagerConfig#getActionTimeoutMs()}, the stream fails with a
+     * {@link PrinterTimeoutException} without sending the remaining actions. A status of {@link com.aevi.print.model.PrinterMessages#TIMEOUT}
+     * is emitted before that if the printer has not replied to the action at all.
+     *
+     * @param printerId The id of the printer to send the actions to
+     * @param actions   The actions to perform in order (see {@link PrinterSettings#getCommands()} for a list of commands the printer supports)
+     * @return An observable stream emitting one {@link PrinterStatus} per action with the result of that action,
+     * e.g. {@link com.aevi.print.model.PrinterMessages#DRAWER_OPENED}
+     */
+    Observable<PrinterStatus> sendActions(String printerId, String... actions);
+
+    /**
+     * Send an ordered batch of actions to a printer with a deadline for this call only
+     *
+     * @param printerId The id of the printer to send the actions to
+     * @param timeout   The deadline for each action, overriding {@link PrinterManagerConfig#getActionTimeoutMs()}. Zero means no deadline
+     * @param unit      The unit of the deadline
+     * @param actions   The actions to perform in order (see {@link PrinterSettings#getCommands()} for a list of commands the printer supports)
+     * @return An observable stream emitting one {@link PrinterStatus} per action with the result of that action
+     * @see #sendActions(String, String...)
+     */
+    Observable<PrinterStatus> sendActions(String printerId, long timeout, TimeUnit unit, String... actions);
+
     /**
      * A stream of {@link PrinterStatus} indicating the current state of the printer
      *
+     * All subscribers for the same printer share a single connection to the print service. New subscribers immediately receive the
+     * most recent status, and a status is only emitted when it differs from the previous one.
+     *
+     * If the print service does not send a first status within {@link PrinterManagerConfig#getStatusTimeoutMs()}, a status of
+     * {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted and the stream completes.
+     *
      * @param printerId The printerId to listen to
      * @return An observable stream of {@link PrinterStatus}
      */
     Observable<PrinterStatus> status(String printerId);
 
+    /**
+     * Listen to the status of a printer with a deadline for the first status for this call only
+     *
+     * The status stream is shared with the other subscribers to the printer (see {@link #status(String)}), so this deadline only limits how
+     * long this subscriber waits. If no first status has been received within it, a status of
+     * {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted to this subscriber and its stream completes. The shared connection
+     * keeps the deadline of {@link PrinterManagerConfig#getStatusTimeoutMs()}.
+     *
+     * @param printerId The printerId to listen to
+     * @param timeout   The deadline for the first status. Zero means that only the deadline of the configuration applies
+     * @param unit      The unit of the deadline
+     * @return An observable stream of {@link PrinterStatus}
+     */
+    Observable<PrinterStatus> status(String printerId, long timeout, TimeUnit unit);
+
     /**
      * Returns the current settings for the default printer
      *
+     * Fails with a {@link PrinterTimeoutException} if the print service does not reply within
+     * {@link PrinterManagerConfig#getSettingsTimeoutMs()}.
+     *
      * @return A Single which will emit the default printer settings if available
      */
     Single<PrinterSettings> getDefaultPrinterSettings();
 
+    /**
+     * Returns the current settings for the default printer with a deadline for this call only
+     *
+     * Fails with a {@link PrinterTimeoutException} if the settings have not been received within the deadline. Settings are fetched once
+     * for all callers that ask for them at the same time, and that fetch keeps the deadline of
+     * {@link PrinterManagerConfig#getSettingsTimeoutMs()}, so a longer deadline here does not make it wait any longer.
+     *
+     * @param timeout The deadline. Zero means that only the deadline of the configuration applies
+     * @param unit    The unit of the deadline
+     * @return A Single which will emit the default printer settings if available
+     */
+    Single<PrinterSettings> getDefaultPrinterSettings(long timeout, TimeUnit unit);
+
     /**
      * Returns an observable stream which will emit settings for all the available printers
      *
+     * Fails with a {@link PrinterTimeoutException} if the print service does not reply within
+     * {@link PrinterManagerConfig#getSettingsTimeoutMs()}.
+     *
      * @return An observable stream containing a list of {@link PrinterSettings} objects contained in a {@link PrinterSettingsList} object
      */
     Observable<PrinterSettingsList> getPrintersSettings();
+
+    /**
+     * Returns an observable stream which will emit settings for all the available printers, with a deadline for this call only
+     *
+     * @param timeout The deadline. Zero means that only the deadline of the configuration applies
+     * @param unit    The unit of the deadline
+     * @return An observable stream containing a list of {@link PrinterSettings} objects contained in a {@link PrinterSettingsList} object
+     * @see #getDefaultPrinterSettings(long, TimeUnit)
+     */
+    Observable<PrinterSettingsList> getPrintersSettings(long timeout, TimeUnit unit);
+
+    /**
+     * Discards any printer settings cached by this manager, so that the next call to {@link #getDefaultPrinterSettings()} or
+     * {@link #getPrintersSettings()} fetches them from the print service.
+     */
+    void invalidateSettingsCache();
+
+    /**
+     * Closes the connections to the print services that this manager keeps open between requests, instead of waiting for them to time
+     * out (see {@link PrinterManagerConfig#getConnectionIdleTimeoutMs()}). Connections in use are closed as soon as their request ends.
+     *
+     * Call this when the app stops printing, e.g. when the component that uses this manager is destroyed. The manager can still be used
+     * afterwards and opens new connections as needed.
+     */
+    void closeConnections();
 }
@@ -0,0 +1,339 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import com.aevi.print.model.ImageStore;
+import com.aevi.print.model.WireFormat;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.aevi.print.util.Preconditions.checkArgument;
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * Tuning options for a {@link PrinterManager}. Use {@link Builder} to create an instance and pass it to
+ * {@link PrinterApi#getPrinterManager(android.content.Context, PrinterManagerConfig)}.
+ */
+public final class PrinterManagerConfig {
+
+    public static final long DEFAULT_CONNECTION_IDLE_TIMEOUT_MS = 30000;
+    public static final long DEFAULT_SETTINGS_CACHE_TTL_MS = 60000;
+    public static final int DEFAULT_BATCH_WINDOW = 4;
+    public static final long DEFAULT_PRINT_TIMEOUT_MS = 120000;
+    public static final long DEFAULT_ACTION_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_STATUS_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_SETTINGS_TIMEOUT_MS = 10000;
+
+    private final long connectionIdleTimeoutMs;
+    private final long settingsCacheTtlMs;
+    private final int batchWindow;
+    private final PrintMetricsListener printMetricsListener;
+    private final long printTimeoutMs;
+    private final long actionTimeoutMs;
+    private final long statusTimeoutMs;
+    private final long settingsTimeoutMs;
+    private final WireFormat wireFormat;
+    private final ImageStore imageStore;
+    private final int compressionThreshold;
+
+    private PrinterManagerConfig(Builder builder) {
+        this.connectionIdleTimeoutMs = builder.connectionIdleTimeoutMs;
+        this.settingsCacheTtlMs = builder.settingsCacheTtlMs;
+        this.batchWindow = builder.batchWindow;
+        this.printMetricsListener = builder.printMetricsListener;
+        this.printTimeoutMs = builder.printTimeoutMs;
+        this.actionTimeoutMs = builder.actionTimeoutMs;
+        this.statusTimeoutMs = builder.statusTimeoutMs;
+        this.settingsTimeoutMs = builder.settingsTimeoutMs;
+        this.wireFormat = builder.wireFormat;
+        this.imageStore = builder.imageStore;
+        this.compressionThreshold = builder.compressionThreshold;
+    }
+
+    /**
+     * @return A config object with all options set to their defaults
+     */
+    public static PrinterManagerConfig defaultConfig() {
+        return new Builder().build();
+    }
+
+    /**
+     * The time an unused connection to a print service is kept bound before it is released.
+     *
+     * @return The idle timeout in milliseconds. Zero means connections are released as soon as a request completes
+     */
+    public long getConnectionIdleTimeoutMs() {
+        return connectionIdleTimeoutMs;
+    }
+
+    /**
+     * The time printer settings are considered fresh. Settings older than this are still returned, but are refreshed from the print
+     * service in the background.
+     *
+     * @return The settings time-to-live in milliseconds. Zero means settings are not cached
+     */
+    public long getSettingsCacheTtlMs() {
+        return settingsCacheTtlMs;
+    }
+
+    /**
+     * The number of payloads of a batch print that are taken from the source and prepared for sending ahead of the job currently
+     * being printed.
+     *
+     * @return The batch window size
+     */
+    public int getBatchWindow() {
+        return batchWindow;
+    }
+
+    /**
+     * The listener that receives the metrics of every print job.
+     *
+     * @return The print metrics listener, or null if metrics are not collected
+     */
+    public PrintMetricsListener getPrintMetricsListener() {
+        return printMetricsListener;
+    }
+
+    /**
+     * The time a print job may take from being sent until it is printed or has failed.
+     *
+     * @return The print deadline in milliseconds. Zero means print jobs have no deadline
+     */
+    public long getPrintTimeoutMs() {
+        return printTimeoutMs;
+    }
+
+    /**
+     * The time the printer may take to reply to an action.
+     *
+     * @return The action deadline in milliseconds. Zero means actions have no deadline
+     */
+    public long getActionTimeoutMs() {
+        return actionTimeoutMs;
+    }
+
+    /**
+     * The time the print service may take to send the first status of a printer.
+     *
+     * @return The status deadline in milliseconds. Zero means status streams have no deadline
+     */
+    public long getStatusTimeoutMs() {
+        return statusTimeoutMs;
+    }
+
+    /**
+     * The time the print service may take to reply with printer settings.
+     *
+     * @return The settings deadline in milliseconds. Zero means settings requests have no deadline
+     */
+    public long getSettingsTimeoutMs() {
+        return settingsTimeoutMs;
+    }
+
+    /**
+     * The preferred wire format for payloads. It is only used for printers that support it, other printers are sent JSON.
+     *
+     * @return The preferred wire format
+     */
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * The store that images are put into for printers that support it, so that payloads only carry references to them.
+     *
+     * @return The image store, or null if images are always sent inline
+     */
+    public ImageStore getImageStore() {
+        return imageStore;
+    }
+
+    /**
+     * The size in bytes above which payloads are compressed for printers that support it.
+     *
+     * @return The compression threshold, or zero if payloads are never compressed
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public static final class Builder {
+
+        private long connectionIdleTimeoutMs = DEFAULT_CONNECTION_IDLE_TIMEOUT_MS;
+        private long settingsCacheTtlMs = DEFAULT_SETTINGS_CACHE_TTL_MS;
+        private int batchWindow = DEFAULT_BATCH_WINDOW;
+        private PrintMetricsListener printMetricsListener;
+        private long printTimeoutMs = DEFAULT_PRINT_TIMEOUT_MS;
+        private long actionTimeoutMs = DEFAULT_ACTION_TIMEOUT_MS;
+        private long statusTimeoutMs = DEFAULT_STATUS_TIMEOUT_MS;
+        private long settingsTimeoutMs = DEFAULT_SETTINGS_TIMEOUT_MS;
+        private WireFormat wireFormat = WireFormat.JSON;
+        private ImageStore imageStore;
+        private int compressionThreshold;
+
+        /**
+         * Sets how long an unused connection to a print service is kept bound so that it can be reused by the next request.
+         *
+         * @param timeout The idle timeout. Set to zero to disable connection reuse
+         * @param unit    The unit of the timeout
+         * @return This builder
+         */
+        public Builder withConnectionIdleTimeout(long timeout, TimeUnit unit) {
+            checkArgument(timeout >= 0, "timeout must not be negative");
+            checkNotNull(unit, "unit must not be null");
+            this.connectionIdleTimeoutMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * Sets how long printer settings fetched from the print service are considered fresh.
+         *
+         * @param ttl  The time-to-live. Set to zero to disable the settings cache
+         * @param unit The unit of the time-to-live
+         * @return This builder
+         */
+        public Builder withSettingsCacheTtl(long ttl, TimeUnit unit) {
+            checkArgument(ttl >= 0, "ttl must not be negative");
+            checkNotNull(unit, "unit must not be null");
+            this.settingsCacheTtlMs = unit.toMillis(ttl);
+            return this;
+        }
+
+        /**
+         * Sets how many payloads of a batch print are prepared ahead of the job currently being printed.
+         *
+         * @param batchWindow The window size, must be at least one
+         * @return This builder
+         */
+        public Builder withBatchWindow(int batchWindow) {
+            checkArgument(batchWindow > 0, "batchWindow must be greater than zero");
+            this.batchWindow = batchWindow;
+            return this;
+        }
+
+        /**
+         * Sets a listener that receives timing and size metrics for every print job, for example a {@link PrintMetricsRegistry}.
+         *
+         * @param printMetricsListener The listener, or null to stop collecting metrics
+         * @return This builder
+         */
+        public Builder withPrintMetricsListener(PrintMetricsListener printMetricsListener) {
+            this.printMetricsListener = printMetricsListener;
+            return this;
+        }
+
+        /**
+         * Sets how long a print job may take from being sent until it is printed or has failed. When the deadline expires the connection
+         * is closed and a {@link com.aevi.print.model.PrintJob.State#FAILED} job with reason
+         * {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted.
+         *
+         * @param timeout The deadline. Set to zero to disable it
+         * @param unit    The unit of the deadline
+         * @return This builder
+         */
+        public Builder withPrintTimeout(long timeout, TimeUnit unit) {
+            this.printTimeoutMs = toTimeoutMs(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Sets how long the printer may take to reply to an action. When the deadline expires the connection is closed and a
+         * {@link com.aevi.print.model.PrinterStatus} of {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted.
+         *
+         * @param timeout The deadline. Set to zero to disable it
+         * @param unit    The unit of the deadline
+         * @return This builder
+         */
+        public Builder withActionTimeout(long timeout, TimeUnit unit) {
+            this.actionTimeoutMs = toTimeoutMs(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Sets how long the print service may take to send the first status of a printer. When the deadline expires the connection is
+         * closed and a {@link com.aevi.print.model.PrinterStatus} of {@link com.aevi.print.model.PrinterMessages#TIMEOUT} is emitted.
+         *
+         * @param timeout The deadline. Set to zero to disable it
+         * @param unit    The unit of the deadline
+         * @return This builder
+         */
+        public Builder withStatusTimeout(long timeout, TimeUnit unit) {
+            this.statusTimeoutMs = toTimeoutMs(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Sets how long the print service may take to reply with printer settings. When the deadline expires the connection is closed
+         * and the request fails with a {@link PrinterTimeoutException}.
+         *
+         * @param timeout The deadline. Set to zero to disable it
+         * @param unit    The unit of the deadline
+         * @return This builder
+         */
+        public Builder withSettingsTimeout(long timeout, TimeUnit unit) {
+            this.settingsTimeoutMs = toTimeoutMs(timeout, unit);
+            return this;
+        }
+
+        /**
+         * Sets the preferred wire format for payloads. The format is negotiated per printer via
+         * {@link com.aevi.print.model.PrinterSettings#supportsWireFormat(WireFormat)}, and payloads fall back to JSON for printers that
+         * do not support it or whose settings have not been fetched yet.
+         *
+         * @param wireFormat The preferred wire format
+         * @return This builder
+         */
+        public Builder withWireFormat(WireFormat wireFormat) {
+            this.wireFormat = checkNotNull(wireFormat, "wireFormat must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the store that images are put into instead of being sent inline in the payload. It is only used for printers that support
+         * it, see {@link com.aevi.print.model.PrinterSettings#supportsImageStore()}. The images of a payload are released from the
+         * store when its print job ends, unless it was prepared via {@link PrinterManager#prepare(com.aevi.print.model.PrintPayload)}.
+         *
+         * @param imageStore The image store, or null to always send images inline
+         * @return This builder
+         */
+        public Builder withImageStore(ImageStore imageStore) {
+            this.imageStore = imageStore;
+            return this;
+        }
+
+        /**
+         * Sets the size above which payloads are compressed before they are sent. Compression is only used for printers that support
+         * it, see {@link com.aevi.print.model.PrinterSettings#supportsCompression()}, and only if it makes the payload smaller.
+         *
+         * @param thresholdBytes The size of the serialized payload in bytes above which it is compressed. Set to zero to disable compression
+         * @return This builder
+         */
+        public Builder withCompressionThreshold(int thresholdBytes) {
+            checkArgument(thresholdBytes >= 0, "thresholdBytes must not be negative");
+            this.compressionThreshold = thresholdBytes;
+            return this;
+        }
+
+        private static long toTimeoutMs(long timeout, TimeUnit unit) {
+            checkArgument(timeout >= 0, "timeout must not be negative");
+            checkNotNull(unit, "unit must not be null");
+            return unit.toMillis(timeout);
+        }
+
+        public PrinterManagerConfig build() {
+            return new PrinterManagerConfig(this);
+        }
+    }
+}
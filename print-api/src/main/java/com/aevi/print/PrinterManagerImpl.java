@@ -15,75 +15,526 @@ package com.aevi.print;
 
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
 import android.util.Log;
 
-import com.aevi.android.rxmessenger.ChannelClient;
-import com.aevi.android.rxmessenger.Channels;
+import com.aevi.print.model.BatchPrintJob;
+import com.aevi.print.model.ImageRegistration;
+import com.aevi.print.model.ImageStore;
+import com.aevi.print.model.PreparedPrintPayload;
 import com.aevi.print.model.PrintAction;
 import com.aevi.print.model.PrintJob;
 import com.aevi.print.model.PrintPayload;
+import com.aevi.print.model.PrinterMessages;
 import com.aevi.print.model.PrinterSettings;
 import com.aevi.print.model.PrinterSettingsList;
 import com.aevi.print.model.PrinterStatus;
+import com.aevi.print.model.WireFormat;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Completable;
+import io.reactivex.CompletableSource;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
 import io.reactivex.schedulers.Schedulers;
 
+import org.reactivestreams.Publisher;
+
+import static com.aevi.print.util.Preconditions.checkArgument;
+import static com.aevi.print.util.Preconditions.checkNotEmpty;
 import static com.aevi.print.util.Preconditions.checkNotNull;
 
 class PrinterManagerImpl implements PrinterManager {
 
     private static final String TAG = PrinterManagerImpl.class.getSimpleName();
 
-    private static final String PRINT_SERVICE_PACKAGE = "com.aevi.print.service";
-    private static final ComponentName PRINT_MESSENGER_SERVICE_COMPONENT =
+    static final String PRINT_SERVICE_PACKAGE = "com.aevi.print.service";
+    static final ComponentName PRINT_MESSENGER_SERVICE_COMPONENT =
             new ComponentName(PRINT_SERVICE_PACKAGE, "com.aevi.print.service.PrinterMessagingService");
-    private static final ComponentName PRINT_SETTINGS_SERVICE_COMPONENT =
+    static final ComponentName PRINT_SETTINGS_SERVICE_COMPONENT =
             new ComponentName(PRINT_SERVICE_PACKAGE, "com.aevi.print.service.PrinterSettingsService");
-    private static final ComponentName PRINTER_STATUS_SERVICE_COMPONENT =
+    static final ComponentName PRINTER_STATUS_SERVICE_COMPONENT =
             new ComponentName(PRINT_SERVICE_PACKAGE, "com.aevi.print.service.PrinterStatusService");
-    private static final ComponentName PRINTER_ACTION_SERVICE_COMPONENT =
+    static final ComponentName PRINTER_ACTION_SERVICE_COMPONENT =
             new ComponentName(PRINT_SERVICE_PACKAGE, "com.aevi.print.service.PrinterActionService");
 
-    private final Context context;
+    private static final Function<String, PrintJob> PARSE_PRINT_JOB = new Function<String, PrintJob>() {
+        @Override
+        public PrintJob apply(String json) throws Exception {
+            return PrintJob.fromJson(json);
+        }
+    };
+
+    private final PrinterServiceAvailabilityCache serviceAvailabilityCache;
+    private final ChannelClientPool channelClientPool;
+    private final PrinterSettingsCache printerSettingsCache;
+    private final int batchWindow;
+    private final PrintMetricsListener printMetricsListener;
+    private final long printTimeoutMs;
+    private final long actionTimeoutMs;
+    private final long statusTimeoutMs;
+    private final long settingsTimeoutMs;
+    private final WireFormat wireFormat;
+    private final ImageStore imageStore;
+    private final int compressionThreshold;
+    private final Scheduler scheduler;
+    private final Map<String, Observable<PrinterStatus>> statusStreams = new HashMap<>();
+    private final Map<String, Bitmap> registeredImages = new ConcurrentHashMap<>();
+    private final Set<String> serviceImageKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     PrinterManagerImpl(Context context) {
-        this.context = context;
+        this(context, PrinterManagerConfig.defaultConfig());
+    }
+
+    PrinterManagerImpl(Context context, PrinterManagerConfig config) {
+        this(context, config, new ChannelClientPool(context, config.getConnectionIdleTimeoutMs(), Schedulers.computation()));
+    }
+
+    PrinterManagerImpl(Context context, PrinterManagerConfig config, ChannelClientPool channelClientPool) {
+        this(context, config, channelClientPool, Schedulers.computation());
+    }
+
+    PrinterManagerImpl(Context context, PrinterManagerConfig config, ChannelClientPool channelClientPool, Scheduler scheduler) {
+        this.serviceAvailabilityCache = PrinterServiceAvailabilityCache.getInstance(context);
+        this.channelClientPool = channelClientPool;
+        this.scheduler = scheduler;
+        this.batchWindow = config.getBatchWindow();
+        this.printMetricsListener = config.getPrintMetricsListener();
+        this.printTimeoutMs = config.getPrintTimeoutMs();
+        this.actionTimeoutMs = config.getActionTimeoutMs();
+        this.statusTimeoutMs = config.getStatusTimeoutMs();
+        this.settingsTimeoutMs = config.getSettingsTimeoutMs();
+        this.wireFormat = config.getWireFormat();
+        this.imageStore = config.getImageStore();
+        this.compressionThreshold = config.getCompressionThreshold();
+        this.printerSettingsCache = new PrinterSettingsCache(config.getSettingsCacheTtlMs(), scheduler,
+                new PrinterSettingsCache.Fetcher() {
+                    @Override
+                    public Observable<PrinterSettingsList> fetch(PrinterSettingsRequest request) {
+                        return getSettingsServiceIntent(request);
+                    }
+                });
     }
 
     @Override
     public boolean isPrinterServiceAvailable() {
-        PackageManager packageManager = context.getPackageManager();
-        List<ResolveInfo> resolveInfo =
-                packageManager.queryIntentServices(getIntent(PRINT_MESSENGER_SERVICE_COMPONENT), PackageManager.MATCH_DEFAULT_ONLY);
-        return resolveInfo.size() == 1 && resolveInfo.get(0).serviceInfo != null;
+        return getPrinterServiceAvailability().isMessagingServiceAvailable();
+    }
+
+    @Override
+    public PrinterServiceAvailability getPrinterServiceAvailability() {
+        return serviceAvailabilityCache.getAvailability();
+    }
+
+    @Override
+    public Observable<PrintJob> print(PrintPayload printPayload) {
+        checkNotNull(printPayload, "printPayload must not be null");
+        return prepareAndPrint(printPayload, printTimeoutMs);
     }
 
     @Override
-    public Observable<PrintJob> print(final PrintPayload printPayload) {
+    public PreparedPrintPayload prepare(PrintPayload printPayload) {
         checkNotNull(printPayload, "printPayload must not be null");
-        Log.d(TAG, "About to send: " + printPayload.toJson());
-        final ChannelClient printingMessenger = getNewChannelClient(PRINT_MESSENGER_SERVICE_COMPONENT);
-        return printingMessenger.sendMessage(printPayload.toJson())
-                .map(new Function<String, PrintJob>() {
+        PrinterSettings printerSettings = findNegotiatedSettings(printPayload.getPrinterId());
+        WireFormat format = printerSettings != null && printerSettings.supportsWireFormat(wireFormat) ? wireFormat : WireFormat.JSON;
+        ImageStore store = printerSettings != null && printerSettings.supportsImageStore() ? imageStore : null;
+        PreparedPrintPayload preparedPayload = inlineImages(printPayload, printerSettings).prepare(format, store);
+        if (compressionThreshold > 0 && printerSettings != null && printerSettings.supportsCompression()) {
+            preparedPayload = preparedPayload.compress(compressionThreshold);
+        }
+        return preparedPayload;
+    }
+
+    /**
+     * Replaces the image references of the payload with the registered images, except for those that the print service has confirmed
+     * and the printer can take references for.
+     */
+    private PrintPayload inlineImages(PrintPayload printPayload, PrinterSettings printerSettings) {
+        if (registeredImages.isEmpty()) {
+            return printPayload;
+        }
+        Map<String, Bitmap> images = new HashMap<>(registeredImages);
+        if (printerSettings != null && printerSettings.supportsImageRegistry()) {
+            images.keySet().removeAll(serviceImageKeys);
+        }
+        return printPayload.withImages(images);
+    }
+
+    /**
+     * Looks up the settings of the target printer to see whether the preferred wire format, the image store, the image registry and
+     * compression may be used. Only
+     * settings that are already cached are looked at, so that printing is never held up by the negotiation; until they are, payloads
+     * are sent as JSON with inline images. With the settings cache turned off nothing can be negotiated, so the settings are not
+     * fetched at all.
+     */
+    private PrinterSettings findNegotiatedSettings(String printerId) {
+        if (!printerSettingsCache.isEnabled()
+                || (wireFormat == WireFormat.JSON && imageStore == null && serviceImageKeys.isEmpty() && compressionThreshold == 0)) {
+            return null;
+        }
+        PrinterSettings printerSettings = findCachedSettings(printerId);
+        if (printerSettings == null) {
+            // warm the cache so that later payloads can be negotiated
+            printerSettingsCache.get(PrinterSettingsRequest.createAllRequest()).subscribe(new Consumer<PrinterSettingsList>() {
+                @Override
+                public void accept(PrinterSettingsList printerSettingsList) throws Exception {
+                    Log.d(TAG, "Fetched printer settings for payload negotiation");
+                }
+            }, new Consumer<Throwable>() {
+                @Override
+                public void accept(Throwable throwable) throws Exception {
+                    Log.w(TAG, "Failed to fetch printer settings for payload negotiation", throwable);
+                }
+            });
+        }
+        return printerSettings;
+    }
+
+    private PrinterSettings findCachedSettings(String printerId) {
+        boolean defaultPrinter = printerId == null || printerId.isEmpty();
+        if (defaultPrinter) {
+            PrinterSettingsList defaultSettings = printerSettingsCache.peek(PrinterSettingsRequest.createDefaultRequest());
+            if (defaultSettings != null && defaultSettings.getPrinterSettings() != null && defaultSettings.getPrinterSettings().length > 0) {
+                return defaultSettings.getPrinterSettings()[0];
+            }
+        }
+        PrinterSettingsList allSettings = printerSettingsCache.peek(PrinterSettingsRequest.createAllRequest());
+        if (allSettings == null || allSettings.getPrinterSettings() == null) {
+            return null;
+        }
+        for (PrinterSettings printerSettings : allSettings.getPrinterSettings()) {
+            boolean isDefault = printerSettings.getOptions() != null && "true".equals(printerSettings.getOptions().get(PrinterSettings.OPTION_DEFAULT));
+            if (defaultPrinter ? isDefault : printerId.equals(printerSettings.getPrinterId())) {
+                return printerSettings;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Observable<PrintJob> print(PreparedPrintPayload preparedPayload) {
+        checkNotNull(preparedPayload, "preparedPayload must not be null");
+        return print(preparedPayload, printTimeoutMs);
+    }
+
+    @Override
+    public Observable<PrintJob> print(PrintPayload printPayload, long timeout, TimeUnit unit) {
+        checkNotNull(printPayload, "printPayload must not be null");
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return prepareAndPrint(printPayload, unit.toMillis(timeout));
+    }
+
+    @Override
+    public Observable<PrintJob> print(PreparedPrintPayload preparedPayload, long timeout, TimeUnit unit) {
+        checkNotNull(preparedPayload, "preparedPayload must not be null");
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return print(preparedPayload, unit.toMillis(timeout));
+    }
+
+    /**
+     * Prepares the payload for each subscription, so that its stored images can be released when the print job ends.
+     */
+    private Observable<PrintJob> prepareAndPrint(final PrintPayload printPayload, final long timeoutMs) {
+        return Observable.defer(new Callable<ObservableSource<PrintJob>>() {
+            @Override
+            public ObservableSource<PrintJob> call() throws Exception {
+                final PreparedPrintPayload preparedPayload = prepare(printPayload);
+                return print(preparedPayload, timeoutMs).doFinally(releaseImages(preparedPayload));
+            }
+        });
+    }
+
+    private static Action releaseImages(final PreparedPrintPayload preparedPayload) {
+        return new Action() {
+            @Override
+            public void run() throws Exception {
+                preparedPayload.releaseImages();
+            }
+        };
+    }
+
+    private Observable<PrintJob> print(PreparedPrintPayload preparedPayload, final long timeoutMs) {
+        return withImageFallback(preparedPayload, send(preparedPayload, timeoutMs), new Function<PreparedPrintPayload, Observable<PrintJob>>() {
+            @Override
+            public Observable<PrintJob> apply(PreparedPrintPayload inlinePayload) throws Exception {
+                return send(inlinePayload, timeoutMs).doFinally(releaseImages(inlinePayload));
+            }
+        });
+    }
+
+    /**
+     * Sends the payload again with inline images if the print service fails it because it does not know one of its registered images.
+     * The failed job is not emitted in that case. The payload is prepared again from {@link PreparedPrintPayload#getImageKeySource()}, in
+     * which the images that are still referred to by key are replaced with the images registered with this manager. If it refers to an
+     * image that is not registered with this manager, the failed job is emitted instead.
+     */
+    private Observable<PrintJob> withImageFallback(final PreparedPrintPayload preparedPayload, Observable<PrintJob> printJobs,
+                                                   final Function<PreparedPrintPayload, Observable<PrintJob>> resend) {
+        if (preparedPayload.getImageKeys().isEmpty()) {
+            return printJobs;
+        }
+        return printJobs.concatMap(new Function<PrintJob, ObservableSource<PrintJob>>() {
+            @Override
+            public ObservableSource<PrintJob> apply(PrintJob printJob) throws Exception {
+                if (printJob.getPrintJobState() != PrintJob.State.FAILED || !PrinterMessages.ERROR_UNKNOWN_IMAGE.equals(printJob.getFailedReason())) {
+                    return Observable.just(printJob);
+                }
+                Log.w(TAG, "Print service does not know image " + printJob.getDiagnosticMessage() + ", sending images inline");
+                serviceImageKeys.removeAll(preparedPayload.getImageKeys());
+                PreparedPrintPayload inlinePayload = prepare(preparedPayload.getImageKeySource());
+                if (!inlinePayload.getImageKeys().isEmpty()) {
+                    // the payload refers to images that are not registered with this manager, so sending it again would fail again
+                    inlinePayload.releaseImages();
+                    return Observable.just(printJob);
+                }
+                return resend.apply(inlinePayload);
+            }
+        });
+    }
+
+    private Observable<PrintJob> send(final PreparedPrintPayload preparedPayload, final long timeoutMs) {
+        Log.d(TAG, "About to send: " + preparedPayload);
+        final Observable<PrintJob> timedOut = Observable.just(createTimedOutPrintJob(timeoutMs));
+        // a print is never resent over a fresh connection, as the print service may already have printed it
+        if (printMetricsListener == null) {
+            return withDeadline(channelClientPool.sendMessage(PRINT_MESSENGER_SERVICE_COMPONENT, preparedPayload.getMessage(), false, null)
+                                        .map(PARSE_PRINT_JOB), timeoutMs, timedOut);
+        }
+        return Observable.defer(new Callable<ObservableSource<PrintJob>>() {
+            @Override
+            public ObservableSource<PrintJob> call() throws Exception {
+                PrintMetricsRecorder recorder = new PrintMetricsRecorder(printMetricsListener, preparedPayload);
+                return recordMetrics(withDeadline(channelClientPool.sendMessage(PRINT_MESSENGER_SERVICE_COMPONENT, preparedPayload.getMessage(), false, recorder)
+                                                          .map(PARSE_PRINT_JOB), timeoutMs, timedOut), recorder);
+            }
+        });
+    }
+
+    private static PrintJob createTimedOutPrintJob(long timeoutMs) {
+        return new PrintJob(PrintJob.State.FAILED, PrinterMessages.TIMEOUT, "No result from the print service within " + timeoutMs + "ms");
+    }
+
+    /**
+     * Applies a deadline to the whole of a conversation with the print service, as opposed to {@link Observable#timeout(long, TimeUnit)}
+     * which restarts the timer for every reply. When the deadline expires the source is disposed, which closes its connection, and the
+     * fallback is subscribed to instead.
+     */
+    private <T> Observable<T> withDeadline(final Observable<T> source, final long timeoutMs, final Observable<T> fallback) {
+        if (timeoutMs <= 0) {
+            return source;
+        }
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> call() throws Exception {
+                final long deadline = scheduler.now(TimeUnit.MILLISECONDS) + timeoutMs;
+                return source.timeout(Observable.timer(timeoutMs, TimeUnit.MILLISECONDS, scheduler), new Function<T, ObservableSource<Long>>() {
                     @Override
-                    public PrintJob apply(String json) throws Exception {
-                        return PrintJob.fromJson(json);
+                    public ObservableSource<Long> apply(T value) throws Exception {
+                        long remaining = Math.max(0, deadline - scheduler.now(TimeUnit.MILLISECONDS));
+                        return Observable.timer(remaining, TimeUnit.MILLISECONDS, scheduler);
+                    }
+                }, fallback);
+            }
+        });
+    }
+
+    private static Observable<PrintJob> recordMetrics(Observable<PrintJob> printJobs, final PrintMetricsRecorder recorder) {
+        recorder.onStart();
+        return printJobs
+                .doOnNext(new Consumer<PrintJob>() {
+                    @Override
+                    public void accept(PrintJob printJob) throws Exception {
+                        recorder.onPrintJob(printJob);
+                    }
+                })
+                .doOnError(new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        recorder.onError(throwable);
                     }
                 })
                 .doFinally(new Action() {
                     @Override
                     public void run() throws Exception {
-                        printingMessenger.closeConnection();
+                        recorder.report();
+                    }
+                });
+    }
+
+    @Override
+    public Observable<BatchPrintJob> print(List<PrintPayload> printPayloads) {
+        checkNotNull(printPayloads, "printPayloads must not be null");
+        return print(Flowable.fromIterable(printPayloads));
+    }
+
+    @Override
+    public Observable<BatchPrintJob> print(final Flowable<PrintPayload> printPayloads) {
+        checkNotNull(printPayloads, "printPayloads must not be null");
+        return Observable.defer(new Callable<ObservableSource<BatchPrintJob>>() {
+            @Override
+            public ObservableSource<BatchPrintJob> call() throws Exception {
+                final ChannelClientPool.Lease lease = channelClientPool.acquire(PRINT_MESSENGER_SERVICE_COMPONENT);
+                final AtomicInteger nextIndex = new AtomicInteger();
+                final AtomicBoolean completed = new AtomicBoolean();
+                // payloads prepared ahead of the job being printed, whose images must be released if the batch ends before they are sent
+                final List<PreparedPrintPayload> preparedAhead = new ArrayList<>();
+                final AtomicBoolean finished = new AtomicBoolean();
+                return printPayloads
+                        .map(new Function<PrintPayload, BatchMessage>() {
+                            @Override
+                            public BatchMessage apply(PrintPayload printPayload) throws Exception {
+                                int index = nextIndex.getAndIncrement();
+                                checkNotNull(printPayload, "printPayload must not be null");
+                                PreparedPrintPayload preparedPayload = prepare(printPayload);
+                                synchronized (preparedAhead) {
+                                    if (finished.get()) {
+                                        preparedPayload.releaseImages();
+                                    } else {
+                                        preparedAhead.add(preparedPayload);
+                                    }
+                                }
+                                return new BatchMessage(index, preparedPayload);
+                            }
+                        })
+                        .concatMap(new Function<BatchMessage, Publisher<BatchPrintJob>>() {
+                            @Override
+                            public Publisher<BatchPrintJob> apply(final BatchMessage batchMessage) throws Exception {
+                                synchronized (preparedAhead) {
+                                    preparedAhead.remove(batchMessage.preparedPayload);
+                                }
+                                Log.d(TAG, "About to send batch payload " + batchMessage.index + ": " + batchMessage.preparedPayload);
+                                Function<PreparedPrintPayload, Observable<PrintJob>> sendOnLease = new Function<PreparedPrintPayload, Observable<PrintJob>>() {
+                                    @Override
+                                    public Observable<PrintJob> apply(PreparedPrintPayload preparedPayload) throws Exception {
+                                        return sendOnLease(lease, preparedPayload);
+                                    }
+                                };
+                                return withImageFallback(batchMessage.preparedPayload, sendOnLease.apply(batchMessage.preparedPayload), sendOnLease)
+                                        .map(new Function<PrintJob, BatchPrintJob>() {
+                                            @Override
+                                            public BatchPrintJob apply(PrintJob printJob) throws Exception {
+                                                return new BatchPrintJob(batchMessage.index, printJob);
+                                            }
+                                        }).toFlowable(BackpressureStrategy.BUFFER);
+                            }
+                        }, batchWindow)
+                        .toObservable()
+                        .doOnComplete(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                completed.set(true);
+                            }
+                        })
+                        .doFinally(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                channelClientPool.release(lease, completed.get());
+                                synchronized (preparedAhead) {
+                                    finished.set(true);
+                                    for (PreparedPrintPayload preparedPayload : preparedAhead) {
+                                        preparedPayload.releaseImages();
+                                    }
+                                    preparedAhead.clear();
+                                }
+                            }
+                        });
+            }
+        });
+    }
+
+    private Observable<PrintJob> sendOnLease(ChannelClientPool.Lease lease, PreparedPrintPayload preparedPayload) {
+        // the connection can not be trusted with further payloads once a job has timed out
+        Observable<PrintJob> timedOut = Observable.just(createTimedOutPrintJob(printTimeoutMs))
+                .concatWith(Observable.<PrintJob>error(new PrinterTimeoutException("Batch print", printTimeoutMs)));
+        PrintMetricsRecorder recorder = printMetricsListener != null ? new PrintMetricsRecorder(printMetricsListener, preparedPayload) : null;
+        Observable<PrintJob> printJobs = withDeadline(channelClientPool.sendOnLease(lease, preparedPayload.getMessage(), recorder)
+                                                              .map(PARSE_PRINT_JOB), printTimeoutMs, timedOut);
+        if (recorder != null) {
+            printJobs = recordMetrics(printJobs, recorder);
+        }
+        return printJobs.doFinally(releaseImages(preparedPayload));
+    }
+
+    @Override
+    public Completable registerImage(final String imageKey, final Bitmap image) {
+        checkNotNull(imageKey, "imageKey must not be null");
+        checkNotNull(image, "image must not be null");
+        return Completable.defer(new Callable<CompletableSource>() {
+            @Override
+            public CompletableSource call() throws Exception {
+                registeredImages.put(imageKey, image);
+                serviceImageKeys.remove(imageKey);
+                return printerSettingsCache.get(PrinterSettingsRequest.createAllRequest())
+                        .flatMapCompletable(new Function<PrinterSettingsList, CompletableSource>() {
+                            @Override
+                            public CompletableSource apply(PrinterSettingsList printerSettingsList) throws Exception {
+                                if (!supportsImageRegistry(printerSettingsList)) {
+                                    Log.d(TAG, "No printer supports the image registry, image " + imageKey + " will be sent inline");
+                                    return Completable.complete();
+                                }
+                                return uploadImage(new ImageRegistration(imageKey, image));
+                            }
+                        });
+            }
+        });
+    }
+
+    private static boolean supportsImageRegistry(PrinterSettingsList printerSettingsList) {
+        if (printerSettingsList.getPrinterSettings() != null) {
+            for (PrinterSettings printerSettings : printerSettingsList.getPrinterSettings()) {
+                if (printerSettings.supportsImageRegistry()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Completable uploadImage(final ImageRegistration imageRegistration) {
+        Observable<PrintJob> timedOut = Observable.error(new PrinterTimeoutException("Image registration", printTimeoutMs));
+        return withDeadline(channelClientPool.sendMessage(PRINT_MESSENGER_SERVICE_COMPONENT, imageRegistration.toMessage()).map(PARSE_PRINT_JOB),
+                            printTimeoutMs, timedOut)
+                .filter(new Predicate<PrintJob>() {
+                    @Override
+                    public boolean test(PrintJob printJob) throws Exception {
+                        return printJob.getPrintJobState() != PrintJob.State.IN_PROGRESS;
+                    }
+                })
+                .flatMapCompletable(new Function<PrintJob, CompletableSource>() {
+                    @Override
+                    public CompletableSource apply(PrintJob printJob) throws Exception {
+                        if (printJob.getPrintJobState() != PrintJob.State.PRINTED) {
+                            return Completable.error(new IllegalStateException("Print service did not register image " + imageRegistration.getImageKey()
+                                                                                       + ": " + printJob.getFailedReason()));
+                        }
+                        // only refer to the image by key if it has not been replaced in the meantime
+                        if (registeredImages.get(imageRegistration.getImageKey()) == imageRegistration.getImage()) {
+                            serviceImageKeys.add(imageRegistration.getImageKey());
+                        }
+                        return Completable.complete();
                     }
                 });
     }
@@ -92,41 +543,170 @@ class PrinterManagerImpl implements PrinterManager {
     public void sendAction(String printerId, String action) {
         checkNotNull(printerId, "printerId must not be null");
         checkNotNull(action, "action must not be null");
-        Log.d(TAG, "About to send action : " + action);
-        PrintAction printAction = new PrintAction(printerId, action);
-        final ChannelClient printerActionMessenger = getNewChannelClient(PRINTER_ACTION_SERVICE_COMPONENT);
-        printerActionMessenger.sendMessage(printAction.toJson()).take(1)
-                .doFinally(new Action() {
-                    @Override
-                    public void run() throws Exception {
-                        printerActionMessenger.closeConnection();
-                    }
-                }).subscribe();
+        sendActions(printerId, action).subscribe(new Consumer<PrinterStatus>() {
+            @Override
+            public void accept(PrinterStatus printerStatus) throws Exception {
+                Log.d(TAG, "Action result: " + printerStatus.getStatus());
+            }
+        }, new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                Log.e(TAG, "Failed to send action", throwable);
+            }
+        });
+    }
+
+    @Override
+    public Observable<PrinterStatus> sendActions(String printerId, String... actions) {
+        return sendActions(printerId, actionTimeoutMs, actions);
+    }
+
+    @Override
+    public Observable<PrinterStatus> sendActions(String printerId, long timeout, TimeUnit unit, String... actions) {
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return sendActions(printerId, unit.toMillis(timeout), actions);
+    }
+
+    private Observable<PrinterStatus> sendActions(final String printerId, final long timeoutMs, final String... actions) {
+        checkNotNull(printerId, "printerId must not be null");
+        checkNotEmpty(actions, "actions must not be empty");
+        for (String action : actions) {
+            checkNotNull(action, "action must not be null");
+        }
+        return Observable.defer(new Callable<ObservableSource<PrinterStatus>>() {
+            @Override
+            public ObservableSource<PrinterStatus> call() throws Exception {
+                final ChannelClientPool.Lease lease = channelClientPool.acquire(PRINTER_ACTION_SERVICE_COMPONENT);
+                final AtomicBoolean completed = new AtomicBoolean();
+                return Observable.fromArray(actions)
+                        .concatMap(new Function<String, ObservableSource<PrinterStatus>>() {
+                            @Override
+                            public ObservableSource<PrinterStatus> apply(final String action) throws Exception {
+                                Log.d(TAG, "About to send action : " + action);
+                                PrintAction printAction = new PrintAction(printerId, action);
+                                final AtomicBoolean replied = new AtomicBoolean();
+                                // the connection can not be trusted with further actions once one has timed out
+                                Observable<PrinterStatus> timedOut = Observable.defer(new Callable<ObservableSource<PrinterStatus>>() {
+                                    @Override
+                                    public ObservableSource<PrinterStatus> call() throws Exception {
+                                        Observable<PrinterStatus> error =
+                                                Observable.error(new PrinterTimeoutException("Action " + action, timeoutMs));
+                                        return replied.get() ? error : Observable.just(new PrinterStatus(PrinterMessages.TIMEOUT)).concatWith(error);
+                                    }
+                                });
+                                // only the first reply is the result of the action, but the next action is only sent once the service has
+                                // completed this conversation, so that a late reply is not taken for the result of the next action
+                                return withDeadline(channelClientPool.sendOnLease(lease, printAction.toJson(), null)
+                                                            .filter(new Predicate<String>() {
+                                                                @Override
+                                                                public boolean test(String json) throws Exception {
+                                                                    return replied.compareAndSet(false, true);
+                                                                }
+                                                            })
+                                                            .map(new Function<String, PrinterStatus>() {
+                                                                @Override
+                                                                public PrinterStatus apply(String json) throws Exception {
+                                                                    return PrinterStatus.fromJson(json);
+                                                                }
+                                                            }), timeoutMs, timedOut);
+                            }
+                        })
+                        .doOnComplete(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                completed.set(true);
+                            }
+                        })
+                        .doFinally(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                channelClientPool.release(lease, completed.get());
+                            }
+                        });
+            }
+        });
     }
 
     @Override
     public Observable<PrinterStatus> status(String printerId) {
         checkNotNull(printerId, "printerId must not be null");
-        final ChannelClient printerStatusMessenger = getNewChannelClient(PRINTER_STATUS_SERVICE_COMPONENT);
-        return printerStatusMessenger.sendMessage(printerId)
+        synchronized (statusStreams) {
+            Observable<PrinterStatus> statusStream = statusStreams.get(printerId);
+            if (statusStream == null) {
+                statusStream = createStatusStream(printerId);
+                statusStreams.put(printerId, statusStream);
+            }
+            return statusStream;
+        }
+    }
+
+    @Override
+    public Observable<PrinterStatus> status(String printerId, long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return withFirstStatusDeadline(status(printerId), unit.toMillis(timeout));
+    }
+
+    /**
+     * Only the first status has a deadline, as the status of a healthy printer may not change for a long time. If it expires a status of
+     * {@link PrinterMessages#TIMEOUT} is emitted and the stream completes.
+     */
+    private Observable<PrinterStatus> withFirstStatusDeadline(Observable<PrinterStatus> statuses, long timeoutMs) {
+        if (timeoutMs <= 0) {
+            return statuses;
+        }
+        return statuses.timeout(Observable.timer(timeoutMs, TimeUnit.MILLISECONDS, scheduler),
+                                new Function<PrinterStatus, ObservableSource<Long>>() {
+                                    @Override
+                                    public ObservableSource<Long> apply(PrinterStatus printerStatus) throws Exception {
+                                        return Observable.never();
+                                    }
+                                }, Observable.just(new PrinterStatus(PrinterMessages.TIMEOUT)));
+    }
+
+    private Observable<PrinterStatus> createStatusStream(final String printerId) {
+        final AtomicReference<Observable<PrinterStatus>> self = new AtomicReference<>();
+        Observable<PrinterStatus> statuses = channelClientPool.sendMessage(PRINTER_STATUS_SERVICE_COMPONENT, printerId)
                 .map(new Function<String, PrinterStatus>() {
                     @Override
                     public PrinterStatus apply(String json) throws Exception {
                         return PrinterStatus.fromJson(json);
                     }
-                })
+                });
+        Observable<PrinterStatus> statusStream = withFirstStatusDeadline(statuses, statusTimeoutMs)
+                .distinctUntilChanged()
                 .doFinally(new Action() {
                     @Override
                     public void run() throws Exception {
-                        printerStatusMessenger.closeConnection();
+                        synchronized (statusStreams) {
+                            if (statusStreams.get(printerId) == self.get()) {
+                                statusStreams.remove(printerId);
+                            }
+                        }
                     }
-                });
+                })
+                .replay(1)
+                .refCount();
+        self.set(statusStream);
+        return statusStream;
     }
 
     @Override
     public Single<PrinterSettings> getDefaultPrinterSettings() {
+        return getDefaultPrinterSettings(0);
+    }
+
+    @Override
+    public Single<PrinterSettings> getDefaultPrinterSettings(long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return getDefaultPrinterSettings(unit.toMillis(timeout));
+    }
+
+    private Single<PrinterSettings> getDefaultPrinterSettings(long timeoutMs) {
         Log.d(TAG, "Getting default printer settings");
-        return getSettingsServiceIntent(PrinterSettingsRequest.createDefaultRequest()).map(new Function<PrinterSettingsList, PrinterSettings>() {
+        return withSettingsDeadline(printerSettingsCache.get(PrinterSettingsRequest.createDefaultRequest()), timeoutMs).map(new Function<PrinterSettingsList, PrinterSettings>() {
             @Override
             public PrinterSettings apply(@NonNull PrinterSettingsList printerSettingsList) throws Exception {
                 PrinterSettings[] printerSettingses = printerSettingsList.getPrinterSettings();
@@ -137,38 +717,62 @@ class PrinterManagerImpl implements PrinterManager {
                 // TODO should this throw custom exception here?
                 throw new RuntimeException("No default printer set");
             }
-        }).take(1).observeOn(Schedulers.io()).singleOrError();
+        }).observeOn(Schedulers.io());
     }
 
     @Override
     public Observable<PrinterSettingsList> getPrintersSettings() {
-        return getSettingsServiceIntent(PrinterSettingsRequest.createAllRequest());
+        return printerSettingsCache.get(PrinterSettingsRequest.createAllRequest()).toObservable();
     }
 
-    private Observable<PrinterSettingsList> getSettingsServiceIntent(PrinterSettingsRequest printerRequest) {
-        final ChannelClient printSettingsMessenger = getNewChannelClient(PRINT_SETTINGS_SERVICE_COMPONENT);
+    @Override
+    public Observable<PrinterSettingsList> getPrintersSettings(long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0, "timeout must not be negative");
+        checkNotNull(unit, "unit must not be null");
+        return withSettingsDeadline(printerSettingsCache.get(PrinterSettingsRequest.createAllRequest()), unit.toMillis(timeout)).toObservable();
+    }
 
-        return printSettingsMessenger.sendMessage(printerRequest.toJson())
-                .map(new Function<String, PrinterSettingsList>() {
-                    @Override
-                    public PrinterSettingsList apply(String json) throws Exception {
-                        return PrinterSettingsList.fromJson(json);
-                    }
-                }).doFinally(new Action() {
-                    @Override
-                    public void run() throws Exception {
-                        printSettingsMessenger.closeConnection();
-                    }
-                });
+    /**
+     * Limits how long a caller waits for settings. The fetch itself is shared with other callers (see {@link PrinterSettingsCache}) and
+     * keeps the configured deadline, so it is not cancelled when this deadline expires and still fills the cache.
+     */
+    private <T> Single<T> withSettingsDeadline(Single<T> settings, long timeoutMs) {
+        if (timeoutMs <= 0) {
+            return settings;
+        }
+        return settings.timeout(timeoutMs, TimeUnit.MILLISECONDS, scheduler,
+                                Single.<T>error(new PrinterTimeoutException("Settings request", timeoutMs)));
     }
 
-    private ChannelClient getNewChannelClient(ComponentName componentName) {
-        return Channels.messenger(context, componentName);
+    @Override
+    public void invalidateSettingsCache() {
+        printerSettingsCache.invalidate();
     }
 
-    private Intent getIntent(ComponentName componentName) {
-        Intent intent = new Intent();
-        intent.setComponent(componentName);
-        return intent;
+    @Override
+    public void closeConnections() {
+        channelClientPool.closeConnections();
+    }
+
+    private Observable<PrinterSettingsList> getSettingsServiceIntent(PrinterSettingsRequest printerRequest) {
+        return withDeadline(channelClientPool.sendMessage(PRINT_SETTINGS_SERVICE_COMPONENT, printerRequest.toJson())
+                                    .map(new Function<String, PrinterSettingsList>() {
+                                        @Override
+                                        public PrinterSettingsList apply(String json) throws Exception {
+                                            return PrinterSettingsList.fromJson(json);
+                                        }
+                                    }), settingsTimeoutMs,
+                            Observable.<PrinterSettingsList>error(new PrinterTimeoutException("Settings request", settingsTimeoutMs)));
+    }
+
+    private static final class BatchMessage {
+
+        private final int index;
+        private final PreparedPrintPayload preparedPayload;
+
+        BatchMessage(int index, PreparedPrintPayload preparedPayload) {
+            this.index = index;
+            this.preparedPayload = preparedPayload;
+        }
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+/**
+ * Describes which of the print service components are installed on the device.
+ */
+public final class PrinterServiceAvailability {
+
+    private final boolean messagingServiceAvailable;
+    private final boolean settingsServiceAvailable;
+    private final boolean statusServiceAvailable;
+    private final boolean actionServiceAvailable;
+
+    PrinterServiceAvailability(boolean messagingServiceAvailable, boolean settingsServiceAvailable, boolean statusServiceAvailable,
+                               boolean actionServiceAvailable) {
+        this.messagingServiceAvailable = messagingServiceAvailable;
+        this.settingsServiceAvailable = settingsServiceAvailable;
+        this.statusServiceAvailable = statusServiceAvailable;
+        this.actionServiceAvailable = actionServiceAvailable;
+    }
+
+    /**
+     * @return True if payloads can be sent for printing via {@link PrinterManager#print(com.aevi.print.model.PrintPayload)}
+     */
+    public boolean isMessagingServiceAvailable() {
+        return messagingServiceAvailable;
+    }
+
+    /**
+     * @return True if printer settings can be obtained via {@link PrinterManager#getPrintersSettings()}
+     */
+    public boolean isSettingsServiceAvailable() {
+        return settingsServiceAvailable;
+    }
+
+    /**
+     * @return True if printer status can be obtained via {@link PrinterManager#status(String)}
+     */
+    public boolean isStatusServiceAvailable() {
+        return statusServiceAvailable;
+    }
+
+    /**
+     * @return True if actions can be sent via {@link PrinterManager#sendAction(String, String)}
+     */
+    public boolean isActionServiceAvailable() {
+        return actionServiceAvailable;
+    }
+
+    /**
+     * @return True if all print service components are available
+     */
+    public boolean isFullyAvailable() {
+        return messagingServiceAvailable && settingsServiceAvailable && statusServiceAvailable && actionServiceAvailable;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("messaging=%s,settings=%s,status=%s,action=%s", messagingServiceAvailable, settingsServiceAvailable,
+                             statusServiceAvailable, actionServiceAvailable);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.PatternMatcher;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Caches which print service components are installed, for the whole process.
+ *
+ * The cache registers one receiver for changes to the print service package on the application context and drops the cached
+ * availability when the package is installed, updated or removed. As there is only one cache per process, and it only holds the
+ * application context, managers created from an Activity do not leak it via the receiver.
+ */
+final class PrinterServiceAvailabilityCache {
+
+    private static final String TAG = PrinterServiceAvailabilityCache.class.getSimpleName();
+
+    private static PrinterServiceAvailabilityCache instance;
+
+    private final Context applicationContext;
+    private volatile PrinterServiceAvailability availability;
+
+    private PrinterServiceAvailabilityCache(Context applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * @param context Any context of the application
+     * @return The cache of the application
+     */
+    static synchronized PrinterServiceAvailabilityCache getInstance(Context context) {
+        Context applicationContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        if (instance == null || instance.applicationContext != applicationContext) {
+            instance = new PrinterServiceAvailabilityCache(applicationContext);
+            instance.registerPackageReceiver();
+        }
+        return instance;
+    }
+
+    PrinterServiceAvailability getAvailability() {
+        PrinterServiceAvailability result = availability;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            if (availability == null) {
+                availability = new PrinterServiceAvailability(isServiceInstalled(PrinterManagerImpl.PRINT_MESSENGER_SERVICE_COMPONENT),
+                                                              isServiceInstalled(PrinterManagerImpl.PRINT_SETTINGS_SERVICE_COMPONENT),
+                                                              isServiceInstalled(PrinterManagerImpl.PRINTER_STATUS_SERVICE_COMPONENT),
+                                                              isServiceInstalled(PrinterManagerImpl.PRINTER_ACTION_SERVICE_COMPONENT));
+            }
+            return availability;
+        }
+    }
+
+    private boolean isServiceInstalled(ComponentName componentName) {
+        Intent intent = new Intent();
+        intent.setComponent(componentName);
+        PackageManager packageManager = applicationContext.getPackageManager();
+        List<ResolveInfo> resolveInfo = packageManager.queryIntentServices(intent, PackageManager.MATCH_DEFAULT_ONLY);
+        return resolveInfo.size() == 1 && resolveInfo.get(0).serviceInfo != null;
+    }
+
+    private void registerPackageReceiver() {
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        intentFilter.addDataScheme("package");
+        intentFilter.addDataSchemeSpecificPart(PrinterManagerImpl.PRINT_SERVICE_PACKAGE, PatternMatcher.PATTERN_LITERAL);
+        applicationContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Log.d(TAG, "Print service package changed: " + intent.getAction());
+                synchronized (PrinterServiceAvailabilityCache.this) {
+                    availability = null;
+                }
+            }
+        }, intentFilter);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import android.util.Log;
+
+import com.aevi.print.model.PrinterSettingsList;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+
+/**
+ * In-memory cache of the {@link PrinterSettingsList} returned by the settings service.
+ *
+ * Entries older than the time-to-live are still served straight away, but trigger a refresh in the background so that the next
+ * caller sees the new value. Concurrent fetches for the same request share a single in-flight call to the service.
+ */
+class PrinterSettingsCache {
+
+    private static final String TAG = PrinterSettingsCache.class.getSimpleName();
+
+    interface Fetcher {
+        Observable<PrinterSettingsList> fetch(PrinterSettingsRequest request);
+    }
+
+    private final long ttlMs;
+    private final Scheduler scheduler;
+    private final Fetcher fetcher;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Single<PrinterSettingsList>> inFlight = new HashMap<>();
+    private int generation;
+
+    PrinterSettingsCache(long ttlMs, Scheduler scheduler, Fetcher fetcher) {
+        this.ttlMs = ttlMs;
+        this.scheduler = scheduler;
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * @return True if fetched settings are kept, false if caching has been turned off with a time to live of zero
+     */
+    boolean isEnabled() {
+        return ttlMs > 0;
+    }
+
+    /**
+     * Returns the cached settings for the request, fetching them from the service if there is no entry yet.
+     *
+     * @param request The settings request
+     * @return A single emitting the settings list
+     */
+    Single<PrinterSettingsList> get(PrinterSettingsRequest request) {
+        String key = request.getType();
+        PrinterSettingsList stale;
+        Single<PrinterSettingsList> refresh;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return fetch(request);
+            }
+            if (now() - entry.fetchedAt < ttlMs || inFlight.containsKey(key)) {
+                return Single.just(entry.settingsList);
+            }
+            stale = entry.settingsList;
+            refresh = fetch(request);
+        }
+        refresh.subscribe(new Consumer<PrinterSettingsList>() {
+            @Override
+            public void accept(PrinterSettingsList printerSettingsList) throws Exception {
+                Log.d(TAG, "Refreshed printer settings in the background");
+            }
+        }, new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                Log.w(TAG, "Failed to refresh printer settings, keeping stale entry", throwable);
+            }
+        });
+        return Single.just(stale);
+    }
+
+    /**
+     * Returns the cached settings for the request without fetching them, whether they are fresh or not.
+     *
+     * @param request The settings request
+     * @return The cached settings list, or null if there is no entry
+     */
+    synchronized PrinterSettingsList peek(PrinterSettingsRequest request) {
+        Entry entry = entries.get(request.getType());
+        return entry != null ? entry.settingsList : null;
+    }
+
+    /**
+     * Drops all cached entries so that the next request goes to the service. Fetches that are in flight at the time of invalidation
+     * still complete, but their results are not stored.
+     */
+    synchronized void invalidate() {
+        entries.clear();
+        inFlight.clear();
+        generation++;
+    }
+
+    private synchronized Single<PrinterSettingsList> fetch(final PrinterSettingsRequest request) {
+        final String key = request.getType();
+        Single<PrinterSettingsList> existing = inFlight.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final int fetchGeneration = generation;
+        final AtomicReference<Single<PrinterSettingsList>> self = new AtomicReference<>();
+        Single<PrinterSettingsList> single = fetcher.fetch(request)
+                .firstOrError()
+                .doOnSuccess(new Consumer<PrinterSettingsList>() {
+                    @Override
+                    public void accept(PrinterSettingsList printerSettingsList) throws Exception {
+                        store(key, printerSettingsList, fetchGeneration);
+                    }
+                })
+                .doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        removeInFlight(key, self.get());
+                    }
+                })
+                .cache();
+        self.set(single);
+        inFlight.put(key, single);
+        return single;
+    }
+
+    private synchronized void store(String key, PrinterSettingsList settingsList, int fetchGeneration) {
+        if (ttlMs > 0 && fetchGeneration == generation) {
+            entries.put(key, new Entry(settingsList, now()));
+        }
+    }
+
+    private synchronized void removeInFlight(String key, Single<PrinterSettingsList> single) {
+        if (inFlight.get(key) == single) {
+            inFlight.remove(key);
+        }
+    }
+
+    private long now() {
+        return scheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    private static final class Entry {
+
+        private final PrinterSettingsList settingsList;
+        private final long fetchedAt;
+
+        Entry(PrinterSettingsList settingsList, long fetchedAt) {
+            this.settingsList = settingsList;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -27,6 +27,10 @@ public class PrinterSettingsRequest implements Jsonable {
         this.type = type;
     }
 
+    String getType() {
+        return type;
+    }
+
     public boolean isAllRequest() {
         return type != null && type.equals(ALL);
     }
@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print;
+
+import com.aevi.print.model.PrinterMessages;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Signalled when the print service did not reply to a request within its deadline.
+ *
+ * Where a request has a result type that can carry a reason, the timeout is reported as {@link PrinterMessages#TIMEOUT} instead, e.g.
+ * as a failed {@link com.aevi.print.model.PrintJob}.
+ */
+public class PrinterTimeoutException extends TimeoutException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timeoutMs;
+
+    public PrinterTimeoutException(String operation, long timeoutMs) {
+        super(operation + " timed out after " + timeoutMs + "ms");
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * @return Always {@link PrinterMessages#TIMEOUT}
+     */
+    public String getReason() {
+        return PrinterMessages.TIMEOUT;
+    }
+
+    /**
+     * @return The deadline that expired in milliseconds
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
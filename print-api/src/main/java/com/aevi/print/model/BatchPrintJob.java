@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+/**
+ * A {@link PrintJob} update for one payload of a batch sent via {@link com.aevi.print.PrinterManager#print(java.util.List)}.
+ */
+public class BatchPrintJob {
+
+    private final int index;
+    private final PrintJob printJob;
+
+    public BatchPrintJob(int index, PrintJob printJob) {
+        this.index = index;
+        this.printJob = printJob;
+    }
+
+    /**
+     * @return The position of the payload this update relates to within the batch, starting at zero
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The print job state for the payload
+     */
+    public PrintJob getPrintJob() {
+        return printJob;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("index=%d,state=%s", index, printJob.getPrintJobState());
+    }
+}
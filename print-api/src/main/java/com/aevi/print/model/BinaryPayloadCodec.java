@@ -0,0 +1,389 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes a {@link PrintPayload} in the {@link WireFormat#BINARY} format and decodes it again.
+ *
+ * Layout (all integers are unsigned LEB128 varints, signed values are zigzag encoded, strings are a varint length followed by UTF-8):
+ * <pre>
+ * version, codePage (signed), flags (bit 0 printerId present, bit 1 language present), [printerId], [language], imageCount, images...,
+ * rowCount, rows...
+ * image:     0, PNG length, PNG bytes
+ *            1, image reference (see {@link ImageStore})
+ *            2, registered image key (see {@link ImageRefRow})
+ * text row:  0, style, [fontId (signed) if style bit 6], text
+ * image row: 1, style, image index
+ * </pre>
+ * Each distinct image is written once to the image table, however many rows show it.
+ * The text style packs the alignment in bits 0-1, the underline in bits 2-3 and the font style in bits 4-5. The image style packs the
+ * alignment in bits 0-1 and scale-to-fit in bit 2. Enum values are written as ordinals, so their order is part of the format.
+ */
+final class BinaryPayloadCodec {
+
+    static final String MESSAGE_PREFIX = "#PB1#";
+
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int FLAG_PRINTER_ID = 1;
+    private static final int FLAG_LANGUAGE = 1 << 1;
+
+    private static final int ROW_TEXT = 0;
+    private static final int ROW_IMAGE = 1;
+
+    private static final int IMAGE_PNG = 0;
+    private static final int IMAGE_REF = 1;
+    private static final int IMAGE_KEY = 2;
+
+    private static final int STYLE_HAS_FONT = 1 << 6;
+    private static final int STYLE_SCALE_TO_FIT = 1 << 2;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+    private final OutOfBandImages outOfBandImages;
+    private int imageBytes;
+
+    BinaryPayloadCodec() {
+        this(new OutOfBandImages(null));
+    }
+
+    BinaryPayloadCodec(OutOfBandImages outOfBandImages) {
+        this.outOfBandImages = outOfBandImages;
+    }
+
+    /**
+     * Encodes the payload into the text message sent to the print service.
+     */
+    String encode(PrintPayload printPayload) {
+        String printerId = printPayload.getPrinterId();
+        String language = printPayload.getLanguage();
+        writeVarint(VERSION);
+        writeSignedVarint(printPayload.getCodePage());
+        writeVarint((printerId != null ? FLAG_PRINTER_ID : 0) | (language != null ? FLAG_LANGUAGE : 0));
+        if (printerId != null) {
+            writeString(printerId);
+        }
+        if (language != null) {
+            writeString(language);
+        }
+        PrintRows rows = printPayload.getRowView();
+        Map<Object, Integer> imageIndexes = writeImages(rows);
+        writeVarint(rows.size());
+        for (PrintRow row : rows) {
+            if (row instanceof TextRow) {
+                writeTextRow((TextRow) row);
+            } else if (row instanceof ImageRow) {
+                ImageRow imageRow = (ImageRow) row;
+                writeVarint(ROW_IMAGE);
+                writeVarint(imageRow.getAlignmentStyle().ordinal() | (imageRow.isScaleToFit() ? STYLE_SCALE_TO_FIT : 0));
+                writeVarint(imageIndexes.get(imageKey(imageRow)));
+            } else if (row instanceof ImageRefRow) {
+                ImageRefRow imageRefRow = (ImageRefRow) row;
+                writeVarint(ROW_IMAGE);
+                writeVarint(imageRefRow.getAlignmentStyle().ordinal() | (imageRefRow.isScaleToFit() ? STYLE_SCALE_TO_FIT : 0));
+                writeVarint(imageIndexes.get(imageKey(imageRefRow)));
+            } else {
+                throw new IllegalArgumentException("Unsupported row type: " + row.getClass().getName());
+            }
+        }
+        return MESSAGE_PREFIX + Base64.encodeToString(out.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * @return The number of bytes of the encoded message taken up by the image table
+     */
+    int getImageBytes() {
+        // Base64 turns every three bytes into four characters
+        return (imageBytes * 4 + 2) / 3;
+    }
+
+    private void writeTextRow(TextRow row) {
+        boolean hasFont = row.getPrinterFontId() != PrinterFont.DEFAULT_FONT;
+        int style = row.getAlignmentStyle().ordinal() | row.getUnderlineStyle().ordinal() << 2 | row.getFontStyle().ordinal() << 4;
+        writeVarint(ROW_TEXT);
+        writeVarint(hasFont ? style | STYLE_HAS_FONT : style);
+        if (hasFont) {
+            writeSignedVarint(row.getPrinterFontId());
+        }
+        writeString(row.getText());
+    }
+
+    /**
+     * Writes the image table and returns the index of each distinct image, keyed by {@link #imageKey(ImageRow)} and
+     * {@link #imageKey(ImageRefRow)}.
+     */
+    private Map<Object, Integer> writeImages(PrintRows rows) {
+        Map<Object, Integer> imageIndexes = new HashMap<>();
+        List<PrintRow> imageRows = new ArrayList<>();
+        for (PrintRow row : rows) {
+            Object imageKey = row instanceof ImageRow ? imageKey((ImageRow) row) : row instanceof ImageRefRow ? imageKey((ImageRefRow) row) : null;
+            if (imageKey != null && !imageIndexes.containsKey(imageKey)) {
+                imageIndexes.put(imageKey, imageRows.size());
+                imageRows.add(row);
+            }
+        }
+        int start = out.size();
+        writeVarint(imageRows.size());
+        for (PrintRow imageRow : imageRows) {
+            if (imageRow instanceof ImageRefRow) {
+                writeVarint(IMAGE_KEY);
+                writeString(((ImageRefRow) imageRow).getImageKey());
+                continue;
+            }
+            ImageRow row = (ImageRow) imageRow;
+            String imageRef = outOfBandImages.put(row);
+            if (imageRef != null) {
+                writeVarint(IMAGE_REF);
+                writeString(imageRef);
+            } else {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                row.getImage().compress(Bitmap.CompressFormat.PNG, 100, png);
+                writeVarint(IMAGE_PNG);
+                writeVarint(png.size());
+                out.write(png.toByteArray(), 0, png.size());
+            }
+        }
+        imageBytes = out.size() - start;
+        return imageIndexes;
+    }
+
+    /**
+     * Rows show the same image if they share the image instance (see {@link ImageTable}), or the same image reference.
+     */
+    private static Object imageKey(ImageRow row) {
+        return row.getImage() != null ? row.getImage() : row.getImageRef();
+    }
+
+    /**
+     * Registered image keys are kept apart from image references, which are strings as well.
+     */
+    private static Object imageKey(ImageRefRow row) {
+        return new RegisteredImage(row.getImageKey());
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeSignedVarint(int value) {
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static boolean isBinaryMessage(String message) {
+        return message.startsWith(MESSAGE_PREFIX);
+    }
+
+    /**
+     * Decodes a message created by {@link #encode(PrintPayload)}.
+     *
+     * The message comes from another app, so every length, count and index in it is checked before it is used.
+     *
+     * @throws IllegalArgumentException If the message is not a valid binary payload
+     */
+    static PrintPayload decode(String message) {
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(message.substring(MESSAGE_PREFIX.length()), Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(Reader.MALFORMED, e);
+        }
+        return new Reader(bytes).readPayload();
+    }
+
+    private static final class RegisteredImage {
+
+        private final String key;
+
+        RegisteredImage(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RegisteredImage && key.equals(((RegisteredImage) o).key);
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode();
+        }
+    }
+
+    private static final class Reader {
+
+        static final String MALFORMED = "Malformed binary payload";
+
+        private static final Alignment[] ALIGNMENTS = Alignment.values();
+        private static final Underline[] UNDERLINES = Underline.values();
+        private static final FontStyle[] FONT_STYLES = FontStyle.values();
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        PrintPayload readPayload() {
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported binary payload version: " + version);
+            }
+            PrintPayload printPayload = new PrintPayload();
+            printPayload.setCodePage(readSignedVarint());
+            int flags = readVarint();
+            if ((flags & FLAG_PRINTER_ID) != 0) {
+                printPayload.setPrinterId(readString());
+            }
+            if ((flags & FLAG_LANGUAGE) != 0) {
+                printPayload.setLanguage(readString());
+            }
+            Object[] images = new Object[readCount()];
+            for (int i = 0; i < images.length; i++) {
+                int imageType = readVarint();
+                switch (imageType) {
+                    case IMAGE_PNG:
+                        int length = readLength();
+                        images[i] = BitmapFactory.decodeByteArray(bytes, position, length);
+                        if (images[i] == null) {
+                            throw malformed("image " + i + " is not a valid PNG");
+                        }
+                        position += length;
+                        break;
+                    case IMAGE_REF:
+                        images[i] = readString();
+                        break;
+                    case IMAGE_KEY:
+                        images[i] = new RegisteredImage(readString());
+                        break;
+                    default:
+                        throw malformed("unsupported image type " + imageType);
+                }
+            }
+            int rowCount = readCount();
+            for (int i = 0; i < rowCount; i++) {
+                int rowType = readVarint();
+                int style = readVarint();
+                Alignment alignment = value(ALIGNMENTS, style & 0x3);
+                switch (rowType) {
+                    case ROW_TEXT:
+                        int fontId = (style & STYLE_HAS_FONT) != 0 ? readSignedVarint() : PrinterFont.DEFAULT_FONT;
+                        TextRow textRow = new TextRow(readString(), fontId);
+                        textRow.align(alignment).underline(value(UNDERLINES, style >> 2 & 0x3)).fontStyle(value(FONT_STYLES, style >> 4 & 0x3));
+                        printPayload.append(textRow);
+                        break;
+                    case ROW_IMAGE:
+                        int imageIndex = readVarint();
+                        if (imageIndex < 0 || imageIndex >= images.length) {
+                            throw malformed("row " + i + " refers to image " + imageIndex + " of " + images.length);
+                        }
+                        Object image = images[imageIndex];
+                        boolean scaleToFit = (style & STYLE_SCALE_TO_FIT) != 0;
+                        if (image instanceof RegisteredImage) {
+                            printPayload.append(new ImageRefRow(((RegisteredImage) image).key, scaleToFit).align(alignment));
+                            break;
+                        }
+                        ImageRow imageRow = image instanceof Bitmap ? new ImageRow((Bitmap) image, scaleToFit) : new ImageRow((String) image, scaleToFit);
+                        imageRow.align(alignment);
+                        printPayload.append(imageRow);
+                        break;
+                    default:
+                        throw malformed("unsupported row type " + rowType);
+                }
+            }
+            return printPayload;
+        }
+
+        private String readString() {
+            int length = readLength();
+            String value = new String(bytes, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        /**
+         * Reads the length of a byte sequence, which must fit into the rest of the message.
+         */
+        private int readLength() {
+            int length = readVarint();
+            if (length < 0 || length > bytes.length - position) {
+                throw malformed("length " + length + " exceeds the " + (bytes.length - position) + " remaining bytes");
+            }
+            return length;
+        }
+
+        /**
+         * Reads the number of entries of a table. Each entry takes at least one byte, so there can not be more than there are bytes left.
+         */
+        private int readCount() {
+            int count = readVarint();
+            if (count < 0 || count > bytes.length - position) {
+                throw malformed("count " + count + " exceeds the " + (bytes.length - position) + " remaining bytes");
+            }
+            return count;
+        }
+
+        private int readSignedVarint() {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position >= bytes.length) {
+                    throw malformed("unexpected end of message");
+                }
+                int b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw malformed("varint is too long");
+        }
+
+        private static <T> T value(T[] values, int ordinal) {
+            if (ordinal >= values.length) {
+                throw malformed("unknown " + values[0].getClass().getSimpleName() + " " + ordinal);
+            }
+            return values[ordinal];
+        }
+
+        private static IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException(MALFORMED + ": " + reason);
+        }
+    }
+}
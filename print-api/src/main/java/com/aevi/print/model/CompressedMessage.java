@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Wraps a payload message of any {@link WireFormat} in a deflate compressed envelope and unwraps it again.
+ *
+ * Layout: the prefix, followed by the Base64 encoded zlib stream of the UTF-8 bytes of the wrapped message.
+ */
+final class CompressedMessage {
+
+    static final String MESSAGE_PREFIX = "#PZ1#";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompressedMessage() {
+    }
+
+    /**
+     * @return The compressed envelope of the message
+     */
+    static String compress(String message) {
+        byte[] bytes = message.getBytes(UTF_8);
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return MESSAGE_PREFIX + Base64.encodeToString(out.toByteArray(), Base64.NO_WRAP);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static boolean isCompressedMessage(String message) {
+        return message.startsWith(MESSAGE_PREFIX);
+    }
+
+    /**
+     * Unwraps a message created by {@link #compress(String)}.
+     */
+    static String decompress(String message) {
+        byte[] bytes = Base64.decode(message.substring(MESSAGE_PREFIX.length()), Base64.NO_WRAP);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed message");
+                }
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed compressed message", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * An {@link ImageStore} that writes each image to a PNG file in a directory and refers to it by its file URI.
+ *
+ * The image is compressed straight into the file, so the image data is written once instead of being encoded into the payload message,
+ * copied across processes and decoded again. The print service must be able to read the directory, and only reads files in it.
+ */
+public class FileImageStore implements ImageStore {
+
+    private static final String FILE_PREFIX = "image-";
+    private static final String FILE_SUFFIX = ".png";
+
+    private final File directory;
+
+    /**
+     * @param directory The directory to write images to. It is created if it does not exist
+     */
+    public FileImageStore(File directory) {
+        this.directory = checkNotNull(directory, "directory must not be null");
+    }
+
+    @Override
+    public String put(Bitmap image) throws IOException {
+        checkNotNull(image, "image must not be null");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create image directory " + directory);
+        }
+        File file = new File(directory, FILE_PREFIX + UUID.randomUUID() + FILE_SUFFIX);
+        FileOutputStream out = new FileOutputStream(file);
+        boolean written = false;
+        try {
+            written = image.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+        if (!written) {
+            throw new IOException("Unable to write image to " + file);
+        }
+        return Uri.fromFile(file).toString();
+    }
+
+    @Override
+    public Bitmap get(String imageRef) throws IOException {
+        File file = toFile(imageRef);
+        if (file == null || !file.isFile()) {
+            throw new IOException("Image not found: " + imageRef);
+        }
+        Bitmap image = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (image == null) {
+            throw new IOException("Unable to decode image: " + imageRef);
+        }
+        return image;
+    }
+
+    @Override
+    public void release(String imageRef) {
+        File file = toFile(imageRef);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Maps a reference back to its file, or returns null if it does not refer to an image file in the directory of this store.
+     */
+    private File toFile(String imageRef) {
+        if (imageRef == null) {
+            return null;
+        }
+        Uri uri = Uri.parse(imageRef);
+        if (!"file".equals(uri.getScheme()) || uri.getPath() == null) {
+            return null;
+        }
+        File file = new File(uri.getPath());
+        String name = file.getName();
+        if (!directory.getAbsoluteFile().equals(file.getParentFile()) || !name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return null;
+        }
+        return file;
+    }
+}
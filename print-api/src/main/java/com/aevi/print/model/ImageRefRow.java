@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import com.aevi.util.json.JsonConverter;
+
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * This class represents an image line in a {@link PrintPayload} that refers to an image registered with the print service via
+ * {@link com.aevi.print.PrinterManager#registerImage(String, android.graphics.Bitmap)}, rather than carrying the image itself.
+ */
+public class ImageRefRow implements PrintRow {
+
+    private final String imageKey;
+    private final boolean scaleToFit;
+    private Alignment alignment = Alignment.LEFT;
+
+    /**
+     * Creates a left aligned row that shows the registered image with the given key.
+     *
+     * @param imageKey   The key the image has been registered with. This parameter must not be empty.
+     * @param scaleToFit If true the image will be scaled down to fit the page if it is too large. If false the image will be cropped.
+     */
+    public ImageRefRow(String imageKey, boolean scaleToFit) {
+        if (imageKey == null || imageKey.isEmpty()) {
+            throw new IllegalArgumentException("imageKey must not be empty");
+        }
+        this.imageKey = imageKey;
+        this.scaleToFit = scaleToFit;
+    }
+
+    /**
+     * @return The key of the registered image
+     */
+    public String getImageKey() {
+        return imageKey;
+    }
+
+    /**
+     * @return True if this image should be scaled to fit the full width of the output paper.
+     */
+    public boolean isScaleToFit() {
+        return scaleToFit;
+    }
+
+    /**
+     * Gets the alignment of this image row.
+     *
+     * @return the alignment,
+     */
+    public Alignment getAlignmentStyle() {
+        return alignment;
+    }
+
+    /**
+     * Sets the alignment of this image row.
+     *
+     * @param alignment the alignment to set,
+     * @return This ImageRefRow object
+     */
+    public ImageRefRow align(Alignment alignment) {
+        this.alignment = checkNotNull(alignment, "alignment must not be null");
+        return this;
+    }
+
+    /**
+     * @return A new row with the same key and style, e.g. for a frozen payload (see {@link PrintPayload#freeze()})
+     */
+    ImageRefRow copy() {
+        return new ImageRefRow(imageKey, scaleToFit).align(alignment);
+    }
+
+    @Override
+    public String toJson() {
+        return JsonConverter.serialize(this);
+    }
+
+    public static ImageRefRow fromJson(String json) {
+        return JsonConverter.deserialize(json, ImageRefRow.class);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import com.aevi.util.json.JsonConverter;
+
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * Asks the print service to keep an image under a key, so that payloads can refer to it via {@link ImageRefRow}s instead of carrying it.
+ *
+ * This is sent to the same print service component as payloads. Print services use {@link #isImageRegistration(String)} to tell the two
+ * apart, and reply with a {@link PrintJob} that is {@link PrintJob.State#PRINTED} once the image has been registered or
+ * {@link PrintJob.State#FAILED} if it has not.
+ */
+public final class ImageRegistration {
+
+    static final String MESSAGE_PREFIX = "#IR1#";
+
+    private final String imageKey;
+    private final Bitmap image;
+
+    public ImageRegistration(String imageKey, Bitmap image) {
+        this.imageKey = checkNotNull(imageKey, "imageKey must not be null");
+        this.image = checkNotNull(image, "image must not be null");
+    }
+
+    /**
+     * @return The key payloads refer to the image by
+     */
+    public String getImageKey() {
+        return imageKey;
+    }
+
+    /**
+     * @return The image to register
+     */
+    public Bitmap getImage() {
+        return image;
+    }
+
+    /**
+     * @return The message sent to the print service
+     */
+    public String toMessage() {
+        return MESSAGE_PREFIX + JsonConverter.serialize(this);
+    }
+
+    /**
+     * @param message The message as received by the print service
+     * @return True if the message is an image registration rather than a payload
+     */
+    public static boolean isImageRegistration(String message) {
+        return message != null && message.startsWith(MESSAGE_PREFIX);
+    }
+
+    /**
+     * Decodes a message created by {@link #toMessage()}.
+     *
+     * @param message The message as received by the print service
+     * @return The decoded registration
+     */
+    public static ImageRegistration fromMessage(String message) {
+        if (!isImageRegistration(message)) {
+            throw new IllegalArgumentException("Not an image registration");
+        }
+        return JsonConverter.deserialize(message.substring(MESSAGE_PREFIX.length()), ImageRegistration.class);
+    }
+}
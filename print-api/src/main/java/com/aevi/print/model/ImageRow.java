@@ -26,6 +26,7 @@ public class ImageRow implements PrintRow {
     private static final int DEFAULT_CONTRAST_LEVEL = 50;
 
     private final Bitmap image;
+    private final String imageRef;
     private final boolean scaleToFit;
     private Alignment alignment = Alignment.LEFT;
     private int contrastLevel = DEFAULT_CONTRAST_LEVEL;
@@ -51,6 +52,13 @@ public class ImageRow implements PrintRow {
      */
     public ImageRow(Bitmap image, boolean scaleToFit) {
         this.image = checkNotNull(image, "image must not be null");
+        this.imageRef = null;
+        this.scaleToFit = scaleToFit;
+    }
+
+    ImageRow(String imageRef, boolean scaleToFit) {
+        this.image = null;
+        this.imageRef = imageRef;
         this.scaleToFit = scaleToFit;
     }
 
@@ -61,15 +69,42 @@ public class ImageRow implements PrintRow {
         return scaleToFit;
     }
 
+    /**
+     * @return A copy of this row that shows the given image
+     */
+    @SuppressWarnings("deprecation")
+    ImageRow withImage(Bitmap image) {
+        return new ImageRow(image, scaleToFit).align(alignment).contrastLevel(contrastLevel);
+    }
+
+    /**
+     * @return A new row with the same image or image reference and style, e.g. for a frozen payload (see {@link PrintPayload#freeze()})
+     */
+    @SuppressWarnings("deprecation")
+    ImageRow copy() {
+        ImageRow copy = image != null ? new ImageRow(image, scaleToFit) : new ImageRow(imageRef, scaleToFit);
+        return copy.align(alignment).contrastLevel(contrastLevel);
+    }
+
     /**
      * Gets the image of this image row.
      *
-     * @return the image.
+     * @return the image, or null if the image was sent via an {@link ImageStore}. See {@link #getImageRef()}.
      */
     public Bitmap getImage() {
         return image;
     }
 
+    /**
+     * Gets the reference to the image of this row in an {@link ImageStore}. Print services receive such rows when the image was sent out
+     * of band, use {@link PrintPayload#resolveImages(ImageStore)} to read the images back.
+     *
+     * @return the image reference, or null if the image is carried in this row.
+     */
+    public String getImageRef() {
+        return imageRef;
+    }
+
     /**
      * Gets the alignment of this image row.
      *
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+/**
+ * Stores the images of {@link ImageRow}s outside of the payload message, so that the message only carries a reference to each image.
+ *
+ * The client puts images into the store when a payload is prepared and the print service gets them back via
+ * {@link PrintPayload#resolveImages(ImageStore)}. Both sides must therefore be able to reach the same storage, for example a directory
+ * both apps can read or a content provider. See {@link FileImageStore} for a file based store.
+ */
+public interface ImageStore {
+
+    /**
+     * Writes an image to the store.
+     *
+     * @param image The image to store
+     * @return The reference to the image. This is sent to the print service in place of the image
+     * @throws IOException if the image could not be written
+     */
+    String put(Bitmap image) throws IOException;
+
+    /**
+     * Reads an image from the store.
+     *
+     * @param imageRef The reference returned by {@link #put(Bitmap)}
+     * @return The image
+     * @throws IOException if the image could not be read
+     */
+    Bitmap get(String imageRef) throws IOException;
+
+    /**
+     * Removes an image from the store. Releasing an image that is not in the store has no effect.
+     *
+     * @param imageRef The reference returned by {@link #put(Bitmap)}
+     */
+    void release(String imageRef);
+}
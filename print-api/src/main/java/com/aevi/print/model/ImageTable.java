@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct images of a {@link PrintPayload}, keyed by their content.
+ *
+ * Image rows are pointed at the first image appended with the same pixels, so a payload holds each distinct image once and encoders,
+ * which cache their work per image instance, encode each distinct image once no matter how many rows show it.
+ */
+final class ImageTable {
+
+    // every image instance seen so far, including duplicates, mapped to the image in the table with its content
+    private final Map<Bitmap, Bitmap> canonicalImages = new IdentityHashMap<>();
+    private final Map<Integer, List<Bitmap>> imagesByHash = new HashMap<>();
+    private final Map<Bitmap, Integer> contentHashes = new IdentityHashMap<>();
+
+    /**
+     * @return The image in the table with the same content as the given image, which is added to the table if there is none
+     */
+    Bitmap add(Bitmap image) {
+        Bitmap canonical = canonicalImages.get(image);
+        if (canonical != null) {
+            return canonical;
+        }
+        int hash = contentHash(image);
+        List<Bitmap> candidates = imagesByHash.get(hash);
+        if (candidates == null) {
+            candidates = new ArrayList<>(1);
+            imagesByHash.put(hash, candidates);
+        }
+        for (Bitmap candidate : candidates) {
+            if (sameContent(candidate, image)) {
+                // remembered, so that appending the same duplicate again does not read its pixels again
+                canonicalImages.put(image, candidate);
+                return candidate;
+            }
+        }
+        candidates.add(image);
+        canonicalImages.put(image, image);
+        contentHashes.put(image, hash);
+        return image;
+    }
+
+    /**
+     * @return The content hash of an image in the table, or null if the image is not in the table
+     */
+    Integer getContentHash(Bitmap image) {
+        return contentHashes.get(image);
+    }
+
+    /**
+     * Removes all images.
+     */
+    void clear() {
+        canonicalImages.clear();
+        imagesByHash.clear();
+        contentHashes.clear();
+    }
+
+    /**
+     * @return The number of distinct images
+     */
+    int size() {
+        return contentHashes.size();
+    }
+
+    /**
+     * Hashes the pixels one row at a time, so that only a row of the image is copied out of the bitmap at once.
+     */
+    static int contentHash(Bitmap image) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        int hash = 1;
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getPixels(row, 0, width, 0, y, width, 1);
+            for (int pixel : row) {
+                hash = 31 * hash + pixel;
+            }
+        }
+        return 31 * (31 * width + image.getHeight()) + hash;
+    }
+
+    /**
+     * Compares the pixels one row at a time and stops at the first row that differs.
+     */
+    static boolean sameContent(Bitmap first, Bitmap second) {
+        int width = first.getWidth();
+        if (width != second.getWidth() || first.getHeight() != second.getHeight()) {
+            return false;
+        }
+        int[] firstRow = new int[width];
+        int[] secondRow = new int[width];
+        for (int y = 0; y < first.getHeight(); y++) {
+            first.getPixels(firstRow, 0, width, 0, y, width, 1);
+            second.getPixels(secondRow, 0, width, 0, y, width, 1);
+            if (!Arrays.equals(firstRow, secondRow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
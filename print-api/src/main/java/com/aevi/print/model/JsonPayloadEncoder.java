@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import com.aevi.util.json.JsonConverter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Encodes a {@link PrintPayload} in the {@link WireFormat#JSON} format.
+ *
+ * The output is the same as {@link PrintPayload#toJson()}, but it is written one row at a time straight into the destination. Text
+ * rows are written field by field, so no intermediate string or object tree is built for them. Other rows are serialized on their
+ * own, so the peak memory needed on top of the destination is that of the largest row. Images that are put into an {@link ImageStore}
+ * are written as a reference only.
+ *
+ * The JSON format has no image table, so that print services can keep reading image rows on their own. Each distinct image is
+ * serialized once, but the result is written in full for every row that shows it. This saves the work of serializing repeated images,
+ * not the size of the payload; only {@link WireFormat#BINARY} writes each image once.
+ */
+final class JsonPayloadEncoder {
+
+    private final OutOfBandImages outOfBandImages;
+    private final Map<Bitmap, String> imageJsonByImage = new IdentityHashMap<>();
+    private int imageBytes;
+
+    JsonPayloadEncoder() {
+        this(new OutOfBandImages(null));
+    }
+
+    JsonPayloadEncoder(OutOfBandImages outOfBandImages) {
+        this.outOfBandImages = outOfBandImages;
+    }
+
+    String encode(PrintPayload printPayload) {
+        StringWriter stringWriter = new StringWriter(64 + printPayload.getRowView().size() * 128);
+        try {
+            write(printPayload, stringWriter);
+        } catch (IOException e) {
+            // a StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        return stringWriter.toString();
+    }
+
+    void write(PrintPayload printPayload, Writer writer) throws IOException {
+        JsonWriter out = new JsonWriter(writer);
+        out.setHtmlSafe(true);
+        out.beginObject();
+        out.name("rows").beginArray();
+        for (PrintRow row : printPayload.getRowView()) {
+            out.beginObject();
+            out.name("value");
+            String imageRef = row instanceof ImageRow ? outOfBandImages.put((ImageRow) row) : null;
+            if (row instanceof TextRow) {
+                ModelJson.TEXT_ROW.write(out, (TextRow) row);
+            } else if (imageRef != null) {
+                writeImageRefRow(out, (ImageRow) row, imageRef);
+            } else if (row instanceof ImageRow) {
+                writeImageRow(out, (ImageRow) row);
+            } else {
+                out.jsonValue(JsonConverter.serialize(row));
+            }
+            out.name("type").value(row.getClass().getName());
+            out.endObject();
+        }
+        out.endArray();
+        out.name("codePage").value(printPayload.getCodePage());
+        if (printPayload.getPrinterId() != null) {
+            out.name("printerId").value(printPayload.getPrinterId());
+        }
+        if (printPayload.getLanguage() != null) {
+            out.name("languageCode").value(printPayload.getLanguage());
+        }
+        out.endObject();
+        out.flush();
+    }
+
+    /**
+     * Writes the same fields as reflection would, but serializes each image instance only once.
+     */
+    @SuppressWarnings("deprecation")
+    private void writeImageRow(JsonWriter out, ImageRow row) throws IOException {
+        String imageJson = imageJsonByImage.get(row.getImage());
+        if (imageJson == null) {
+            imageJson = JsonConverter.serialize(row.getImage());
+            imageJsonByImage.put(row.getImage(), imageJson);
+        }
+        imageBytes += PreparedPrintPayload.utf8Length(imageJson);
+        out.beginObject();
+        out.name("image").jsonValue(imageJson);
+        out.name("scaleToFit").value(row.isScaleToFit());
+        out.name("alignment").value(row.getAlignmentStyle().name());
+        out.name("contrastLevel").value(row.getContrastLevel());
+        out.endObject();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void writeImageRefRow(JsonWriter out, ImageRow row, String imageRef) throws IOException {
+        out.beginObject();
+        out.name("imageRef").value(imageRef);
+        out.name("scaleToFit").value(row.isScaleToFit());
+        out.name("alignment").value(row.getAlignmentStyle().name());
+        out.name("contrastLevel").value(row.getContrastLevel());
+        out.endObject();
+    }
+
+    /**
+     * @return The number of bytes of the encoded payload taken up by the values of image rows when encoded as UTF-8, counting an image
+     * once for every row that shows it
+     */
+    int getImageBytes() {
+        return imageBytes;
+    }
+}
@@ -0,0 +1,675 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.util.Log;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hand-written Gson type adapters for the model classes that are exchanged with the print service.
+ *
+ * The adapters read and write fields directly instead of looking them up via reflection, and read arrays without building
+ * intermediate lists. The JSON they write is the same as {@link com.aevi.util.json.JsonConverter} writes for these classes, so
+ * print services that still use reflection can read it: null values are left out and enums are written by name. Enums are read
+ * by name or by ordinal, and unknown fields are skipped. Unknown enum values are read as null, and printer settings that can not be
+ * created from what was read are left out of a settings list.
+ */
+final class ModelJson {
+
+    private static final String TAG = ModelJson.class.getSimpleName();
+
+    private static final Alignment[] ALIGNMENTS = Alignment.values();
+    private static final Underline[] UNDERLINES = Underline.values();
+    private static final FontStyle[] FONT_STYLES = FontStyle.values();
+    private static final PaperKind[] PAPER_KINDS = PaperKind.values();
+    private static final PrintJob.State[] PRINT_JOB_STATES = PrintJob.State.values();
+
+    private static final String[] EMPTY_STRINGS = new String[0];
+    private static final int[] EMPTY_INTS = new int[0];
+
+    private ModelJson() {
+    }
+
+    static <T> String toJson(TypeAdapter<T> adapter, T value) {
+        StringWriter stringWriter = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(stringWriter);
+            out.setHtmlSafe(true);
+            adapter.write(out, value);
+        } catch (IOException e) {
+            // a StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        return stringWriter.toString();
+    }
+
+    static <T> T fromJson(TypeAdapter<T> adapter, String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            JsonReader in = new JsonReader(new StringReader(json));
+            in.setLenient(true);
+            if (in.peek() == JsonToken.END_DOCUMENT) {
+                return null;
+            }
+            return adapter.read(in);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    static final TypeAdapter<PrintJob> PRINT_JOB = new TypeAdapter<PrintJob>() {
+        @Override
+        public void write(JsonWriter out, PrintJob printJob) throws IOException {
+            if (printJob == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeEnum(out, "printJobState", printJob.getPrintJobState());
+            // an empty reason reads back the same as none
+            if (!printJob.getFailedReason().isEmpty()) {
+                out.name("failedReason").value(printJob.getFailedReason());
+            }
+            writeString(out, "diagnosticMessage", printJob.getDiagnosticMessage());
+            out.endObject();
+        }
+
+        @Override
+        public PrintJob read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            PrintJob.State state = null;
+            String failedReason = null;
+            String diagnosticMessage = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "printJobState":
+                        state = readEnum(in, PRINT_JOB_STATES);
+                        break;
+                    case "failedReason":
+                        failedReason = in.nextString();
+                        break;
+                    case "diagnosticMessage":
+                        diagnosticMessage = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new PrintJob(state, failedReason, diagnosticMessage);
+        }
+    };
+
+    static final TypeAdapter<PrinterStatus> PRINTER_STATUS = new TypeAdapter<PrinterStatus>() {
+        @Override
+        public void write(JsonWriter out, PrinterStatus printerStatus) throws IOException {
+            if (printerStatus == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "status", printerStatus.getStatus());
+            out.endObject();
+        }
+
+        @Override
+        public PrinterStatus read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            String status = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (!skipNull(in)) {
+                    if ("status".equals(name)) {
+                        status = in.nextString();
+                    } else {
+                        in.skipValue();
+                    }
+                }
+            }
+            in.endObject();
+            return new PrinterStatus(status);
+        }
+    };
+
+    static final TypeAdapter<PrintAction> PRINT_ACTION = new TypeAdapter<PrintAction>() {
+        @Override
+        public void write(JsonWriter out, PrintAction printAction) throws IOException {
+            if (printAction == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "printerId", printAction.getPrinterId());
+            writeString(out, "action", printAction.getAction());
+            out.endObject();
+        }
+
+        @Override
+        public PrintAction read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            String printerId = null;
+            String action = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "printerId":
+                        printerId = in.nextString();
+                        break;
+                    case "action":
+                        action = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new PrintAction(printerId, action);
+        }
+    };
+
+    static final TypeAdapter<TextRow> TEXT_ROW = new TypeAdapter<TextRow>() {
+        @Override
+        public void write(JsonWriter out, TextRow textRow) throws IOException {
+            if (textRow == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("text").value(textRow.getText());
+            out.name("printerFontId").value(textRow.getPrinterFontId());
+            writeEnum(out, "underline", textRow.getUnderlineStyle());
+            writeEnum(out, "fontStyle", textRow.getFontStyle());
+            writeEnum(out, "alignment", textRow.getAlignmentStyle());
+            out.endObject();
+        }
+
+        @Override
+        public TextRow read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            String text = null;
+            int printerFontId = PrinterFont.DEFAULT_FONT;
+            Underline underline = null;
+            FontStyle fontStyle = null;
+            Alignment alignment = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "text":
+                        text = in.nextString();
+                        break;
+                    case "printerFontId":
+                        printerFontId = in.nextInt();
+                        break;
+                    case "underline":
+                        underline = readEnum(in, UNDERLINES);
+                        break;
+                    case "fontStyle":
+                        fontStyle = readEnum(in, FONT_STYLES);
+                        break;
+                    case "alignment":
+                        alignment = readEnum(in, ALIGNMENTS);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (text == null) {
+                throw new JsonParseException("Text row is missing its text");
+            }
+            TextRow textRow = new TextRow(text, printerFontId);
+            if (underline != null) {
+                textRow.underline(underline);
+            }
+            if (fontStyle != null) {
+                textRow.fontStyle(fontStyle);
+            }
+            if (alignment != null) {
+                textRow.align(alignment);
+            }
+            return textRow;
+        }
+    };
+
+    static final TypeAdapter<PrinterFont> PRINTER_FONT = new TypeAdapter<PrinterFont>() {
+        @Override
+        public void write(JsonWriter out, PrinterFont printerFont) throws IOException {
+            if (printerFont == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(printerFont.getId());
+            writeString(out, "name", printerFont.getName());
+            out.name("width").value(printerFont.getWidth());
+            out.name("height").value(printerFont.getHeight());
+            out.name("isDefault").value(printerFont.isDefault());
+            out.name("numColumns").value(printerFont.getNumColumns());
+            out.name("lineHeight").value(printerFont.getLineHeight());
+            FontStyle[] supportedFontStyles = printerFont.getSupportedFontStyles();
+            if (supportedFontStyles != null) {
+                out.name("supportedFontStyles").beginArray();
+                for (FontStyle fontStyle : supportedFontStyles) {
+                    if (fontStyle == null) {
+                        out.nullValue();
+                    } else {
+                        out.value(fontStyle.name());
+                    }
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PrinterFont read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            int id = 0;
+            String fontName = null;
+            int width = 0;
+            int height = 0;
+            boolean isDefault = false;
+            int numColumns = 0;
+            int lineHeight = 0;
+            FontStyle[] supportedFontStyles = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id":
+                        id = in.nextInt();
+                        break;
+                    case "name":
+                        fontName = in.nextString();
+                        break;
+                    case "width":
+                        width = in.nextInt();
+                        break;
+                    case "height":
+                        height = in.nextInt();
+                        break;
+                    case "isDefault":
+                        isDefault = in.nextBoolean();
+                        break;
+                    case "numColumns":
+                        numColumns = in.nextInt();
+                        break;
+                    case "lineHeight":
+                        lineHeight = in.nextInt();
+                        break;
+                    case "supportedFontStyles":
+                        supportedFontStyles = readFontStyles(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new PrinterFont(id, fontName, width, height, isDefault, numColumns, lineHeight, supportedFontStyles);
+        }
+    };
+
+    static final TypeAdapter<PrinterSettings> PRINTER_SETTINGS = new TypeAdapter<PrinterSettings>() {
+        @Override
+        public void write(JsonWriter out, PrinterSettings settings) throws IOException {
+            if (settings == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeString(out, "printerId", settings.getPrinterId());
+            out.name("paperWidth").value(settings.getPaperWidth());
+            out.name("printableWidth").value(settings.getPrintableWidth());
+            // boxed, so that it is written like a float rather than widened to a double
+            out.name("paperDotsPmm").value(Float.valueOf(settings.getPaperDotsPerMm()));
+            writeEnum(out, "paperKind", settings.getPaperKind());
+            writeStrings(out, "commands", settings.getCommands());
+            int[] codepages = settings.getCodepages();
+            if (codepages != null) {
+                out.name("codepages").beginArray();
+                for (int codepage : codepages) {
+                    out.value(codepage);
+                }
+                out.endArray();
+            }
+            Map<String, String> options = settings.getOptions();
+            if (options != null) {
+                out.name("options").beginObject();
+                for (Map.Entry<String, String> option : options.entrySet()) {
+                    writeString(out, String.valueOf(option.getKey()), option.getValue());
+                }
+                out.endObject();
+            }
+            out.name("canHandleCommands").value(settings.canHandleCommands());
+            out.name("doesReportStatus").value(settings.doesReportPrinterStatus());
+            out.name("doesSupportCodepages").value(settings.doesSupportCodePages());
+            writeStrings(out, "supportedLanguages", settings.getSupportedLanguages());
+            PrinterFont[] printerFonts = settings.getPrinterFonts();
+            if (printerFonts != null) {
+                out.name("printerFonts").beginArray();
+                for (PrinterFont printerFont : printerFonts) {
+                    PRINTER_FONT.write(out, printerFont);
+                }
+                out.endArray();
+            }
+            // the display name falls back to the printer id, which does not need to be sent
+            String displayName = settings.getDisplayName();
+            if (displayName != null && !displayName.equals(settings.getPrinterId())) {
+                out.name("displayName").value(displayName);
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PrinterSettings read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            String printerId = null;
+            int paperWidth = 0;
+            int printableWidth = 0;
+            float paperDotsPmm = 0;
+            PaperKind paperKind = null;
+            boolean unknownPaperKind = false;
+            String[] commands = null;
+            int[] codepages = null;
+            Map<String, String> options = null;
+            boolean canHandleCommands = false;
+            boolean doesReportStatus = false;
+            boolean doesSupportCodepages = false;
+            String[] supportedLanguages = null;
+            PrinterFont[] printerFonts = null;
+            String displayName = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                switch (name) {
+                    case "printerId":
+                        printerId = in.nextString();
+                        break;
+                    case "paperWidth":
+                        paperWidth = in.nextInt();
+                        break;
+                    case "printableWidth":
+                        printableWidth = in.nextInt();
+                        break;
+                    case "paperDotsPmm":
+                        paperDotsPmm = (float) in.nextDouble();
+                        break;
+                    case "paperKind":
+                        paperKind = readEnum(in, PAPER_KINDS);
+                        unknownPaperKind = paperKind == null;
+                        break;
+                    case "commands":
+                        commands = readStrings(in);
+                        break;
+                    case "codepages":
+                        codepages = readInts(in);
+                        break;
+                    case "options":
+                        options = readOptions(in);
+                        break;
+                    case "canHandleCommands":
+                        canHandleCommands = in.nextBoolean();
+                        break;
+                    case "doesReportStatus":
+                        doesReportStatus = in.nextBoolean();
+                        break;
+                    case "doesSupportCodepages":
+                        doesSupportCodepages = in.nextBoolean();
+                        break;
+                    case "supportedLanguages":
+                        supportedLanguages = readStrings(in);
+                        break;
+                    case "printerFonts":
+                        printerFonts = readPrinterFonts(in);
+                        break;
+                    case "displayName":
+                        displayName = in.nextString();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            try {
+                PrinterSettings settings = new PrinterSettings(printerId, paperWidth, printableWidth, paperDotsPmm, paperKind, unknownPaperKind,
+                                                               printerFonts, canHandleCommands, commands, doesReportStatus, codepages,
+                                                               doesSupportCodepages, options, supportedLanguages);
+                settings.setDisplayName(displayName);
+                return settings;
+            } catch (IllegalArgumentException e) {
+                // the object has been read completely at this point, so a list can skip it and carry on
+                throw new JsonParseException(e.getMessage(), e);
+            }
+        }
+    };
+
+    static final TypeAdapter<PrinterSettingsList> PRINTER_SETTINGS_LIST = new TypeAdapter<PrinterSettingsList>() {
+        @Override
+        public void write(JsonWriter out, PrinterSettingsList settingsList) throws IOException {
+            if (settingsList == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            PrinterSettings[] printerSettings = settingsList.getPrinterSettings();
+            if (printerSettings != null) {
+                out.name("printerSettings").beginArray();
+                for (PrinterSettings settings : printerSettings) {
+                    PRINTER_SETTINGS.write(out, settings);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public PrinterSettingsList read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            PrinterSettings[] printerSettings = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (skipNull(in)) {
+                    continue;
+                }
+                if ("printerSettings".equals(name)) {
+                    printerSettings = new PrinterSettings[4];
+                    int count = 0;
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        if (count == printerSettings.length) {
+                            printerSettings = Arrays.copyOf(printerSettings, count * 2);
+                        }
+                        try {
+                            printerSettings[count] = PRINTER_SETTINGS.read(in);
+                            count++;
+                        } catch (JsonParseException e) {
+                            // one printer with incomplete settings must not hide all the others
+                            Log.w(TAG, "Skipping unreadable printer settings: " + e.getMessage());
+                        }
+                    }
+                    in.endArray();
+                    printerSettings = count == printerSettings.length ? printerSettings : Arrays.copyOf(printerSettings, count);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return new PrinterSettingsList(printerSettings);
+        }
+    };
+
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeEnum(JsonWriter out, String name, Enum<?> value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value.name());
+        }
+    }
+
+    private static void writeStrings(JsonWriter out, String name, String[] values) throws IOException {
+        if (values == null) {
+            return;
+        }
+        out.name(name).beginArray();
+        for (String value : values) {
+            out.value(value);
+        }
+        out.endArray();
+    }
+
+    /**
+     * Reads an enum written by name or by ordinal. Unknown values are read as null, like Gson does.
+     */
+    private static <E extends Enum<E>> E readEnum(JsonReader in, E[] values) throws IOException {
+        if (in.peek() == JsonToken.NUMBER) {
+            int ordinal = in.nextInt();
+            return ordinal >= 0 && ordinal < values.length ? values[ordinal] : null;
+        }
+        String name = in.nextString();
+        for (E value : values) {
+            if (value.name().equals(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String[] readStrings(JsonReader in) throws IOException {
+        String[] values = EMPTY_STRINGS;
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, count * 2));
+            }
+            values[count++] = skipNull(in) ? null : in.nextString();
+        }
+        in.endArray();
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static int[] readInts(JsonReader in) throws IOException {
+        int[] values = EMPTY_INTS;
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.max(8, count * 2));
+            }
+            values[count++] = in.nextInt();
+        }
+        in.endArray();
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static FontStyle[] readFontStyles(JsonReader in) throws IOException {
+        FontStyle[] values = new FontStyle[FONT_STYLES.length];
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = skipNull(in) ? null : readEnum(in, FONT_STYLES);
+        }
+        in.endArray();
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static PrinterFont[] readPrinterFonts(JsonReader in) throws IOException {
+        PrinterFont[] values = new PrinterFont[4];
+        int count = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = PRINTER_FONT.read(in);
+        }
+        in.endArray();
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    private static Map<String, String> readOptions(JsonReader in) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            options.put(name, skipNull(in) ? null : in.nextString());
+        }
+        in.endObject();
+        return options;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts the images of a payload into an {@link ImageStore} while it is being encoded and keeps track of them so they can be released.
+ * Each image instance is put into the store once, however many rows show it.
+ */
+final class OutOfBandImages {
+
+    private static final String TAG = OutOfBandImages.class.getSimpleName();
+
+    private final ImageStore imageStore;
+    private final List<String> imageRefs = new ArrayList<>();
+    private final Map<Bitmap, String> imageRefsByImage = new IdentityHashMap<>();
+
+    OutOfBandImages(ImageStore imageStore) {
+        this.imageStore = imageStore;
+    }
+
+    /**
+     * @return The reference to use for the image of the row, or null if the image has to be sent inline
+     */
+    String put(ImageRow row) {
+        if (row.getImageRef() != null) {
+            return row.getImageRef();
+        }
+        if (imageStore == null) {
+            return null;
+        }
+        String imageRef = imageRefsByImage.get(row.getImage());
+        if (imageRef != null) {
+            return imageRef;
+        }
+        try {
+            imageRef = imageStore.put(row.getImage());
+            imageRefs.add(imageRef);
+            imageRefsByImage.put(row.getImage(), imageRef);
+            return imageRef;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to store image, sending it inline", e);
+            return null;
+        }
+    }
+
+    List<String> getImageRefs() {
+        return imageRefs;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * What is worked out once for a frozen {@link PrintPayload}: a hash of its structure, the content hashes of its images and, when first
+ * needed, its JSON and its prepared forms.
+ *
+ * The structure of a payload is its rows, compared field by field with images compared by content, and its code page, printer id and
+ * language. Two frozen payloads with the same structure are equal, so a frozen payload can be used as a key for caches of previews or
+ * prepared payloads, or to detect that the same receipt is printed twice.
+ */
+final class PayloadSnapshot {
+
+    private final PrintPayload payload;
+    private final Map<Bitmap, Integer> imageHashes = new IdentityHashMap<>();
+    private final int hash;
+    private volatile String json;
+    private final PreparedPrintPayload[] preparedByFormat = new PreparedPrintPayload[WireFormat.values().length];
+
+    /**
+     * @param payload    The frozen payload
+     * @param imageTable The image table of the payload the snapshot was taken of, which already knows the content hashes of its images
+     */
+    PayloadSnapshot(PrintPayload payload, ImageTable imageTable) {
+        this.payload = payload;
+        int result = 17;
+        for (PrintRow row : payload.getRowView()) {
+            result = 31 * result + rowHash(row, imageTable);
+        }
+        result = 31 * result + payload.getCodePage();
+        result = 31 * result + hashOf(payload.getPrinterId());
+        this.hash = 31 * result + hashOf(payload.getLanguage());
+    }
+
+    int getHash() {
+        return hash;
+    }
+
+    String getJson() {
+        String result = json;
+        if (result == null) {
+            result = new JsonPayloadEncoder().encode(payload);
+            json = result;
+        }
+        return result;
+    }
+
+    PreparedPrintPayload getPrepared(WireFormat wireFormat) {
+        synchronized (preparedByFormat) {
+            PreparedPrintPayload prepared = preparedByFormat[wireFormat.ordinal()];
+            if (prepared == null) {
+                prepared = new PreparedPrintPayload(payload, wireFormat, null);
+                preparedByFormat[wireFormat.ordinal()] = prepared;
+            }
+            return prepared;
+        }
+    }
+
+    /**
+     * @return True if the payload of the other snapshot has the same structure as the payload of this snapshot
+     */
+    boolean sameStructure(PayloadSnapshot other) {
+        if (hash != other.hash) {
+            return false;
+        }
+        PrintPayload otherPayload = other.payload;
+        if (payload.getCodePage() != otherPayload.getCodePage()
+                || !equal(payload.getPrinterId(), otherPayload.getPrinterId())
+                || !equal(payload.getLanguage(), otherPayload.getLanguage())) {
+            return false;
+        }
+        PrintRows rows = payload.getRowView();
+        PrintRows otherRows = otherPayload.getRowView();
+        if (rows.size() != otherRows.size()) {
+            return false;
+        }
+        // walk both payloads with iterators, as indexed access to linked segments is not constant time
+        Iterator<PrintRow> otherIterator = otherRows.iterator();
+        for (PrintRow row : rows) {
+            if (!sameRow(row, otherIterator.next(), other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private int rowHash(PrintRow row, ImageTable imageTable) {
+        if (row instanceof TextRow) {
+            TextRow textRow = (TextRow) row;
+            int result = textRow.getText().hashCode();
+            result = 31 * result + textRow.getPrinterFontId();
+            result = 31 * result + textRow.getUnderlineStyle().ordinal();
+            result = 31 * result + textRow.getFontStyle().ordinal();
+            return 31 * result + textRow.getAlignmentStyle().ordinal();
+        } else if (row instanceof ImageRow) {
+            ImageRow imageRow = (ImageRow) row;
+            int result = imageRow.getImage() != null ? imageHash(imageRow.getImage(), imageTable) : 0;
+            result = 31 * result + hashOf(imageRow.getImageRef());
+            result = 31 * result + (imageRow.isScaleToFit() ? 1 : 0);
+            result = 31 * result + imageRow.getAlignmentStyle().ordinal();
+            return 31 * result + imageRow.getContrastLevel();
+        } else if (row instanceof ImageRefRow) {
+            ImageRefRow imageRefRow = (ImageRefRow) row;
+            int result = imageRefRow.getImageKey().hashCode();
+            result = 31 * result + (imageRefRow.isScaleToFit() ? 1 : 0);
+            return 31 * result + imageRefRow.getAlignmentStyle().ordinal();
+        }
+        return row.toJson().hashCode();
+    }
+
+    private int imageHash(Bitmap image, ImageTable imageTable) {
+        Integer imageHash = imageHashes.get(image);
+        if (imageHash == null) {
+            // images of linked frozen payloads are not in the table
+            imageHash = imageTable.getContentHash(image);
+            if (imageHash == null) {
+                imageHash = ImageTable.contentHash(image);
+            }
+            imageHashes.put(image, imageHash);
+        }
+        return imageHash;
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean sameRow(PrintRow row, PrintRow otherRow, PayloadSnapshot other) {
+        if (row == otherRow) {
+            return true;
+        }
+        if (row.getClass() != otherRow.getClass()) {
+            return false;
+        }
+        if (row instanceof TextRow) {
+            TextRow textRow = (TextRow) row;
+            TextRow otherTextRow = (TextRow) otherRow;
+            return textRow.getText().equals(otherTextRow.getText())
+                    && textRow.getPrinterFontId() == otherTextRow.getPrinterFontId()
+                    && textRow.getUnderlineStyle() == otherTextRow.getUnderlineStyle()
+                    && textRow.getFontStyle() == otherTextRow.getFontStyle()
+                    && textRow.getAlignmentStyle() == otherTextRow.getAlignmentStyle();
+        } else if (row instanceof ImageRow) {
+            ImageRow imageRow = (ImageRow) row;
+            ImageRow otherImageRow = (ImageRow) otherRow;
+            return sameImage(imageRow.getImage(), otherImageRow.getImage(), other)
+                    && equal(imageRow.getImageRef(), otherImageRow.getImageRef())
+                    && imageRow.isScaleToFit() == otherImageRow.isScaleToFit()
+                    && imageRow.getAlignmentStyle() == otherImageRow.getAlignmentStyle()
+                    && imageRow.getContrastLevel() == otherImageRow.getContrastLevel();
+        } else if (row instanceof ImageRefRow) {
+            ImageRefRow imageRefRow = (ImageRefRow) row;
+            ImageRefRow otherImageRefRow = (ImageRefRow) otherRow;
+            return imageRefRow.getImageKey().equals(otherImageRefRow.getImageKey())
+                    && imageRefRow.isScaleToFit() == otherImageRefRow.isScaleToFit()
+                    && imageRefRow.getAlignmentStyle() == otherImageRefRow.getAlignmentStyle();
+        }
+        return row.toJson().equals(otherRow.toJson());
+    }
+
+    private boolean sameImage(Bitmap image, Bitmap otherImage, PayloadSnapshot other) {
+        if (image == otherImage) {
+            return true;
+        }
+        if (image == null || otherImage == null) {
+            return false;
+        }
+        // the content hashes are known for every image of both payloads, so pixels are only compared when they match
+        return imageHashes.get(image).equals(other.imageHashes.get(otherImage)) && ImageTable.sameContent(image, otherImage);
+    }
+
+    private static int hashOf(Object value) {
+        return value != null ? value.hashCode() : 0;
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.os.SystemClock;
+
+import com.aevi.util.json.Jsonable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link PrintPayload} that has been serialized once into the form that is sent to the print service.
+ *
+ * The serialized form is a snapshot taken by {@link PrintPayload#prepare()}; changes made to the payload afterwards are not reflected.
+ * A prepared payload can be sent, retried and reprinted any number of times without being serialized again.
+ *
+ * The payload is serialized in the {@link WireFormat} it was prepared with. Use {@link #getMessage()} to get the serialized form
+ * regardless of the format.
+ *
+ * If the payload was prepared with an {@link ImageStore}, the message refers to images in the store instead of carrying them. Call
+ * {@link #releaseImages()} once the payload is not going to be printed again.
+ *
+ * Large messages can be compressed via {@link #compress(int)} for print services that support it.
+ */
+public final class PreparedPrintPayload implements Jsonable {
+
+    private final String printerId;
+    private final WireFormat wireFormat;
+    private final String message;
+    private final ImageStore imageStore;
+    private final List<String> imageRefs;
+    private final List<String> imageKeys;
+    // a snapshot of the payload, kept while the message refers to registered images so that it can be prepared again with them inline
+    private final PrintPayload imageKeySource;
+    private final int rowCount;
+    private final int imageRowCount;
+    private final int byteSize;
+    private final int uncompressedByteSize;
+    private final boolean compressed;
+    private final int imageByteSize;
+    private final long serializationTimeMs;
+
+    PreparedPrintPayload(PrintPayload printPayload, WireFormat wireFormat, ImageStore imageStore) {
+        long start = SystemClock.elapsedRealtime();
+        this.printerId = printPayload.getPrinterId();
+        this.wireFormat = wireFormat;
+        this.imageStore = imageStore;
+        OutOfBandImages outOfBandImages = new OutOfBandImages(imageStore);
+        if (wireFormat == WireFormat.BINARY) {
+            BinaryPayloadCodec codec = new BinaryPayloadCodec(outOfBandImages);
+            this.message = codec.encode(printPayload);
+            this.imageByteSize = codec.getImageBytes();
+        } else {
+            JsonPayloadEncoder encoder = new JsonPayloadEncoder(outOfBandImages);
+            this.message = encoder.encode(printPayload);
+            this.imageByteSize = encoder.getImageBytes();
+        }
+        PrintRows rows = printPayload.getRowView();
+        int images = 0;
+        Set<String> keys = new LinkedHashSet<>();
+        for (PrintRow row : rows) {
+            if (row instanceof ImageRow) {
+                images++;
+            } else if (row instanceof ImageRefRow) {
+                images++;
+                keys.add(((ImageRefRow) row).getImageKey());
+            }
+        }
+        this.imageKeys = Collections.unmodifiableList(new ArrayList<>(keys));
+        // the caller may reset or refill the payload once it has been sent, so the inline retry must not read it again
+        this.imageKeySource = keys.isEmpty() ? null : printPayload.freeze();
+        this.rowCount = rows.size();
+        this.imageRowCount = images;
+        this.imageRefs = outOfBandImages.getImageRefs();
+        this.byteSize = utf8Length(message);
+        this.uncompressedByteSize = byteSize;
+        this.compressed = false;
+        this.serializationTimeMs = SystemClock.elapsedRealtime() - start;
+    }
+
+    private PreparedPrintPayload(PreparedPrintPayload uncompressed, String compressedMessage, long compressionTimeMs) {
+        this.printerId = uncompressed.printerId;
+        this.wireFormat = uncompressed.wireFormat;
+        this.message = compressedMessage;
+        this.imageStore = uncompressed.imageStore;
+        this.imageRefs = uncompressed.imageRefs;
+        this.imageKeys = uncompressed.imageKeys;
+        this.imageKeySource = uncompressed.imageKeySource;
+        this.rowCount = uncompressed.rowCount;
+        this.imageRowCount = uncompressed.imageRowCount;
+        // the envelope is ASCII, so its length is its size in bytes
+        this.byteSize = compressedMessage.length();
+        this.uncompressedByteSize = uncompressed.byteSize;
+        this.compressed = true;
+        this.imageByteSize = uncompressed.imageByteSize;
+        this.serializationTimeMs = uncompressed.serializationTimeMs + compressionTimeMs;
+    }
+
+    /**
+     * Compresses the message if it is larger than the given threshold. Only send compressed payloads to printers that support it, see
+     * {@link PrinterSettings#supportsCompression()}. Print services decompress them via {@link PrintPayload#fromMessage(String)}.
+     *
+     * The compressed payload shares the stored images of this one, so only one of them needs to be released.
+     *
+     * @param thresholdBytes The size in bytes above which the message is compressed
+     * @return A compressed copy of this payload, or this payload if it is not larger than the threshold, is already compressed or does
+     * not get any smaller
+     */
+    public PreparedPrintPayload compress(int thresholdBytes) {
+        if (compressed || byteSize <= thresholdBytes) {
+            return this;
+        }
+        long start = SystemClock.elapsedRealtime();
+        String compressedMessage = CompressedMessage.compress(message);
+        if (compressedMessage.length() >= byteSize) {
+            return this;
+        }
+        return new PreparedPrintPayload(this, compressedMessage, SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * @return True if the message has been compressed via {@link #compress(int)}
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return The id of the printer the payload is addressed to, or null for the default printer
+     */
+    public String getPrinterId() {
+        return printerId;
+    }
+
+    /**
+     * @return True if a printer has been selected for this payload
+     */
+    public boolean hasPrinterId() {
+        return printerId != null && !printerId.isEmpty();
+    }
+
+    /**
+     * @return The wire format the payload has been serialized in
+     */
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * @return The cached serialized form of the payload in its wire format, as sent to the print service
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The number of rows in the payload
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return The number of image rows in the payload
+     */
+    public int getImageRowCount() {
+        return imageRowCount;
+    }
+
+    /**
+     * @return The size of the serialized message in bytes when encoded as UTF-8, after compression if it has been compressed
+     */
+    public int getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * @return The size of the serialized message in bytes when encoded as UTF-8 before compression. This is the same as
+     * {@link #getByteSize()} if the message has not been compressed
+     */
+    public int getUncompressedByteSize() {
+        return uncompressedByteSize;
+    }
+
+    /**
+     * @return The number of bytes of the serialized message taken up by image data when encoded as UTF-8
+     */
+    public int getImageByteSize() {
+        return imageByteSize;
+    }
+
+    /**
+     * @return The time in milliseconds it took to serialize, and if so compress, the payload
+     */
+    public long getSerializationTimeMs() {
+        return serializationTimeMs;
+    }
+
+    /**
+     * @return The number of images that have been put into an {@link ImageStore} instead of being sent in the message
+     */
+    public int getStoredImageCount() {
+        return imageRefs.size();
+    }
+
+    /**
+     * @return The keys of the registered images the payload refers to via {@link ImageRefRow}s, in order of first use
+     */
+    public List<String> getImageKeys() {
+        return imageKeys;
+    }
+
+    /**
+     * @return A frozen snapshot of the payload this was prepared from if it refers to registered images (see {@link #getImageKeys()}), so
+     * that it can be prepared again with the images inline if the print service does not know them, or null if it refers to none. Changes
+     * made to the payload after it was prepared are not part of the snapshot
+     */
+    public PrintPayload getImageKeySource() {
+        return imageKeySource;
+    }
+
+    /**
+     * Removes the images of this payload from the {@link ImageStore} it was prepared with. The payload must not be printed after this.
+     *
+     * Calling this more than once, or for a payload without stored images, has no effect.
+     */
+    public void releaseImages() {
+        synchronized (imageRefs) {
+            for (String imageRef : imageRefs) {
+                imageStore.release(imageRef);
+            }
+            imageRefs.clear();
+        }
+    }
+
+    /**
+     * @return The cached serialized form of the payload
+     * @throws IllegalStateException if the payload was not prepared as {@link WireFormat#JSON} or has been compressed
+     */
+    @Override
+    public String toJson() {
+        if (wireFormat != WireFormat.JSON) {
+            throw new IllegalStateException("Payload has been prepared as " + wireFormat);
+        }
+        if (isCompressed()) {
+            throw new IllegalStateException("Payload has been compressed");
+        }
+        return message;
+    }
+
+    /**
+     * Returns a short summary of this payload that is suitable for logging
+     */
+    @Override
+    public String toString() {
+        if (isCompressed()) {
+            return String.format("rows=%d,images=%d,bytes=%d,uncompressedBytes=%d", rowCount, imageRowCount, byteSize, uncompressedByteSize);
+        }
+        return String.format("rows=%d,images=%d,bytes=%d", rowCount, imageRowCount, byteSize);
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
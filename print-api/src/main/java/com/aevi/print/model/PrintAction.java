@@ -13,7 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
 import com.aevi.util.json.Jsonable;
 
 public class PrintAction implements Jsonable {
@@ -36,10 +35,10 @@ public class PrintAction implements Jsonable {
 
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.PRINT_ACTION, this);
     }
 
     public static PrintAction fromJson(String json) {
-        return JsonConverter.deserialize(json, PrintAction.class);
+        return ModelJson.fromJson(ModelJson.PRINT_ACTION, json);
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import com.aevi.print.PrintPreview;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static com.aevi.print.model.PrinterFont.DEFAULT_FONT;
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * What a {@link PrintPayload} will cost to send and print on a printer, worked out without serializing the payload into memory or
+ * rendering it. See {@link PrintPayload#estimate(PrinterSettings)}.
+ *
+ * This can be used to decide before printing whether a payload should be split, whether its images should be made smaller, or whether
+ * it will fit on the paper that is left.
+ */
+public final class PrintEstimate {
+
+    /**
+     * The margin in dots added above and below each image, and at the start and end of a printout.
+     */
+    public static final int VERTICAL_MARGIN = 8;
+
+    private final int byteSize;
+    private final int height;
+    private final float paperLength;
+
+    private PrintEstimate(int byteSize, int height, float paperLength) {
+        this.byteSize = byteSize;
+        this.height = height;
+        this.paperLength = paperLength;
+    }
+
+    static PrintEstimate estimate(PrintPayload printPayload, PrinterSettings printerSettings) {
+        checkNotNull(printerSettings, "printerSettings must not be null");
+        int height = measureHeight(printPayload, printerSettings);
+        float dotsPerMm = printerSettings.getPaperDotsPerMm();
+        return new PrintEstimate(measureByteSize(printPayload), height, dotsPerMm > 0 ? height / dotsPerMm : 0);
+    }
+
+    /**
+     * Works out the height of a payload when printed, in dots. This is the height of the {@link PrintPreview} of the payload.
+     *
+     * Each text row takes the line height of its font for each line it is wrapped into (see {@link TextWrapper}), and each image takes
+     * its height, scaled down to the printable width if it is wider, plus a margin. The size of images shown by key (see
+     * {@link PrintPayload#appendImageRef(String)}) is not known, so only their margin is counted.
+     *
+     * @param printPayload    The payload
+     * @param printerSettings The settings of the printer
+     * @return The height in dots
+     */
+    public static int measureHeight(PrintPayload printPayload, PrinterSettings printerSettings) {
+        checkNotNull(printPayload, "printPayload must not be null");
+        checkNotNull(printerSettings, "printerSettings must not be null");
+        int availableWidth = Math.round(printerSettings.getPaperDotsPerMm() * printerSettings.getPrintableWidth());
+        PrinterFont defaultFont = printerSettings.getDefaultFont();
+        int height = 0;
+        for (PrintRow row : printPayload.getRowView()) {
+            if (row instanceof TextRow) {
+                TextRow textRow = (TextRow) row;
+                int fontId = textRow.getPrinterFontId();
+                PrinterFont font = fontId == DEFAULT_FONT ? defaultFont : printerSettings.getFont(fontId);
+                height += TextWrapper.wrap(textRow.getText(), font.getNumColumns()).size() * font.getLineHeight();
+            } else if (row instanceof ImageRow) {
+                height += imageHeight(((ImageRow) row).getImage(), availableWidth) + VERTICAL_MARGIN * 2;
+            } else if (row instanceof ImageRefRow) {
+                height += VERTICAL_MARGIN * 2;
+            }
+        }
+        return height + VERTICAL_MARGIN * 2;
+    }
+
+    private static int imageHeight(Bitmap image, int availableWidth) {
+        if (image == null) {
+            return 0;
+        }
+        if (image.getWidth() > availableWidth && availableWidth > 0) {
+            float aspectRatio = image.getWidth() / (float) image.getHeight();
+            return Math.round(availableWidth / aspectRatio);
+        }
+        return image.getHeight();
+    }
+
+    private static int measureByteSize(PrintPayload printPayload) {
+        Utf8CountingWriter writer = new Utf8CountingWriter();
+        try {
+            new JsonPayloadEncoder().write(printPayload, writer);
+        } catch (IOException e) {
+            // counting never throws
+            throw new IllegalStateException(e);
+        }
+        return writer.byteCount;
+    }
+
+    /**
+     * @return The size of the payload in bytes when sent in the {@link WireFormat#JSON} format. The other wire formats and compression
+     * (see {@link com.aevi.print.PrinterManagerConfig}) only make it smaller
+     */
+    public int getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * @return The height of the printout in dots
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return The length of paper the printout takes in mm, based on {@link PrinterSettings#getPaperDotsPerMm()}
+     */
+    public float getPaperLength() {
+        return paperLength;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("bytes=%d,height=%d,paperLength=%.1fmm", byteSize, height, paperLength);
+    }
+
+    /**
+     * Counts the UTF-8 encoded size of what is written to it, without keeping it.
+     */
+    private static final class Utf8CountingWriter extends Writer {
+
+        private int byteCount;
+
+        @Override
+        public void write(int c) {
+            byteCount += utf8Length((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byteCount += utf8Length(buffer[i]);
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                byteCount += utf8Length(text.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /**
+         * @return The encoded size of a character. Each half of a surrogate pair counts two, which makes four for the pair
+         */
+        private static int utf8Length(char c) {
+            if (c < 0x80) {
+                return 1;
+            } else if (c < 0x800 || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                return 2;
+            }
+            return 3;
+        }
+    }
+}
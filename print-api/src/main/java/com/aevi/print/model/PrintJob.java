@@ -13,7 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
 import com.aevi.util.json.Jsonable;
 
 /**
@@ -102,10 +101,10 @@ public class PrintJob implements Jsonable {
 
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.PRINT_JOB, this);
     }
 
     public static PrintJob fromJson(String json) {
-        return JsonConverter.deserialize(json, PrintJob.class);
+        return ModelJson.fromJson(ModelJson.PRINT_JOB, json);
     }
 }
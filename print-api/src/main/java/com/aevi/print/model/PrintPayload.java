@@ -16,14 +16,19 @@ package com.aevi.print.model;
 import android.graphics.Bitmap;
 
 import com.aevi.print.PrinterManager;
-import com.aevi.util.json.JsonConverter;
-import com.aevi.util.json.JsonOption;
 import com.aevi.util.json.Jsonable;
+import com.google.gson.JsonParseException;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static com.aevi.print.util.Preconditions.checkArgument;
 import static com.aevi.print.util.Preconditions.checkNotNull;
 
 /**
@@ -35,7 +40,14 @@ import static com.aevi.print.util.Preconditions.checkNotNull;
  */
 public class PrintPayload implements Jsonable {
 
-    private final List<JsonOption> rows = new ArrayList<>();
+    private final SegmentedRowList rows = new SegmentedRowList();
+    private final transient PrintRows rowView = new PrintRows(rows);
+    private final transient ImageTable imageTable = new ImageTable();
+    private transient boolean frozen;
+    private transient PayloadSnapshot frozenState;
+    private transient TextRowPool textRowPool;
+    // the rows of this payload taken from the pool, which go back to it on reset
+    private final transient List<TextRow> pooledRows = new ArrayList<>();
 
     private int codePage = -1;
     private String printerId;
@@ -80,25 +92,55 @@ public class PrintPayload implements Jsonable {
      */
     public TextRow append(String text, PrinterFont printerFont) {
         checkNotNull(text, "text must not be null");
-        TextRow textRow = new TextRow(text, printerFont);
-        rows.add(new JsonOption(textRow));
+        checkNotFrozen();
+        TextRow textRow = newTextRow(text, printerFont != null ? printerFont.getId() : PrinterFont.DEFAULT_FONT);
+        rows.add(textRow);
         return textRow;
     }
 
-    private void append(PrintRow row) {
-        rows.add(new JsonOption(row));
+    /**
+     * Creates a text row for this payload, taken from its {@link TextRowPool} if it has one. The row is not appended.
+     */
+    TextRow newTextRow(String text, int printerFontId) {
+        if (textRowPool == null) {
+            return new TextRow(text, printerFontId);
+        }
+        TextRow textRow = textRowPool.obtain(text, printerFontId);
+        pooledRows.add(textRow);
+        return textRow;
+    }
+
+    void append(PrintRow row) {
+        checkNotFrozen();
+        if (row instanceof ImageRow && ((ImageRow) row).getImage() != null) {
+            ImageRow imageRow = (ImageRow) row;
+            Bitmap image = imageTable.add(imageRow.getImage());
+            if (image != imageRow.getImage()) {
+                row = imageRow.withImage(image);
+            }
+        }
+        rows.add(row);
     }
 
     /**
      * Appends another printPayload to this printer pay load
      *
+     * If the other payload is frozen (see {@link #freeze()}) its rows are linked rather than copied, so appending it takes the same
+     * time however many rows it has. Otherwise its rows are copied one by one.
+     *
      * @param toAppendPayload The payload to append
      */
     public void append(PrintPayload toAppendPayload) {
         checkNotNull(toAppendPayload, "appending payload must not be null");
+        checkNotFrozen();
 
-        PrintRow[] rows = toAppendPayload.getRows();
-        for (PrintRow row : rows) {
+        if (toAppendPayload.frozen) {
+            rows.addSegments(toAppendPayload.rows);
+            return;
+        }
+        // a payload may be appended to itself, so only its current rows are appended
+        Iterable<PrintRow> toAppendRows = toAppendPayload == this ? Arrays.asList(getRows()) : toAppendPayload.rows;
+        for (PrintRow row : toAppendRows) {
             append(row);
         }
     }
@@ -107,7 +149,8 @@ public class PrintPayload implements Jsonable {
      * Add an empty line to the pay load
      */
     public void appendEmptyLine() {
-        rows.add(new JsonOption(new TextRow(" ")));
+        checkNotFrozen();
+        rows.add(newTextRow(" ", PrinterFont.DEFAULT_FONT));
     }
 
     /**
@@ -118,11 +161,18 @@ public class PrintPayload implements Jsonable {
      * @return The new {@link TextRow} object added to the payload
      */
     public TextRow appendLineOfChar(int columns, String character) {
-        String line = character;
-        while (line.length() < columns) {
-            line += character;
+        checkNotNull(character, "character must not be null");
+        checkArgument(!character.isEmpty(), "character must not be empty");
+        if (character.length() == 1) {
+            char[] line = new char[Math.max(columns, 1)];
+            Arrays.fill(line, character.charAt(0));
+            return append(new String(line));
         }
-        return append(line);
+        StringBuilder line = new StringBuilder(Math.max(columns, 0) + character.length());
+        do {
+            line.append(character);
+        } while (line.length() < columns);
+        return append(line.toString());
     }
 
     /**
@@ -134,23 +184,88 @@ public class PrintPayload implements Jsonable {
      * @return The new {@link TextRow} object added to the payload
      */
     public TextRow appendLeftRight(int columns, String left, String right) {
-        String space = getSpaces(columns - left.length() - right.length());
-        return append(left + space + right);
+        int spaces = Math.max(0, columns - left.length() - right.length());
+        char[] line = new char[left.length() + spaces + right.length()];
+        left.getChars(0, left.length(), line, 0);
+        Arrays.fill(line, left.length(), left.length() + spaces, ' ');
+        right.getChars(0, right.length(), line, left.length() + spaces);
+        return append(new String(line));
     }
 
-    private String getSpaces(int length) {
-        if (length > 0) {
-            char[] bytes = new char[length];
-            Arrays.fill(bytes, ' ');
-            return new String(bytes);
+    /**
+     * Appends text wrapped into as many rows as needed to fit the number of text columns of the given font. Lines are broken between words
+     * where possible and at new line characters, see {@link TextWrapper}.
+     *
+     * @param text        The text to append
+     * @param printerFont The printer font to use. See {@link PrinterSettings#getPrinterFonts()}
+     * @return The number of {@link TextRow}s added to the payload
+     */
+    public int appendWrapped(String text, PrinterFont printerFont) {
+        checkNotNull(printerFont, "printerFont must not be null");
+        return appendWrapped(text, printerFont.getNumColumns(), printerFont.getId());
+    }
+
+    /**
+     * Appends text wrapped into as many rows as needed to fit the given number of text columns in the default font.
+     *
+     * @param text    The text to append
+     * @param columns The number of text columns to assume for each row
+     * @return The number of {@link TextRow}s added to the payload
+     */
+    public int appendWrapped(String text, int columns) {
+        return appendWrapped(text, columns, PrinterFont.DEFAULT_FONT);
+    }
+
+    private int appendWrapped(String text, int columns, int printerFontId) {
+        checkNotNull(text, "text must not be null");
+        checkArgument(columns > 0, "columns must be greater than zero");
+        checkNotFrozen();
+        List<String> lines = TextWrapper.wrap(text, columns);
+        for (int i = 0; i < lines.size(); i++) {
+            rows.add(newTextRow(lines.get(i), printerFontId));
         }
-        return "";
+        return lines.size();
+    }
+
+    /**
+     * Appends a row of a table, laid out by the given table layout for the number of text columns of the given font. A row takes more
+     * than one line if the text of a wrapping column does not fit.
+     *
+     * @param tableLayout The layout of the table
+     * @param printerFont The printer font to use. See {@link PrinterSettings#getPrinterFonts()}
+     * @param cells       The text of each column. Null is treated as empty
+     * @return The number of {@link TextRow}s added to the payload
+     */
+    public int appendTableRow(TableLayout tableLayout, PrinterFont printerFont, String... cells) {
+        checkNotNull(tableLayout, "tableLayout must not be null");
+        checkNotNull(printerFont, "printerFont must not be null");
+        checkNotFrozen();
+        return tableLayout.appendRow(this, printerFont.getNumColumns(), printerFont, FontStyle.NORMAL, cells);
+    }
+
+    /**
+     * Appends a row of a table, laid out by the given table layout for the given number of text columns in the default font.
+     *
+     * @param tableLayout The layout of the table
+     * @param columns     The number of text columns to assume for the row
+     * @param cells       The text of each column. Null is treated as empty
+     * @return The number of {@link TextRow}s added to the payload
+     */
+    public int appendTableRow(TableLayout tableLayout, int columns, String... cells) {
+        checkNotNull(tableLayout, "tableLayout must not be null");
+        checkNotFrozen();
+        return tableLayout.appendRow(this, columns, null, FontStyle.NORMAL, cells);
     }
 
     /**
      * Appends the given image to this printer pay load. The default alignment
      * of the image is left.
      *
+     * Images with the same pixels are stored once per payload: the row shows the first image with the same content that was appended,
+     * and the image is only serialized once however many rows show it. Only {@link WireFormat#BINARY} and an {@link ImageStore} send it
+     * once as well. {@link WireFormat#JSON} writes the image out in full for every row that shows it, so that print services can still
+     * read it. Do not change an image after appending it.
+     *
      * @param image the image to append to this printer pay load. This parameter
      *              must not be null.
      * @return The new {@link ImageRow} object added to the payload
@@ -161,26 +276,84 @@ public class PrintPayload implements Jsonable {
 
     public ImageRow append(Bitmap image, boolean scaleToFit) {
         checkNotNull(image, "image must not be null");
+        checkNotFrozen();
 
-        ImageRow imageRow = new ImageRow(image, scaleToFit);
-        rows.add(new JsonOption(imageRow));
+        ImageRow imageRow = new ImageRow(imageTable.add(image), scaleToFit);
+        rows.add(imageRow);
         return imageRow;
     }
 
+    /**
+     * Appends a row showing an image registered via {@link PrinterManager#registerImage(String, Bitmap)}. The default alignment of the
+     * image is left.
+     *
+     * {@link PrinterManager} sends the image inline instead if the print service does not know the key, so this must only be used for
+     * payloads printed via {@link PrinterManager#print(PrintPayload)} or prepared via {@link PrinterManager#prepare(PrintPayload)}.
+     *
+     * @param imageKey the key the image has been registered with. This parameter must not be empty.
+     * @return The new {@link ImageRefRow} object added to the payload
+     */
+    public ImageRefRow appendImageRef(String imageKey) {
+        return appendImageRef(imageKey, true);
+    }
+
+    public ImageRefRow appendImageRef(String imageKey, boolean scaleToFit) {
+        checkNotFrozen();
+        ImageRefRow imageRefRow = new ImageRefRow(imageKey, scaleToFit);
+        rows.add(imageRefRow);
+        return imageRefRow;
+    }
+
+    /**
+     * Returns a copy of this payload in which the {@link ImageRefRow}s with a key in the given map show the mapped image instead.
+     *
+     * Rows with the same key share the mapped image. When the copy is sent as {@link WireFormat#JSON} each of these rows still carries
+     * the whole image, as the JSON format has no image table. Only {@link WireFormat#BINARY} and an {@link ImageStore} send it once.
+     *
+     * @param images The images by key
+     * @return The copy, or this payload if it has no rows to replace
+     */
+    public PrintPayload withImages(Map<String, Bitmap> images) {
+        checkNotNull(images, "images must not be null");
+        boolean replace = false;
+        for (ImageRefRow row : rowView.ofType(ImageRefRow.class)) {
+            replace |= images.containsKey(row.getImageKey());
+        }
+        if (!replace) {
+            return this;
+        }
+        PrintPayload copy = new PrintPayload(printerId);
+        copy.setCodePage(codePage);
+        copy.setLanguage(languageCode);
+        for (PrintRow row : rows) {
+            Bitmap image = row instanceof ImageRefRow ? images.get(((ImageRefRow) row).getImageKey()) : null;
+            if (image != null) {
+                ImageRefRow imageRefRow = (ImageRefRow) row;
+                row = new ImageRow(image, imageRefRow.isScaleToFit()).align(imageRefRow.getAlignmentStyle());
+            }
+            copy.append(row);
+        }
+        return copy;
+    }
+
     /**
      * Gets the rows in this printer pay load.
      *
+     * This copies the rows into a new array on every call. Use {@link #getRowView()} to read the rows without copying them.
+     *
      * @return the rows in this printer pay load
      */
     public PrintRow[] getRows() {
+        return rows.toArray(new PrintRow[rows.size()]);
+    }
 
-        // TODO bit naff. sort this out possibly by allowing custom serializer/deserializers to be added to service messenger
-        PrintRow[] printRows = new PrintRow[rows.size()];
-        int count = 0;
-        for (JsonOption jsonOption : rows) {
-            printRows[count++] = (PrintRow) jsonOption.getValue();
-        }
-        return printRows;
+    /**
+     * Gets a read-only view of the rows in this printer pay load, that gives indexed and typed access to the rows without copying them.
+     *
+     * @return the rows in this printer pay load
+     */
+    public PrintRows getRowView() {
+        return rowView;
     }
 
     /**
@@ -198,6 +371,7 @@ public class PrintPayload implements Jsonable {
      * @param codePage The codepage. See printer specific documentation for details. Set to -1 for the default codepage.
      */
     public void setCodePage(int codePage) {
+        checkNotFrozen();
         this.codePage = codePage;
     }
 
@@ -214,6 +388,7 @@ public class PrintPayload implements Jsonable {
      * @param languageCode An ISO-639 two letter language code (usually obtained from {@link java.util.Locale#getLanguage()} if required)
      */
     public void setLanguage(String languageCode) {
+        checkNotFrozen();
         this.languageCode = languageCode;
     }
 
@@ -223,6 +398,7 @@ public class PrintPayload implements Jsonable {
      * @param printerId The printerId. Should be an id of a printer returned
      */
     public void setPrinterId(String printerId) {
+        checkNotFrozen();
         this.printerId = printerId;
     }
 
@@ -242,12 +418,244 @@ public class PrintPayload implements Jsonable {
         return printerId != null && !printerId.isEmpty();
     }
 
+    /**
+     * Returns an immutable snapshot of this payload that can be appended to other payloads without copying its rows.
+     *
+     * This is meant for parts that are reused across many payloads, such as a receipt header or footer. The rows of this payload are
+     * copied into the snapshot, so this payload and its rows can still be changed or reset afterwards without affecting the snapshot. Rows
+     * of other snapshots that have been appended to this payload are shared rather than copied. Images are shared as well, so they must
+     * not be changed once frozen. Any attempt to change the snapshot itself fails with an {@link IllegalStateException}.
+     *
+     * A snapshot is equal to other snapshots with the same rows, images (compared by content), code page, printer id and language, and its
+     * hash code is worked out when it is created. This makes snapshots usable as keys of caches, e.g. of previews, or to detect that
+     * the same payload is printed twice. A snapshot also serializes itself only once: {@link #toJson()} and {@link #prepare(WireFormat)}
+     * return the same result every time they are called.
+     *
+     * @return A frozen snapshot of this payload, or this payload if it is frozen already
+     */
+    public PrintPayload freeze() {
+        if (frozen) {
+            return this;
+        }
+        PrintPayload snapshot = new PrintPayload(printerId);
+        snapshot.codePage = codePage;
+        snapshot.languageCode = languageCode;
+        snapshot.rows.addSegments(rows.snapshot());
+        snapshot.frozen = true;
+        snapshot.frozenState = new PayloadSnapshot(snapshot, imageTable);
+        return snapshot;
+    }
+
+    /**
+     * @return True if this payload is an immutable snapshot created by {@link #freeze()}
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Sets a pool to take the text rows of this payload from. When the payload is {@link #reset()} its text rows go back to the pool, so
+     * a payload that is reused for many prints does not create new rows once the pool has filled up.
+     *
+     * Text rows returned by the append methods must then not be used after the payload has been reset, and this payload must only be
+     * appended to other payloads once frozen (see {@link #freeze()}), as their rows would otherwise be reused under them. A pool is not
+     * thread-safe.
+     *
+     * @param textRowPool The pool, or null to stop using one
+     */
+    public void setTextRowPool(TextRowPool textRowPool) {
+        this.textRowPool = textRowPool;
+    }
+
+    /**
+     * Removes all rows and images so that this payload can be filled again, e.g. for the next ticket. The printer id, code page and
+     * language are kept. Storage that has been allocated for rows is kept as well, and text rows go back to the pool set via
+     * {@link #setTextRowPool(TextRowPool)}, if any.
+     *
+     * Only reset a payload once it has been printed or prepared (see {@link #prepare()}). Snapshots created by {@link #freeze()} are not
+     * affected.
+     *
+     * @throws IllegalStateException if this payload is frozen
+     */
+    public void reset() {
+        checkNotFrozen();
+        if (textRowPool != null) {
+            for (int i = 0; i < pooledRows.size(); i++) {
+                textRowPool.recycle(pooledRows.get(i));
+            }
+        }
+        pooledRows.clear();
+        rows.clear();
+        imageTable.clear();
+    }
+
+    /**
+     * A frozen payload (see {@link #freeze()}) is equal to another frozen payload with the same structure. A payload that can still be
+     * changed is only equal to itself.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PrintPayload)) {
+            return false;
+        }
+        PrintPayload other = (PrintPayload) o;
+        return frozenState != null && other.frozenState != null && frozenState.sameStructure(other.frozenState);
+    }
+
+    @Override
+    public int hashCode() {
+        return frozenState != null ? frozenState.getHash() : super.hashCode();
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Payload is frozen");
+        }
+    }
+
+    /**
+     * Works out the size of this payload when sent and the height and paper length of its printout on the given printer. This takes time
+     * linear in the number of rows and does not render the payload, but each distinct image is serialized to count its size.
+     *
+     * @param printerSettings The settings of the printer
+     * @return The estimate
+     */
+    public PrintEstimate estimate(PrinterSettings printerSettings) {
+        return PrintEstimate.estimate(this, printerSettings);
+    }
+
+    /**
+     * Serializes this payload once so that it can be sent any number of times without being serialized again.
+     *
+     * Changes made to this payload after it has been prepared are not reflected in the returned object.
+     *
+     * @return A prepared copy of this payload
+     */
+    public PreparedPrintPayload prepare() {
+        return prepare(WireFormat.JSON);
+    }
+
+    /**
+     * Serializes this payload once in the given wire format.
+     *
+     * Only send payloads prepared in a format other than {@link WireFormat#JSON} to printers that support it, see
+     * {@link PrinterSettings#supportsWireFormat(WireFormat)}. {@link PrinterManager#print(PrintPayload)} picks the format itself.
+     *
+     * @param wireFormat The wire format to serialize the payload in
+     * @return A prepared copy of this payload
+     */
+    public PreparedPrintPayload prepare(WireFormat wireFormat) {
+        return prepare(wireFormat, null);
+    }
+
+    /**
+     * Serializes this payload once in the given wire format, putting its images into the given store so that the message only carries
+     * references to them.
+     *
+     * Only use an image store with printers that support it, see {@link PrinterSettings#supportsImageStore()}, and release the images
+     * via {@link PreparedPrintPayload#releaseImages()} once the payload has been printed. If an image can not be stored it is sent inline.
+     *
+     * @param wireFormat The wire format to serialize the payload in
+     * @param imageStore The store to put images into, or null to send them inline
+     * @return A prepared copy of this payload
+     */
+    public PreparedPrintPayload prepare(WireFormat wireFormat, ImageStore imageStore) {
+        checkNotNull(wireFormat, "wireFormat must not be null");
+        if (frozenState != null && imageStore == null) {
+            return frozenState.getPrepared(wireFormat);
+        }
+        return new PreparedPrintPayload(this, wireFormat, imageStore);
+    }
+
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        if (frozenState != null) {
+            return frozenState.getJson();
+        }
+        return new JsonPayloadEncoder().encode(this);
+    }
+
+    /**
+     * Writes the same JSON as {@link #toJson()} to the given writer one row at a time, without building the whole JSON string in memory.
+     *
+     * Use {@link PrintPayloadReader} to read it back row by row.
+     *
+     * @param writer The writer to write the JSON to. It is flushed but not closed
+     * @throws IOException if writing fails
+     */
+    public void writeJson(Writer writer) throws IOException {
+        checkNotNull(writer, "writer must not be null");
+        new JsonPayloadEncoder().write(this, writer);
+    }
+
+    /**
+     * Replaces the image references in this payload with the images they refer to. This is used by print services to read the images
+     * of payloads that have been prepared with an {@link ImageStore}.
+     *
+     * @param imageStore The store the images have been put into
+     * @throws IOException if an image could not be read
+     */
+    public void resolveImages(ImageStore imageStore) throws IOException {
+        checkNotNull(imageStore, "imageStore must not be null");
+        checkNotFrozen();
+        if (!hasImageRefs()) {
+            return;
+        }
+        // rows are replaced by index, which only takes constant time once no rows are in linked segments
+        rows.unseal();
+        Map<String, Bitmap> images = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            PrintRow row = rows.get(i);
+            if (row instanceof ImageRow && ((ImageRow) row).getImageRef() != null) {
+                ImageRow imageRefRow = (ImageRow) row;
+                Bitmap image = images.get(imageRefRow.getImageRef());
+                if (image == null) {
+                    image = imageTable.add(imageStore.get(imageRefRow.getImageRef()));
+                    images.put(imageRefRow.getImageRef(), image);
+                }
+                rows.set(i, imageRefRow.withImage(image));
+            }
+        }
+    }
+
+    private boolean hasImageRefs() {
+        for (PrintRow row : rows) {
+            if (row instanceof ImageRow && ((ImageRow) row).getImageRef() != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static PrintPayload fromJson(String json) {
-        return JsonConverter.deserialize(json, PrintPayload.class);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return new PrintPayloadReader(new StringReader(json)).readPayload();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException(e);
+        }
+    }
+
+    /**
+     * Decodes a payload message sent by {@link PrinterManager} in any of the {@link WireFormat}s, compressed or not.
+     *
+     * @param message The message as received by the print service
+     * @return The decoded payload
+     * @throws IllegalArgumentException If a binary message is malformed
+     */
+    public static PrintPayload fromMessage(String message) {
+        checkNotNull(message, "message must not be null");
+        if (CompressedMessage.isCompressedMessage(message)) {
+            return fromMessage(CompressedMessage.decompress(message));
+        }
+        if (BinaryPayloadCodec.isBinaryMessage(message)) {
+            return BinaryPayloadCodec.decode(message);
+        }
+        return fromJson(message);
     }
 }
@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import com.aevi.util.json.JsonConverter;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a {@link PrintPayload} in the {@link WireFormat#JSON} format one row at a time.
+ *
+ * This is intended for print services that receive large payloads through a stream. Rows are written before the other payload fields,
+ * so each row can be processed (e.g. sent to the printer) as soon as it has been read, and only one row is held in memory at a time.
+ * The remaining fields are available once all rows have been read.
+ *
+ * <pre>
+ * PrintPayloadReader reader = new PrintPayloadReader(in);
+ * while (reader.hasNextRow()) {
+ *     print(reader.nextRow());
+ * }
+ * int codePage = reader.getCodePage();
+ * </pre>
+ */
+public final class PrintPayloadReader implements Closeable {
+
+    private final JsonReader in;
+    private final JsonParser jsonParser = new JsonParser();
+    private boolean inRows;
+    private boolean finished;
+    private int codePage = -1;
+    private String printerId;
+    private String languageCode;
+
+    public PrintPayloadReader(Reader reader) {
+        this.in = new JsonReader(reader);
+    }
+
+    /**
+     * @return True if there is another row to read
+     * @throws IOException if the payload can not be read
+     */
+    public boolean hasNextRow() throws IOException {
+        if (finished) {
+            return false;
+        }
+        if (!inRows && !advanceToRows()) {
+            return false;
+        }
+        if (in.hasNext()) {
+            return true;
+        }
+        in.endArray();
+        inRows = false;
+        readRemainingFields();
+        return false;
+    }
+
+    /**
+     * @return The next row of the payload
+     * @throws IOException            if the payload can not be read
+     * @throws NoSuchElementException if there are no more rows
+     */
+    public PrintRow nextRow() throws IOException {
+        if (!hasNextRow()) {
+            throw new NoSuchElementException("No more rows");
+        }
+        JsonObject valueObject = null;
+        String type = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("value".equals(name)) {
+                valueObject = jsonParser.parse(in).getAsJsonObject();
+            } else if ("type".equals(name)) {
+                type = in.nextString();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (valueObject == null || type == null) {
+            throw new JsonParseException("Row is missing its value or type");
+        }
+        return toRow(type, valueObject);
+    }
+
+    /**
+     * Reads all remaining rows into a payload.
+     *
+     * @return The payload
+     * @throws IOException if the payload can not be read
+     */
+    public PrintPayload readPayload() throws IOException {
+        PrintPayload printPayload = new PrintPayload();
+        while (hasNextRow()) {
+            printPayload.append(nextRow());
+        }
+        printPayload.setCodePage(codePage);
+        printPayload.setPrinterId(printerId);
+        printPayload.setLanguage(languageCode);
+        return printPayload;
+    }
+
+    /**
+     * @return The code page of the payload. Only available once all rows have been read
+     */
+    public int getCodePage() {
+        checkFinished();
+        return codePage;
+    }
+
+    /**
+     * @return The id of the printer the payload is addressed to. Only available once all rows have been read
+     */
+    public String getPrinterId() {
+        checkFinished();
+        return printerId;
+    }
+
+    /**
+     * @return The language code of the payload. Only available once all rows have been read
+     */
+    public String getLanguage() {
+        checkFinished();
+        return languageCode;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean advanceToRows() throws IOException {
+        if (in.peek() == JsonToken.BEGIN_OBJECT) {
+            in.beginObject();
+        }
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("rows".equals(name) && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                inRows = true;
+                return true;
+            }
+            readField(name);
+        }
+        finish();
+        return false;
+    }
+
+    private void readRemainingFields() throws IOException {
+        while (in.hasNext()) {
+            readField(in.nextName());
+        }
+        finish();
+    }
+
+    private void readField(String name) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+        } else if ("codePage".equals(name)) {
+            codePage = in.nextInt();
+        } else if ("printerId".equals(name)) {
+            printerId = in.nextString();
+        } else if ("languageCode".equals(name)) {
+            languageCode = in.nextString();
+        } else {
+            in.skipValue();
+        }
+    }
+
+    private void finish() throws IOException {
+        in.endObject();
+        finished = true;
+    }
+
+    private void checkFinished() {
+        if (!finished) {
+            throw new IllegalStateException("All rows must be read first");
+        }
+    }
+
+    private static PrintRow toRow(String type, JsonObject value) {
+        if (TextRow.class.getName().equals(type)) {
+            return ModelJson.TEXT_ROW.fromJsonTree(value);
+        }
+        try {
+            Class<?> rowClass = Class.forName(type);
+            if (!PrintRow.class.isAssignableFrom(rowClass)) {
+                throw new JsonParseException("Not a row type: " + type);
+            }
+            return (PrintRow) JsonConverter.deserialize(value.toString(), rowClass);
+        } catch (ClassNotFoundException e) {
+            throw new JsonParseException("Unknown row type: " + type, e);
+        }
+    }
+}
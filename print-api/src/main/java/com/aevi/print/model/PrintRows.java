@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only view of the rows of a {@link PrintPayload}.
+ *
+ * The view is backed by the payload, so rows appended to the payload later are visible through it. Unlike
+ * {@link PrintPayload#getRows()} it does not copy the rows, so walking the rows of a large payload takes no extra memory.
+ *
+ * <pre>
+ * PrintRows rows = printPayload.getRowView();
+ * for (int i = 0; i &lt; rows.size(); i++) {
+ *     print(rows.get(i));
+ * }
+ * for (ImageRow imageRow : rows.ofType(ImageRow.class)) {
+ *     prepareImage(imageRow.getImage());
+ * }
+ * </pre>
+ */
+public final class PrintRows implements Iterable<PrintRow> {
+
+    private final List<PrintRow> rows;
+
+    PrintRows(List<PrintRow> rows) {
+        this.rows = rows;
+    }
+
+    /**
+     * @return The number of rows
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    /**
+     * @return True if there are no rows
+     */
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    /**
+     * Gets a row by index. Rows appended from frozen payloads are stored in linked segments (see {@link PrintPayload#freeze()}), so this
+     * takes time proportional to the number of segments. Iterate over the rows to walk them all.
+     *
+     * @param index The index of the row
+     * @return The row at the given index
+     * @throws IndexOutOfBoundsException if there is no row at the index
+     */
+    public PrintRow get(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public Iterator<PrintRow> iterator() {
+        return ofType(PrintRow.class).iterator();
+    }
+
+    /**
+     * Iterates over the rows of the given type only, e.g. all {@link ImageRow}s.
+     *
+     * @param type The row type
+     * @param <T>  The row type
+     * @return The rows of the given type in order
+     */
+    public <T extends PrintRow> Iterable<T> ofType(final Class<T> type) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new RowIterator<>(rows, type);
+            }
+        };
+    }
+
+    private static final class RowIterator<T extends PrintRow> implements Iterator<T> {
+
+        private final Iterator<PrintRow> rows;
+        private final Class<T> type;
+        private T next;
+
+        RowIterator(List<PrintRow> rows, Class<T> type) {
+            this.rows = rows.iterator();
+            this.type = type;
+            skipToNext();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            T row = next;
+            skipToNext();
+            return row;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Rows are read-only");
+        }
+
+        private void skipToNext() {
+            next = null;
+            while (next == null && rows.hasNext()) {
+                PrintRow row = rows.next();
+                if (type.isInstance(row)) {
+                    next = type.cast(row);
+                }
+            }
+        }
+    }
+}
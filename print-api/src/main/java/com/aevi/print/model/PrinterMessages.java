@@ -39,6 +39,9 @@ public interface PrinterMessages {
     /** The printer is busy. Please wait until the printing completes before starting a second print.*/
     String ERROR_BUSY = "busy";
 
+    /** The payload refers to a registered image that the print service does not know. The diagnostic message holds the image key. */
+    String ERROR_UNKNOWN_IMAGE = "unknownImage";
+
     /** The printer has no errors and is ready to print. */
     String PRINTER_READY = "printerReady";
 
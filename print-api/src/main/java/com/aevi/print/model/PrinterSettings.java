@@ -13,7 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
 import com.aevi.util.json.Jsonable;
 
 import java.util.Map;
@@ -25,8 +24,37 @@ import static com.aevi.print.util.Preconditions.checkNotNull;
  */
 public class PrinterSettings implements Jsonable {
 
+    /**
+     * The font assumed for printers that report no fonts, and for rows asking for a font the printer has not reported.
+     */
+    public static final PrinterFont UNKNOWN_FONT =
+            new PrinterFont(PrinterFont.DEFAULT_FONT, "Unknown font", 12, 24, true, 48, 32, FontStyle.values());
+
     public static final String OPTION_DEFAULT = "default";
 
+    /**
+     * Comma separated list of the {@link WireFormat} names, other than JSON, that the print service accepts for this printer.
+     */
+    public static final String OPTION_WIRE_FORMATS = "wireFormats";
+
+    /**
+     * Set to "true" if the print service reads images of this printer from an {@link ImageStore}, see
+     * {@link PrintPayload#resolveImages(ImageStore)}.
+     */
+    public static final String OPTION_IMAGE_STORE = "imageStore";
+
+    /**
+     * Set to "true" if the print service keeps images registered via {@link com.aevi.print.PrinterManager#registerImage(String,
+     * android.graphics.Bitmap)} and prints {@link ImageRefRow}s for this printer.
+     */
+    public static final String OPTION_IMAGE_REGISTRY = "imageRegistry";
+
+    /**
+     * Set to "true" if the print service accepts payload messages compressed via {@link PreparedPrintPayload#compress(int)} for this
+     * printer.
+     */
+    public static final String OPTION_COMPRESSION = "compression";
+
     private final String printerId;
     private final int paperWidth;
     private final int printableWidth;
@@ -50,11 +78,23 @@ public class PrinterSettings implements Jsonable {
                     int[] codepages, boolean doesSupportCodepages,
                     Map<String, String> options,
                     String[] supportedLanguages) {
+        this(printerId, paperWidth, printableWidth, paperDotsPmm, paperKind, false, printerFonts, canHandleCommands, commands,
+             doesReportStatus, codepages, doesSupportCodepages, options, supportedLanguages);
+    }
 
-
-
+    /**
+     * @param unknownPaperKind True if the print service reported a kind of paper that this version of the API does not know, in which case
+     *                         the paper kind is null
+     */
+    PrinterSettings(String printerId, int paperWidth, int printableWidth, float paperDotsPmm,
+                    PaperKind paperKind, boolean unknownPaperKind, PrinterFont[] printerFonts,
+                    boolean canHandleCommands, String[] commands,
+                    boolean doesReportStatus,
+                    int[] codepages, boolean doesSupportCodepages,
+                    Map<String, String> options,
+                    String[] supportedLanguages) {
         this.printerId = checkNotNull(printerId, "printerId must not be null") ;
-        this.paperKind = checkNotNull(paperKind, "paperKind must not be null");
+        this.paperKind = unknownPaperKind ? null : checkNotNull(paperKind, "paperKind must not be null");
 
         this.paperWidth = paperWidth;
         this.printableWidth = printableWidth;
@@ -129,7 +169,7 @@ public class PrinterSettings implements Jsonable {
     /**
      * Gets the kind of paper this printer prints on.
      *
-     * @return the kind of paper this printer prints on.
+     * @return the kind of paper this printer prints on, or null if the print service reported a kind this version of the API does not know.
      */
     public PaperKind getPaperKind() {
         return paperKind;
@@ -144,6 +184,43 @@ public class PrinterSettings implements Jsonable {
         return printerFonts;
     }
 
+    /**
+     * Gets the font used for rows that do not ask for a specific font.
+     *
+     * @return the font marked as default, else the first font, or {@link #UNKNOWN_FONT} if the printer has reported no fonts
+     */
+    public PrinterFont getDefaultFont() {
+        if (printerFonts == null || printerFonts.length == 0) {
+            return UNKNOWN_FONT;
+        }
+        for (PrinterFont font : printerFonts) {
+            if (font.isDefault()) {
+                return font;
+            }
+        }
+        return printerFonts[0];
+    }
+
+    /**
+     * Gets the font with the given id.
+     *
+     * @param printerFontId the id of the font, or {@link PrinterFont#DEFAULT_FONT} for the default font (see {@link #getDefaultFont()})
+     * @return the font, or {@link #UNKNOWN_FONT} if the printer has not reported a font with this id
+     */
+    public PrinterFont getFont(int printerFontId) {
+        if (printerFontId == PrinterFont.DEFAULT_FONT) {
+            return getDefaultFont();
+        }
+        if (printerFonts != null) {
+            for (PrinterFont font : printerFonts) {
+                if (font.getId() == printerFontId) {
+                    return font;
+                }
+            }
+        }
+        return UNKNOWN_FONT;
+    }
+
     /**
      * A list of commands this printer can execute
      *
@@ -178,6 +255,47 @@ public class PrinterSettings implements Jsonable {
         return options;
     }
 
+    /**
+     * @param wireFormat The wire format to check
+     * @return True if payloads for this printer may be sent in the given wire format. JSON is always supported
+     */
+    public boolean supportsWireFormat(WireFormat wireFormat) {
+        if (wireFormat == WireFormat.JSON) {
+            return true;
+        }
+        String wireFormats = options != null ? options.get(OPTION_WIRE_FORMATS) : null;
+        if (wireFormats == null) {
+            return false;
+        }
+        for (String name : wireFormats.split(",")) {
+            if (name.trim().equalsIgnoreCase(wireFormat.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if payloads for this printer may refer to images in an {@link ImageStore} instead of carrying them
+     */
+    public boolean supportsImageStore() {
+        return options != null && "true".equalsIgnoreCase(options.get(OPTION_IMAGE_STORE));
+    }
+
+    /**
+     * @return True if payloads for this printer may refer to images registered with the print service
+     */
+    public boolean supportsImageRegistry() {
+        return options != null && "true".equalsIgnoreCase(options.get(OPTION_IMAGE_REGISTRY));
+    }
+
+    /**
+     * @return True if large payloads for this printer may be sent compressed
+     */
+    public boolean supportsCompression() {
+        return options != null && "true".equalsIgnoreCase(options.get(OPTION_COMPRESSION));
+    }
+
     /**
      * @return True if this printer can handle commands/actions sent via {@link com.aevi.print.PrinterManager#sendAction(String, String)}
      */
@@ -203,11 +321,11 @@ public class PrinterSettings implements Jsonable {
 
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.PRINTER_SETTINGS, this);
     }
 
     public static PrinterSettings fromJson(String json) {
-        return JsonConverter.deserialize(json, PrinterSettings.class);
+        return ModelJson.fromJson(ModelJson.PRINTER_SETTINGS, json);
     }
 
 }
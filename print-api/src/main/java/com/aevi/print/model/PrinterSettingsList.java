@@ -13,7 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
 import com.aevi.util.json.Jsonable;
 
 public class PrinterSettingsList implements Jsonable {
@@ -30,10 +29,10 @@ public class PrinterSettingsList implements Jsonable {
 
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.PRINTER_SETTINGS_LIST, this);
     }
 
     public static PrinterSettingsList fromJson(String json) {
-        return JsonConverter.deserialize(json, PrinterSettingsList.class);
+        return ModelJson.fromJson(ModelJson.PRINTER_SETTINGS_LIST, json);
     }
 }
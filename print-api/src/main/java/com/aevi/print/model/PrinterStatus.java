@@ -13,7 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
 import com.aevi.util.json.Jsonable;
 
 public class PrinterStatus implements Jsonable {
@@ -28,12 +27,29 @@ public class PrinterStatus implements Jsonable {
         return status;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PrinterStatus that = (PrinterStatus) o;
+        return status != null ? status.equals(that.status) : that.status == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return status != null ? status.hashCode() : 0;
+    }
+
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.PRINTER_STATUS, this);
     }
 
     public static PrinterStatus fromJson(String json) {
-        return JsonConverter.deserialize(json, PrinterStatus.class);
+        return ModelJson.fromJson(ModelJson.PRINTER_STATUS, json);
     }
 }
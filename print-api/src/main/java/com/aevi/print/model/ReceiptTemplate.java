@@ -0,0 +1,546 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.aevi.print.model.PrinterFont.DEFAULT_FONT;
+import static com.aevi.print.util.Preconditions.checkArgument;
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * A receipt layout made of fixed rows (header, labels, separators, footer) and named fields that are filled in for each receipt.
+ *
+ * A template is compiled once against the {@link PrinterSettings} of a printer. Compiling resolves the fonts and their number of text
+ * columns, lays out all fixed rows into frozen payloads (see {@link PrintPayload#freeze()}) and pads the labels of left/right rows. Binding
+ * the values of a receipt then only creates the rows of the fields and links the fixed rows, so no layout work is repeated per receipt.
+ *
+ * <pre>
+ * ReceiptTemplate template = new ReceiptTemplate.Builder()
+ *         .withAlignment(Alignment.CENTER).text("Coffee Shop")
+ *         .withAlignment(Alignment.LEFT).lineOfChar('-')
+ *         .table("items", itemsLayout)
+ *         .lineOfChar('-')
+ *         .leftRight("Total", "total")
+ *         .build();
+ * ReceiptTemplate.Compiled compiled = template.compile(printerSettings);
+ *
+ * PrintPayload payload = compiled.bind()
+ *         .addRow("items", "Flat white", "3.20")
+ *         .set("total", "3.20")
+ *         .toPayload();
+ * </pre>
+ *
+ * Styles set via {@link Builder#withFont(int)}, {@link Builder#withAlignment(Alignment)} and {@link Builder#withFontStyle(FontStyle)}
+ * apply to all rows added after them. Table rows take the font and font style, but keep the alignment of their columns (see
+ * {@link TableLayout}).
+ */
+public final class ReceiptTemplate {
+
+    private final List<Step> steps;
+    private final Map<String, Integer> fieldIndexes;
+    private final String[] fieldNames;
+    private final boolean[] tableFields;
+
+    private ReceiptTemplate(Builder builder) {
+        this.steps = new ArrayList<>(builder.steps);
+        this.fieldIndexes = new HashMap<>(builder.fieldIndexes);
+        int count = builder.fieldNames.size();
+        this.fieldNames = builder.fieldNames.toArray(new String[count]);
+        this.tableFields = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            tableFields[i] = builder.tableFields.get(i);
+        }
+    }
+
+    /**
+     * @return The names of the fields of this template, in the order they were first used
+     */
+    public List<String> getFieldNames() {
+        return Collections.unmodifiableList(Arrays.asList(fieldNames));
+    }
+
+    /**
+     * Lays out this template for the given printer.
+     *
+     * @param printerSettings The settings of the printer the receipts will be printed on
+     * @return The compiled template
+     * @throws IllegalArgumentException if the template uses a font that is missing from the fonts the printer reports
+     */
+    public Compiled compile(PrinterSettings printerSettings) {
+        checkNotNull(printerSettings, "printerSettings must not be null");
+        List<Part> parts = new ArrayList<>();
+        PrintPayload fixed = new PrintPayload();
+        for (Step step : steps) {
+            Part part = step.compile(fixed, findFont(printerSettings, step.fontId));
+            if (part != null) {
+                addFixedPart(parts, fixed);
+                fixed = new PrintPayload();
+                parts.add(part);
+            }
+        }
+        addFixedPart(parts, fixed);
+        return new Compiled(this, printerSettings.getPrinterId(), parts.toArray(new Part[parts.size()]));
+    }
+
+    private static void addFixedPart(List<Part> parts, PrintPayload fixed) {
+        if (!fixed.getRowView().isEmpty()) {
+            parts.add(new FixedPart(fixed.freeze()));
+        }
+    }
+
+    /**
+     * Looks up a font like {@link PrinterSettings#getFont(int)} does. A printer that reports no fonts at all is laid out with
+     * {@link PrinterSettings#UNKNOWN_FONT}, but a font missing from the fonts a printer does report is a mistake in the template.
+     */
+    private static PrinterFont findFont(PrinterSettings printerSettings, int fontId) {
+        PrinterFont font = printerSettings.getFont(fontId);
+        PrinterFont[] fonts = printerSettings.getPrinterFonts();
+        if (font == PrinterSettings.UNKNOWN_FONT && fonts != null && fonts.length > 0) {
+            throw new IllegalArgumentException("Printer " + printerSettings.getPrinterId() + " has no font with id " + fontId);
+        }
+        return font;
+    }
+
+    private int indexOf(String field, boolean table) {
+        Integer index = fieldIndexes.get(field);
+        if (index == null || tableFields[index] != table) {
+            throw new IllegalArgumentException("Template has no " + (table ? "table " : "field ") + field);
+        }
+        return index;
+    }
+
+    /**
+     * A template laid out for one printer. Bind the values of each receipt via {@link #bind()}.
+     *
+     * A compiled template reuses line buffers, as do the {@link TableLayout}s of the template, so it is not thread-safe. A template and
+     * everything compiled from it must only be used by one thread at a time.
+     */
+    public static final class Compiled {
+
+        private final ReceiptTemplate template;
+        private final String printerId;
+        private final Part[] parts;
+
+        private Compiled(ReceiptTemplate template, String printerId, Part[] parts) {
+            this.template = template;
+            this.printerId = printerId;
+            this.parts = parts;
+        }
+
+        /**
+         * @return A new binding to set the values of one receipt
+         */
+        public Binding bind() {
+            return new Binding(this);
+        }
+    }
+
+    /**
+     * The values of one receipt.
+     */
+    public static final class Binding {
+
+        private final Compiled compiled;
+        private final String[] values;
+        private final List<List<String[]>> tableRows;
+
+        private Binding(Compiled compiled) {
+            this.compiled = compiled;
+            ReceiptTemplate template = compiled.template;
+            this.values = new String[template.fieldNames.length];
+            this.tableRows = new ArrayList<>(values.length);
+            for (boolean tableField : template.tableFields) {
+                tableRows.add(tableField ? new ArrayList<String[]>() : Collections.<String[]>emptyList());
+            }
+        }
+
+        /**
+         * Sets the value of a field.
+         *
+         * @param field The name of the field
+         * @param value The value. This parameter must not be null
+         * @return This binding
+         * @throws IllegalArgumentException if the template has no such field
+         */
+        public Binding set(String field, String value) {
+            values[compiled.template.indexOf(field, false)] = checkNotNull(value, "value must not be null");
+            return this;
+        }
+
+        /**
+         * Adds a row to a table. The cells are not copied, so do not change them afterwards.
+         *
+         * @param table The name of the table
+         * @param cells The text of each column. Null is treated as empty
+         * @return This binding
+         * @throws IllegalArgumentException if the template has no such table
+         */
+        public Binding addRow(String table, String... cells) {
+            checkNotNull(cells, "cells must not be null");
+            tableRows.get(compiled.template.indexOf(table, true)).add(cells);
+            return this;
+        }
+
+        /**
+         * Creates the payload of this receipt. The fixed rows are shared with all other payloads of the same compiled template, so they
+         * must not be changed.
+         *
+         * @return A new payload addressed to the printer the template was compiled for
+         * @throws IllegalStateException if a field has not been set
+         */
+        public PrintPayload toPayload() {
+            return toPayload(new PrintPayload());
+        }
+
+        /**
+         * Fills a payload that is reused for every receipt with the rows of this receipt. The payload is reset first (see
+         * {@link PrintPayload#reset()}), so the rows of the fields are taken from its {@link TextRowPool}, if it has one. The fixed rows are
+         * shared with all other payloads of the same compiled template, so they must not be changed.
+         *
+         * @param reuse The payload to fill, which is addressed to the printer the template was compiled for
+         * @return The given payload
+         * @throws IllegalStateException if a field has not been set, in which case the payload is left incomplete, or if the payload is
+         *                               frozen
+         */
+        public PrintPayload toPayload(PrintPayload reuse) {
+            checkNotNull(reuse, "reuse must not be null");
+            reuse.reset();
+            reuse.setPrinterId(compiled.printerId);
+            for (Part part : compiled.parts) {
+                part.appendTo(reuse, this);
+            }
+            return reuse;
+        }
+
+        private String value(int index) {
+            String value = values[index];
+            if (value == null) {
+                throw new IllegalStateException("No value set for field " + compiled.template.fieldNames[index]);
+            }
+            return value;
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Step> steps = new ArrayList<>();
+        private final Map<String, Integer> fieldIndexes = new HashMap<>();
+        private final List<String> fieldNames = new ArrayList<>();
+        private final List<Boolean> tableFields = new ArrayList<>();
+        private int fontId = DEFAULT_FONT;
+        private Alignment alignment = Alignment.LEFT;
+        private FontStyle fontStyle = FontStyle.NORMAL;
+
+        /**
+         * Sets the font of the rows added after this call. Defaults to the default font of the printer.
+         *
+         * @param printerFontId The id of a font as provided via {@link PrinterSettings#getPrinterFonts()}
+         * @return This builder
+         */
+        public Builder withFont(int printerFontId) {
+            this.fontId = printerFontId;
+            return this;
+        }
+
+        /**
+         * Sets the alignment of the rows added after this call. Defaults to {@link Alignment#LEFT}.
+         *
+         * @param alignment The alignment
+         * @return This builder
+         */
+        public Builder withAlignment(Alignment alignment) {
+            this.alignment = checkNotNull(alignment, "alignment must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the font style of the rows added after this call. Defaults to {@link FontStyle#NORMAL}.
+         *
+         * @param fontStyle The font style
+         * @return This builder
+         */
+        public Builder withFontStyle(FontStyle fontStyle) {
+            this.fontStyle = checkNotNull(fontStyle, "fontStyle must not be null");
+            return this;
+        }
+
+        /**
+         * Adds a row of fixed text.
+         *
+         * @param text The text
+         * @return This builder
+         */
+        public Builder text(final String text) {
+            checkNotNull(text, "text must not be null");
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    fixed.append(style(new TextRow(text, fontId)));
+                    return null;
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds an empty line.
+         *
+         * @return This builder
+         */
+        public Builder emptyLine() {
+            return text(" ");
+        }
+
+        /**
+         * Adds a line of the given character across the full width of the font, e.g. a separator.
+         *
+         * @param character The character to fill the line with
+         * @return This builder
+         */
+        public Builder lineOfChar(final char character) {
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    char[] line = new char[Math.max(font.getNumColumns(), 1)];
+                    Arrays.fill(line, character);
+                    fixed.append(style(new TextRow(new String(line), fontId)));
+                    return null;
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds a fixed image, e.g. a logo. Do not change the image afterwards.
+         *
+         * @param image The image
+         * @return This builder
+         */
+        public Builder image(final Bitmap image) {
+            checkNotNull(image, "image must not be null");
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    fixed.append(image).align(alignment);
+                    return null;
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds a fixed table row, e.g. the column titles of a table.
+         *
+         * @param tableLayout The layout of the table
+         * @param cells       The text of each column
+         * @return This builder
+         */
+        public Builder tableRow(final TableLayout tableLayout, final String... cells) {
+            checkNotNull(tableLayout, "tableLayout must not be null");
+            checkArgument(cells != null && cells.length == tableLayout.getColumnCount(), "expected a cell for each column");
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    tableLayout.appendRow(fixed, font.getNumColumns(), rowFont(font), fontStyle, cells);
+                    return null;
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds a row showing the value of a field.
+         *
+         * @param field The name of the field
+         * @return This builder
+         */
+        public Builder field(String field) {
+            final int index = addField(field, false);
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    final Step step = this;
+                    return new Part() {
+                        @Override
+                        public void appendTo(PrintPayload payload, Binding binding) {
+                            payload.append(step.style(payload.newTextRow(binding.value(index), fontId)));
+                        }
+                    };
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds a row with a fixed label on the left and the value of a field on the right, as {@link PrintPayload#appendLeftRight}
+         * does. The label is padded when the template is compiled.
+         *
+         * @param label The label
+         * @param field The name of the field
+         * @return This builder
+         */
+        public Builder leftRight(final String label, String field) {
+            checkNotNull(label, "label must not be null");
+            final int index = addField(field, false);
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, PrinterFont font) {
+                    return new LeftRightPart(this, label, index, font.getNumColumns());
+                }
+            });
+            return this;
+        }
+
+        /**
+         * Adds a table whose rows are added per receipt via {@link Binding#addRow(String, String...)}.
+         *
+         * @param table       The name of the table
+         * @param tableLayout The layout of the table
+         * @return This builder
+         */
+        public Builder table(String table, final TableLayout tableLayout) {
+            checkNotNull(tableLayout, "tableLayout must not be null");
+            final int index = addField(table, true);
+            steps.add(new Step(this) {
+                @Override
+                Part compile(PrintPayload fixed, final PrinterFont font) {
+                    final PrinterFont rowFont = rowFont(font);
+                    return new Part() {
+                        @Override
+                        public void appendTo(PrintPayload payload, Binding binding) {
+                            for (String[] cells : binding.tableRows.get(index)) {
+                                tableLayout.appendRow(payload, font.getNumColumns(), rowFont, fontStyle, cells);
+                            }
+                        }
+                    };
+                }
+            });
+            return this;
+        }
+
+        private int addField(String name, boolean table) {
+            checkArgument(name != null && !name.isEmpty(), "field name must not be empty");
+            Integer index = fieldIndexes.get(name);
+            if (index != null) {
+                checkArgument(tableFields.get(index) == table, "%s is used both as a field and as a table", name);
+                return index;
+            }
+            fieldIndexes.put(name, fieldNames.size());
+            fieldNames.add(name);
+            tableFields.add(table);
+            return fieldNames.size() - 1;
+        }
+
+        public ReceiptTemplate build() {
+            return new ReceiptTemplate(this);
+        }
+    }
+
+    /**
+     * A step of the template, with the style that was set when it was added.
+     */
+    private abstract static class Step {
+
+        final int fontId;
+        final Alignment alignment;
+        final FontStyle fontStyle;
+
+        Step(Builder builder) {
+            this.fontId = builder.fontId;
+            this.alignment = builder.alignment;
+            this.fontStyle = builder.fontStyle;
+        }
+
+        TextRow style(TextRow row) {
+            return row.align(alignment).fontStyle(fontStyle);
+        }
+
+        PrinterFont rowFont(PrinterFont font) {
+            return fontId == DEFAULT_FONT ? null : font;
+        }
+
+        /**
+         * Appends the fixed rows of this step to the given payload.
+         *
+         * @return The part that appends the rows of the field values of this step, or null if all its rows are fixed
+         */
+        abstract Part compile(PrintPayload fixed, PrinterFont font);
+    }
+
+    /**
+     * Appends part of a receipt when a binding is turned into a payload.
+     */
+    private interface Part {
+
+        void appendTo(PrintPayload payload, Binding binding);
+    }
+
+    private static final class FixedPart implements Part {
+
+        private final PrintPayload rows;
+
+        FixedPart(PrintPayload rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void appendTo(PrintPayload payload, Binding binding) {
+            payload.append(rows);
+        }
+    }
+
+    private static final class LeftRightPart implements Part {
+
+        private final Step step;
+        private final String label;
+        private final int index;
+        private final int columns;
+        // the label padded with spaces to the full width, the value is copied over the end
+        private final char[] line;
+
+        LeftRightPart(Step step, String label, int index, int columns) {
+            this.step = step;
+            this.label = label;
+            this.index = index;
+            this.columns = columns;
+            this.line = new char[Math.max(columns, label.length())];
+            label.getChars(0, label.length(), line, 0);
+            Arrays.fill(line, label.length(), line.length, ' ');
+        }
+
+        @Override
+        public void appendTo(PrintPayload payload, Binding binding) {
+            String value = binding.value(index);
+            int valueLength = value.length();
+            String text;
+            if (label.length() + valueLength <= columns) {
+                int start = columns - valueLength;
+                value.getChars(0, valueLength, line, start);
+                text = new String(line, 0, columns);
+                Arrays.fill(line, start, columns, ' ');
+            } else {
+                text = label + value;
+            }
+            payload.append(step.style(payload.newTextRow(text, step.fontId)));
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The rows of a {@link PrintPayload}, stored as a chain of sealed segments followed by a tail that rows are appended to.
+ *
+ * Sealed segments are never changed again, so they can be shared between payloads: appending a frozen payload links its segments
+ * instead of copying its rows. The rows of a segment that was sealed from the tail of a list may still be changed through the references
+ * that were handed out when they were appended, so they are copied when a snapshot is taken (see {@link #snapshot()}). Iteration walks
+ * the segments lazily, indexed access costs O(segments).
+ */
+final class SegmentedRowList extends AbstractList<PrintRow> {
+
+    private final List<List<PrintRow>> segments = new ArrayList<>();
+    private List<PrintRow> tail = new ArrayList<>();
+    private int sealedSize;
+    // segments sealed from the tail of this list, as opposed to those linked from snapshots, created when first needed
+    private Set<List<PrintRow>> ownSegments;
+
+    /**
+     * Turns the tail into a sealed segment, so that further rows are appended after it.
+     */
+    void seal() {
+        if (!tail.isEmpty()) {
+            if (ownSegments == null) {
+                ownSegments = Collections.newSetFromMap(new IdentityHashMap<List<PrintRow>, Boolean>());
+            }
+            ownSegments.add(tail);
+            segments.add(tail);
+            sealedSize += tail.size();
+            tail = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Links the sealed segments of the given snapshot (see {@link #snapshot()}) after the rows of this list.
+     */
+    void addSegments(SegmentedRowList rows) {
+        seal();
+        segments.addAll(rows.segments);
+        sealedSize += rows.sealedSize;
+    }
+
+    /**
+     * Creates a sealed list with the same rows that can not be changed through the rows of this list. Segments linked from other
+     * snapshots are shared, all other rows are copied.
+     */
+    SegmentedRowList snapshot() {
+        SegmentedRowList snapshot = new SegmentedRowList();
+        for (List<PrintRow> segment : segments) {
+            snapshot.segments.add(ownSegments != null && ownSegments.contains(segment) ? copyRows(segment) : segment);
+        }
+        if (!tail.isEmpty()) {
+            snapshot.segments.add(copyRows(tail));
+        }
+        snapshot.sealedSize = size();
+        return snapshot;
+    }
+
+    private static List<PrintRow> copyRows(List<PrintRow> rows) {
+        List<PrintRow> copies = new ArrayList<>(rows.size());
+        for (PrintRow row : rows) {
+            copies.add(copyRow(row));
+        }
+        return copies;
+    }
+
+    private static PrintRow copyRow(PrintRow row) {
+        if (row instanceof TextRow) {
+            return ((TextRow) row).copy();
+        } else if (row instanceof ImageRow) {
+            return ((ImageRow) row).copy();
+        } else if (row instanceof ImageRefRow) {
+            return ((ImageRefRow) row).copy();
+        }
+        return row;
+    }
+
+    /**
+     * @return The number of segments, including the tail if it is not empty
+     */
+    int getSegmentCount() {
+        return segments.size() + (tail.isEmpty() ? 0 : 1);
+    }
+
+    @Override
+    public boolean add(PrintRow row) {
+        tail.add(row);
+        return true;
+    }
+
+    @Override
+    public PrintRow get(int index) {
+        if (index >= sealedSize) {
+            return tail.get(index - sealedSize);
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        for (List<PrintRow> segment : segments) {
+            if (index < segment.size()) {
+                return segment.get(index);
+            }
+            index -= segment.size();
+        }
+        throw new IllegalStateException("Segment sizes out of sync");
+    }
+
+    /**
+     * Replaces a row. Rows in sealed segments may be shared with other payloads, so the segments are copied into the tail first.
+     */
+    @Override
+    public PrintRow set(int index, PrintRow row) {
+        if (index < sealedSize) {
+            unseal();
+        }
+        return tail.set(index - sealedSize, row);
+    }
+
+    /**
+     * Copies the rows of the sealed segments into the tail, after which indexed access takes constant time.
+     */
+    void unseal() {
+        if (!segments.isEmpty()) {
+            List<PrintRow> rows = new ArrayList<>(this);
+            segments.clear();
+            ownSegments = null;
+            sealedSize = 0;
+            tail = rows;
+        }
+    }
+
+    /**
+     * Removes all rows. The tail keeps its capacity, so a list that is filled again does not need to grow.
+     */
+    @Override
+    public void clear() {
+        segments.clear();
+        ownSegments = null;
+        sealedSize = 0;
+        tail.clear();
+    }
+
+    @Override
+    public int size() {
+        return sealedSize + tail.size();
+    }
+
+    @Override
+    public Iterator<PrintRow> iterator() {
+        return new Iterator<PrintRow>() {
+
+            private int segment;
+            private Iterator<PrintRow> rows = segments.isEmpty() ? tail.iterator() : segments.get(0).iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!rows.hasNext() && segment < segments.size()) {
+                    segment++;
+                    rows = segment < segments.size() ? segments.get(segment).iterator() : tail.iterator();
+                }
+                return rows.hasNext();
+            }
+
+            @Override
+            public PrintRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return rows.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
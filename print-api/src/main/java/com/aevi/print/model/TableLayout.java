@@ -0,0 +1,278 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.aevi.print.util.Preconditions.checkArgument;
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * Lays out table rows (e.g. the items of a receipt) as aligned text columns.
+ *
+ * Each column has a width ratio, an alignment and an {@link Overflow} mode. The width of each column in characters is derived from the
+ * number of text columns of the printer font (see {@link PrinterFont#getNumColumns()}) and cached, so a layout can be reused for all
+ * rows of a table. Rows are added via {@link PrintPayload#appendTableRow(TableLayout, PrinterFont, String...)}.
+ *
+ * <pre>
+ * TableLayout items = new TableLayout.Builder()
+ *         .addColumn(3, Alignment.LEFT, TableLayout.Overflow.WRAP)
+ *         .addColumn(1, Alignment.RIGHT, TableLayout.Overflow.TRUNCATE)
+ *         .build();
+ * payload.appendTableRow(items, font, "Flat white", "3.20");
+ * </pre>
+ *
+ * Lines are built in a reusable buffer, so the only objects created per line are its text and its {@link TextRow}. A layout is therefore
+ * not thread-safe and must not be shared between threads.
+ */
+public final class TableLayout {
+
+    /**
+     * What to do with cell text that does not fit the width of its column.
+     */
+    public enum Overflow {
+        /**
+         * Cut the text off at the column width
+         */
+        TRUNCATE,
+
+        /**
+         * Continue the text on the next line, breaking between words where possible
+         */
+        WRAP
+    }
+
+    private final int[] weights;
+    private final Alignment[] alignments;
+    private final Overflow[] overflows;
+    private final int columnGap;
+    private final int totalWeight;
+
+    private int resolvedColumns = -1;
+    private int[] widths;
+    private int[] starts;
+    private char[] line = new char[0];
+    private final int[] cursors;
+
+    private TableLayout(Builder builder) {
+        int count = builder.weights.size();
+        this.weights = new int[count];
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            weights[i] = builder.weights.get(i);
+            total += weights[i];
+        }
+        this.totalWeight = total;
+        this.alignments = builder.alignments.toArray(new Alignment[count]);
+        this.overflows = builder.overflows.toArray(new Overflow[count]);
+        this.columnGap = builder.columnGap;
+        this.cursors = new int[count];
+    }
+
+    /**
+     * @return The number of columns of this table
+     */
+    public int getColumnCount() {
+        return weights.length;
+    }
+
+    /**
+     * Gets the width of a column for the given number of text columns. Widths are shared out by ratio, and what is left over after
+     * rounding down goes to the leftmost columns.
+     *
+     * @param column  The index of the column
+     * @param columns The number of text columns of a line
+     * @return The width of the column in characters
+     */
+    public int getColumnWidth(int column, int columns) {
+        resolve(columns);
+        return widths[column];
+    }
+
+    private void resolve(int columns) {
+        if (columns == resolvedColumns) {
+            return;
+        }
+        int count = weights.length;
+        int available = Math.max(0, columns - columnGap * (count - 1));
+        int[] newWidths = new int[count];
+        int[] newStarts = new int[count];
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            newWidths[i] = available * weights[i] / totalWeight;
+            used += newWidths[i];
+        }
+        for (int i = 0; used < available; i = (i + 1) % count) {
+            newWidths[i]++;
+            used++;
+        }
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            newStarts[i] = start;
+            start += newWidths[i] + columnGap;
+        }
+        if (line.length < columns) {
+            line = new char[columns];
+        }
+        widths = newWidths;
+        starts = newStarts;
+        resolvedColumns = columns;
+    }
+
+    /**
+     * Appends the lines of one table row to the payload, in the given font style.
+     *
+     * @return The number of lines appended
+     */
+    int appendRow(PrintPayload payload, int columns, PrinterFont font, FontStyle fontStyle, String[] cells) {
+        checkArgument(columns > 0, "columns must be greater than zero");
+        checkNotNull(cells, "cells must not be null");
+        if (cells.length != weights.length) {
+            throw new IllegalArgumentException("expected " + weights.length + " cells but got " + cells.length);
+        }
+        resolve(columns);
+        Arrays.fill(cursors, 0);
+        int lines = 0;
+        do {
+            Arrays.fill(line, 0, columns, ' ');
+            int length = 0;
+            for (int i = 0; i < cells.length; i++) {
+                length = Math.max(length, layoutCell(i, cells[i] != null ? cells[i] : "", lines == 0));
+            }
+            payload.append(new String(line, 0, length), font).fontStyle(fontStyle);
+            lines++;
+        } while (hasMoreLines(cells));
+        return lines;
+    }
+
+    /**
+     * Copies the next piece of the cell into the line buffer and advances the cursor of the cell.
+     *
+     * @return The end of the piece in the line buffer, i.e. the length of the line up to and including this cell
+     */
+    private int layoutCell(int column, String cell, boolean firstLine) {
+        int width = widths[column];
+        int length = cell.length();
+        int start = cursors[column];
+        if (!firstLine) {
+            while (start < length && cell.charAt(start) == ' ') {
+                start++;
+            }
+        }
+        if (width == 0 || start >= length) {
+            cursors[column] = length;
+            return 0;
+        }
+        int end;
+        if (length - start <= width) {
+            end = length;
+        } else if (overflows[column] == Overflow.TRUNCATE) {
+            end = start + width;
+        } else {
+            end = breakBefore(cell, start, start + width);
+        }
+        cursors[column] = overflows[column] == Overflow.TRUNCATE ? length : end;
+        while (end > start && cell.charAt(end - 1) == ' ') {
+            end--;
+        }
+        int pieceLength = end - start;
+        int offset;
+        switch (alignments[column]) {
+            case RIGHT:
+                offset = width - pieceLength;
+                break;
+            case CENTER:
+                offset = (width - pieceLength) / 2;
+                break;
+            default:
+                offset = 0;
+                break;
+        }
+        int position = starts[column] + offset;
+        cell.getChars(start, end, line, position);
+        return pieceLength > 0 ? position + pieceLength : 0;
+    }
+
+    /**
+     * @return The index to break the text at so that the piece from start fits into the limit, preferably at a space
+     */
+    private static int breakBefore(String text, int start, int limit) {
+        if (text.charAt(limit) == ' ') {
+            return limit;
+        }
+        for (int i = limit - 1; i > start; i--) {
+            if (text.charAt(i) == ' ') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private boolean hasMoreLines(String[] cells) {
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null && cursors[i] < cells[i].length()) {
+                // a wrapped cell may only have spaces left
+                for (int j = cursors[i]; j < cells[i].length(); j++) {
+                    if (cells[i].charAt(j) != ' ') {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public static final class Builder {
+
+        private final List<Integer> weights = new ArrayList<>();
+        private final List<Alignment> alignments = new ArrayList<>();
+        private final List<Overflow> overflows = new ArrayList<>();
+        private int columnGap = 1;
+
+        /**
+         * Adds a column.
+         *
+         * @param widthRatio The share of the line width this column gets, relative to the other columns
+         * @param alignment  The alignment of the text within the column
+         * @param overflow   What to do with text that does not fit the column
+         * @return This builder
+         */
+        public Builder addColumn(int widthRatio, Alignment alignment, Overflow overflow) {
+            checkArgument(widthRatio > 0, "widthRatio must be greater than zero");
+            weights.add(widthRatio);
+            alignments.add(checkNotNull(alignment, "alignment must not be null"));
+            overflows.add(checkNotNull(overflow, "overflow must not be null"));
+            return this;
+        }
+
+        /**
+         * Sets the number of spaces between columns. Defaults to one.
+         *
+         * @param columnGap The number of spaces
+         * @return This builder
+         */
+        public Builder withColumnGap(int columnGap) {
+            checkArgument(columnGap >= 0, "columnGap must not be negative");
+            this.columnGap = columnGap;
+            return this;
+        }
+
+        public TableLayout build() {
+            checkArgument(!weights.isEmpty(), "a table needs at least one column");
+            return new TableLayout(this);
+        }
+    }
+}
@@ -13,8 +13,6 @@
  */
 package com.aevi.print.model;
 
-import com.aevi.util.json.JsonConverter;
-
 import static com.aevi.print.model.PrinterFont.DEFAULT_FONT;
 import static com.aevi.print.util.Preconditions.checkNotNull;
 
@@ -23,7 +21,7 @@ import static com.aevi.print.util.Preconditions.checkNotNull;
  */
 public class TextRow implements PrintRow, Cloneable {
 
-    private final String text;
+    private String text;
     private int printerFontId = DEFAULT_FONT;
     private Underline underline = Underline.NONE;
     private FontStyle fontStyle = FontStyle.NORMAL;
@@ -53,6 +51,30 @@ public class TextRow implements PrintRow, Cloneable {
         }
     }
 
+    TextRow(String text, int printerFontId) {
+        this.text = checkNotNull(text, "text must not be null");
+        this.printerFontId = printerFontId;
+    }
+
+    /**
+     * @return A new row with the same text and style, e.g. for a frozen payload (see {@link PrintPayload#freeze()})
+     */
+    TextRow copy() {
+        return new TextRow(text, printerFontId).underline(underline).fontStyle(fontStyle).align(alignment);
+    }
+
+    /**
+     * Turns this row into a new unstyled row with the given text, so that it can be reused by a {@link TextRowPool}.
+     */
+    TextRow reset(String text, int printerFontId) {
+        this.text = text;
+        this.printerFontId = printerFontId;
+        this.underline = Underline.NONE;
+        this.fontStyle = FontStyle.NORMAL;
+        this.alignment = Alignment.LEFT;
+        return this;
+    }
+
     /**
      * Gets the text of this text row.
      *
@@ -154,10 +176,10 @@ public class TextRow implements PrintRow, Cloneable {
 
     @Override
     public String toJson() {
-        return JsonConverter.serialize(this);
+        return ModelJson.toJson(ModelJson.TEXT_ROW, this);
     }
 
     public static TextRow fromJson(String json) {
-        return JsonConverter.deserialize(json, TextRow.class);
+        return ModelJson.fromJson(ModelJson.TEXT_ROW, json);
     }
 }
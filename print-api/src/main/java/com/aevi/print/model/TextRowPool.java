@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import static com.aevi.print.util.Preconditions.checkArgument;
+
+/**
+ * Keeps text rows of payloads that have been reset, so that they can be reused for the next rows instead of creating new ones.
+ *
+ * Set a pool on a payload that is reused for many prints via {@link PrintPayload#setTextRowPool(TextRowPool)}; its rows go back to the
+ * pool on {@link PrintPayload#reset()}. A pool is not thread-safe, so it must only be used by payloads of one thread.
+ */
+public final class TextRowPool {
+
+    private final TextRow[] freeRows;
+    private int freeCount;
+
+    /**
+     * @param capacity The maximum number of rows to keep. Rows recycled beyond that are left to the garbage collector
+     */
+    public TextRowPool(int capacity) {
+        checkArgument(capacity > 0, "capacity must be greater than zero");
+        this.freeRows = new TextRow[capacity];
+    }
+
+    /**
+     * @return The number of rows kept for reuse
+     */
+    public int getFreeCount() {
+        return freeCount;
+    }
+
+    TextRow obtain(String text, int printerFontId) {
+        if (freeCount == 0) {
+            return new TextRow(text, printerFontId);
+        }
+        TextRow textRow = freeRows[--freeCount];
+        freeRows[freeCount] = null;
+        return textRow.reset(text, printerFontId);
+    }
+
+    void recycle(TextRow textRow) {
+        if (freeCount < freeRows.length) {
+            freeRows[freeCount++] = textRow;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.aevi.print.util.Preconditions.checkNotNull;
+
+/**
+ * Wraps text into lines that fit a number of text columns (see {@link PrinterFont#getNumColumns()}).
+ *
+ * Lines are broken after the last space that fits, or within a word that is longer than a line, and always at a new line character. Spaces
+ * at the start of a wrapped line are dropped, and an empty line between two new line characters is returned as a single space, as added by
+ * {@link PrintPayload#appendEmptyLine()}. Wrapping takes time linear in the length of the text.
+ *
+ * The lines of text that has to be wrapped are cached per text and number of columns, as the same text (e.g. the terms printed on every
+ * receipt) tends to be wrapped again and again.
+ */
+public final class TextWrapper {
+
+    private static final int CACHE_SIZE = 256;
+
+    private static final Map<CacheKey, List<String>> CACHE = new LineCache();
+
+    private TextWrapper() {
+    }
+
+    /**
+     * Wraps the text into lines of at most the given number of columns.
+     *
+     * @param text    The text to wrap
+     * @param columns The number of text columns of a line. If this is zero or less the text is only broken at new line characters
+     * @return The lines, which must not be changed
+     */
+    public static List<String> wrap(String text, int columns) {
+        checkNotNull(text, "text must not be null");
+        if (text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if ((columns <= 0 || text.length() <= columns) && text.indexOf('\n') < 0) {
+            return Collections.singletonList(text);
+        }
+        CacheKey key = new CacheKey(text, columns);
+        synchronized (CACHE) {
+            List<String> lines = CACHE.get(key);
+            if (lines != null) {
+                return lines;
+            }
+        }
+        List<String> lines = Collections.unmodifiableList(split(text, columns));
+        synchronized (CACHE) {
+            CACHE.put(key, lines);
+        }
+        return lines;
+    }
+
+    private static List<String> split(String text, int columns) {
+        List<String> lines = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        while (true) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+            int paragraphEnd = end > start && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            wrapParagraph(text, start, paragraphEnd, columns, lines);
+            // a new line character at the very end does not start another line
+            if (end >= length - 1) {
+                return lines;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static void wrapParagraph(String text, int start, int end, int columns, List<String> lines) {
+        if (start == end) {
+            lines.add(" ");
+            return;
+        }
+        if (columns <= 0) {
+            lines.add(text.substring(start, end));
+            return;
+        }
+        int position = start;
+        while (true) {
+            if (end - position <= columns) {
+                lines.add(text.substring(position, end));
+                return;
+            }
+            int breakAt = breakBefore(text, position, position + columns);
+            lines.add(text.substring(position, breakAt));
+            position = breakAt;
+            while (position < end && text.charAt(position) == ' ') {
+                position++;
+            }
+            if (position == end) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the end of a line that starts at the given position and must end at the limit at the latest. A space that fits stays at the
+     * end of the line. Every character looked at here is part of this line or of the next one, so wrapping a text is linear in its length.
+     */
+    private static int breakBefore(String text, int start, int limit) {
+        if (text.charAt(limit) == ' ') {
+            return limit;
+        }
+        for (int i = limit; i > start; i--) {
+            if (text.charAt(i - 1) == ' ') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static final class CacheKey {
+
+        private final String text;
+        private final int columns;
+
+        CacheKey(String text, int columns) {
+            this.text = text;
+            this.columns = columns;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return columns == other.columns && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + columns;
+        }
+    }
+
+    /**
+     * Least recently used cache of wrapped lines, holding at most {@link #CACHE_SIZE} entries.
+     */
+    private static final class LineCache extends LinkedHashMap<CacheKey, List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        LineCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, List<String>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.aevi.print.model;
+
+/**
+ * The encodings a {@link PrintPayload} can be sent to the print service in.
+ *
+ * Encodings other than {@link #JSON} are only used with printers that list them in their {@link PrinterSettings#OPTION_WIRE_FORMATS}
+ * option, see {@link PrinterSettings#supportsWireFormat(WireFormat)}.
+ */
+public enum WireFormat {
+
+    /**
+     * The Gson JSON encoding understood by all versions of the print service.
+     */
+    JSON,
+
+    /**
+     * A compact binary encoding with varint lengths and packed row styles, sent Base64 encoded. Decode it with
+     * {@link PrintPayload#fromMessage(String)}.
+     */
+    BINARY
+}
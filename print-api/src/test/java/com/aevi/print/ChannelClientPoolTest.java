@@ -0,0 +1,181 @@
+package com.aevi.print;
+
+import android.content.ComponentName;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.aevi.android.rxmessenger.ChannelClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.CompletableSubject;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ChannelClientPoolTest {
+
+    private static final ComponentName COMPONENT = new ComponentName("com.aevi.print.service", "com.aevi.print.service.Test");
+
+    private TestScheduler scheduler;
+    private List<ChannelClient> createdClients;
+    private ChannelClientPool pool;
+
+    @Before
+    public void setup() {
+        scheduler = new TestScheduler();
+        createdClients = new ArrayList<>();
+        pool = new ChannelClientPool(RuntimeEnvironment.application, 1000, scheduler) {
+            @Override
+            ChannelClient createChannelClient(ComponentName componentName) {
+                ChannelClient client = mock(ChannelClient.class);
+                when(client.isConnected()).thenReturn(true);
+                when(client.sendMessage(anyString())).thenReturn(Observable.just("reply"));
+                createdClients.add(client);
+                return client;
+            }
+        };
+    }
+
+    @Test
+    public void willReuseConnectionAfterCompletedConversation() {
+        pool.sendMessage(COMPONENT, "one").test().assertValue("reply").assertComplete();
+        pool.sendMessage(COMPONENT, "two").test().assertValue("reply").assertComplete();
+
+        assertThat(createdClients).hasSize(1);
+        verify(createdClients.get(0), never()).closeConnection();
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(1);
+    }
+
+    @Test
+    public void willCloseIdleConnectionAfterTimeout() {
+        pool.sendMessage(COMPONENT, "one").test().assertComplete();
+
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        verify(createdClients.get(0), never()).closeConnection();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        verify(createdClients.get(0)).closeConnection();
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void willCloseIdleAndLeasedConnectionsOnRequest() {
+        pool.sendMessage(COMPONENT, "one").test().assertComplete();
+        ChannelClientPool.Lease leased = pool.acquire(COMPONENT);
+        ChannelClientPool.Lease other = pool.acquire(COMPONENT);
+
+        pool.closeConnections();
+        pool.release(other, true);
+
+        verify(createdClients.get(1)).closeConnection();
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(0);
+        pool.release(leased, true);
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void willUseSeparateConnectionsForConcurrentConversations() {
+        ChannelClientPool.Lease first = pool.acquire(COMPONENT);
+        ChannelClientPool.Lease second = pool.acquire(COMPONENT);
+
+        assertThat(first.getClient()).isNotSameAs(second.getClient());
+        assertThat(createdClients).hasSize(2);
+    }
+
+    @Test
+    public void willCloseConnectionWhenConversationIsDisposed() {
+        ChannelClientPool.Lease lease = pool.acquire(COMPONENT);
+        PublishSubject<String> replies = PublishSubject.create();
+        when(lease.getClient().sendMessage(anyString())).thenReturn(replies);
+        pool.release(lease, true);
+
+        pool.sendMessage(COMPONENT, "status").test().dispose();
+
+        verify(createdClients.get(0)).closeConnection();
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void willReconnectWhenPooledConnectionHasDied() {
+        ChannelClientPool.Lease lease = pool.acquire(COMPONENT);
+        when(lease.getClient().sendMessage(anyString())).thenReturn(Observable.<String>error(new IOException("dead")));
+        pool.release(lease, true);
+
+        pool.sendMessage(COMPONENT, "one").test().assertValue("reply").assertComplete();
+
+        assertThat(createdClients).hasSize(2);
+        verify(createdClients.get(0)).closeConnection();
+    }
+
+    @Test
+    public void willNotResendMessageThatIsNotIdempotent() {
+        ChannelClientPool.Lease lease = pool.acquire(COMPONENT);
+        when(lease.getClient().sendMessage(anyString())).thenReturn(Observable.<String>error(new IOException("dead")));
+        pool.release(lease, true);
+
+        pool.sendMessage(COMPONENT, "payload", false, null).test().assertError(IOException.class);
+
+        assertThat(createdClients).hasSize(1);
+        verify(createdClients.get(0)).closeConnection();
+    }
+
+    @Test
+    public void willNotPoolDisconnectedClients() {
+        ChannelClientPool.Lease lease = pool.acquire(COMPONENT);
+        when(lease.getClient().isConnected()).thenReturn(false);
+
+        pool.release(lease, true);
+
+        verify(lease.getClient()).closeConnection();
+        assertThat(pool.getIdleCount(COMPONENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void willReportBindTimeOfNewConnection() {
+        ChannelClientPool.Lease lease = pool.acquire(COMPONENT);
+        when(lease.getClient().isConnected()).thenReturn(false);
+        CompletableSubject connect = CompletableSubject.create();
+        when(lease.getClient().connect()).thenReturn(connect);
+        ChannelClientPool.ConnectionListener listener = mock(ChannelClientPool.ConnectionListener.class);
+
+        TestObserver<String> observer = pool.sendOnLease(lease, "one", listener).test();
+        verify(lease.getClient(), never()).sendMessage(anyString());
+
+        SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 250);
+        connect.onComplete();
+
+        verify(listener).onConnected(250);
+        observer.assertValue("reply").assertComplete();
+    }
+
+    @Test
+    public void willReportZeroBindTimeForConnectedClient() {
+        ChannelClientPool.ConnectionListener listener = mock(ChannelClientPool.ConnectionListener.class);
+
+        pool.sendMessage(COMPONENT, "one", true, listener).test().assertValue("reply");
+
+        verify(listener).onConnected(0);
+        verify(createdClients.get(0), never()).connect();
+    }
+}
@@ -5,29 +5,79 @@ import android.content.ComponentName;
 import android.content.Intent;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
 import android.os.Messenger;
 import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.aevi.android.rxmessenger.ChannelClient;
+import com.aevi.print.model.BatchPrintJob;
+import com.aevi.print.model.ImageRefRow;
+import com.aevi.print.model.ImageRegistration;
+import com.aevi.print.model.ImageRow;
+import com.aevi.print.model.ImageStore;
+import com.aevi.print.model.PreparedPrintPayload;
+import com.aevi.print.model.PrintAction;
+import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PrintPayload;
+import com.aevi.print.model.PrintRow;
+import com.aevi.print.model.PrinterMessages;
+import com.aevi.print.model.PaperKind;
+import com.aevi.print.model.PrinterSettings;
+import com.aevi.print.model.PrinterSettingsList;
+import com.aevi.print.model.TestPrinterSettingsBuilder;
+import com.aevi.print.model.WireFormat;
+import com.aevi.print.model.PrinterStatus;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.Shadows;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowLooper;
 import org.robolectric.shadows.ShadowPackageManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Consumer;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 @Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
@@ -36,6 +86,10 @@ public class PrintManagerImplTest {
 
     private static final String PRINT_SERVICE_PACKAGE = "com.aevi.print.service";
     private static final String PRINT_MESSENGER_SERVICE_CLASS = "com.aevi.print.service.PrinterMessagingService";
+    private static final String PRINT_SETTINGS_SERVICE_CLASS = "com.aevi.print.service.PrinterSettingsService";
+    private static final ComponentName PRINT_MESSENGER_SERVICE_COMPONENT = new ComponentName(PRINT_SERVICE_PACKAGE, PRINT_MESSENGER_SERVICE_CLASS);
+    private static final ComponentName PRINTER_ACTION_SERVICE_COMPONENT =
+            new ComponentName(PRINT_SERVICE_PACKAGE, "com.aevi.print.service.PrinterActionService");
 
     private PrinterManager printerManager;
 
@@ -60,14 +114,697 @@ public class PrintManagerImplTest {
         assertThat(printerManager.isPrinterServiceAvailable()).isFalse();
     }
 
+    @Test
+    public void checkAvailabilityReportsEachComponent() throws RemoteException {
+        setupMockBoundMessengerService();
+        addResolveInfo(PRINT_SETTINGS_SERVICE_CLASS);
+        setupProcessingService();
+
+        PrinterServiceAvailability availability = printerManager.getPrinterServiceAvailability();
+
+        assertThat(availability.isMessagingServiceAvailable()).isTrue();
+        assertThat(availability.isSettingsServiceAvailable()).isTrue();
+        assertThat(availability.isStatusServiceAvailable()).isFalse();
+        assertThat(availability.isActionServiceAvailable()).isFalse();
+        assertThat(availability.isFullyAvailable()).isFalse();
+    }
+
+    @Test
+    public void managersShareOnePackageReceiver() throws RemoteException {
+        setupProcessingService();
+        new PrinterManagerImpl(RuntimeEnvironment.application).isPrinterServiceAvailable();
+        printerManager.isPrinterServiceAvailable();
+
+        Intent packageAdded = new Intent(Intent.ACTION_PACKAGE_ADDED, Uri.parse("package:" + PRINT_SERVICE_PACKAGE));
+        assertThat(ShadowApplication.getInstance().getReceiversForIntent(packageAdded)).hasSize(1);
+    }
+
+    @Test
+    public void checkAvailabilityIsCachedUntilPackageChanges() throws RemoteException {
+        setupProcessingService();
+        assertThat(printerManager.isPrinterServiceAvailable()).isFalse();
+
+        setupMockBoundMessengerService();
+        assertThat(printerManager.isPrinterServiceAvailable()).isFalse();
+
+        Intent packageAdded = new Intent(Intent.ACTION_PACKAGE_ADDED, Uri.parse("package:" + PRINT_SERVICE_PACKAGE));
+        RuntimeEnvironment.application.sendBroadcast(packageAdded);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(printerManager.isPrinterServiceAvailable()).isTrue();
+    }
+
+    @Test
+    public void statusSubscribersShareOneConnection() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+
+        TestObserver<PrinterStatus> first = printerManager.status("printer-1").test();
+        TestObserver<PrinterStatus> second = printerManager.status("printer-1").test();
+
+        assertThat(pool.clients).hasSize(1);
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        first.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY));
+        second.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY));
+    }
+
+    @Test
+    public void statusReplaysLastStatusToNewSubscribers() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        TestObserver<PrinterStatus> first = printerManager.status("printer-1").test();
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.OUT_OF_PAPER).toJson());
+
+        TestObserver<PrinterStatus> late = printerManager.status("printer-1").test();
+
+        late.assertValue(new PrinterStatus(PrinterMessages.OUT_OF_PAPER));
+        first.dispose();
+    }
+
+    @Test
+    public void statusDropsRepeatedStatuses() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        TestObserver<PrinterStatus> observer = printerManager.status("printer-1").test();
+
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.COVER_OPENED).toJson());
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.COVER_OPENED).toJson());
+
+        observer.assertValues(new PrinterStatus(PrinterMessages.PRINTER_READY), new PrinterStatus(PrinterMessages.COVER_OPENED));
+    }
+
+    @Test
+    public void statusClosesConnectionWhenLastSubscriberLeaves() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        TestObserver<PrinterStatus> first = printerManager.status("printer-1").test();
+        TestObserver<PrinterStatus> second = printerManager.status("printer-1").test();
+
+        first.dispose();
+        verify(pool.clients.get(0), never()).closeConnection();
+        second.dispose();
+        verify(pool.clients.get(0)).closeConnection();
+
+        printerManager.status("printer-1").test();
+        assertThat(pool.clients).hasSize(2);
+    }
+
+    @Test
+    public void statusUsesSeparateConnectionPerPrinter() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+
+        printerManager.status("printer-1").test();
+        printerManager.status("printer-2").test();
+
+        assertThat(pool.clients).hasSize(2);
+    }
+
+    @Test
+    public void batchPrintSendsAllPayloadsOverOneConnection() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(new PrintJob(PrintJob.State.PRINTED).toJson());
+
+        TestObserver<BatchPrintJob> observer = printerManager.print(Arrays.asList(new PrintPayload(), new PrintPayload(), new PrintPayload())).test();
+
+        observer.assertComplete().assertValueCount(3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(observer.values().get(i).getIndex()).isEqualTo(i);
+            assertThat(observer.values().get(i).getPrintJob().getPrintJobState()).isEqualTo(PrintJob.State.PRINTED);
+        }
+        assertThat(pool.clients).hasSize(1);
+        verify(pool.clients.get(0), times(3)).sendMessage(anyString());
+        assertThat(pool.getIdleCount(PRINT_MESSENGER_SERVICE_COMPONENT)).isEqualTo(1);
+    }
+
+    @Test
+    public void batchPrintWaitsForEachJobBeforeSendingTheNext() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        PublishProcessor<PrintPayload> payloads = PublishProcessor.create();
+
+        TestObserver<BatchPrintJob> observer = printerManager.print(payloads).test();
+        payloads.onNext(new PrintPayload());
+        payloads.onNext(new PrintPayload());
+
+        verify(pool.clients.get(0), times(1)).sendMessage(anyString());
+        pool.replies.onNext(new PrintJob(PrintJob.State.PRINTED).toJson());
+        PublishSubject<String> firstJob = pool.replies;
+        pool.replies = PublishSubject.create();
+        firstJob.onComplete();
+
+        verify(pool.clients.get(0), times(2)).sendMessage(anyString());
+        observer.assertValueCount(1).assertNotComplete();
+    }
+
+    @Test
+    public void batchPrintClosesConnectionOnError() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.error(new IllegalStateException("service died"));
+
+        printerManager.print(Arrays.asList(new PrintPayload(), new PrintPayload())).test().assertError(IllegalStateException.class);
+
+        verify(pool.clients.get(0)).closeConnection();
+        assertThat(pool.getIdleCount(PRINT_MESSENGER_SERVICE_COMPONENT)).isEqualTo(0);
+    }
+
+    @Test
+    public void printReportsMetricsWhenJobEnds() {
+        PrintMetricsRegistry registry = new PrintMetricsRegistry();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withPrintMetricsListener(registry).build());
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Hello");
+
+        printerManager.print(payload).test();
+        SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 100);
+        pool.replies.onNext(new PrintJob(PrintJob.State.IN_PROGRESS).toJson());
+        SystemClock.setCurrentTimeMillis(SystemClock.elapsedRealtime() + 400);
+        pool.replies.onNext(new PrintJob(PrintJob.State.FAILED, PrinterMessages.OUT_OF_PAPER).toJson());
+        assertThat(registry.getSummary("printer-1").getJobCount()).isEqualTo(0);
+        pool.replies.onComplete();
+
+        PrintMetricsRegistry.Summary summary = registry.getSummary("printer-1");
+        assertThat(summary.getJobCount()).isEqualTo(1);
+        assertThat(summary.getFailedCount()).isEqualTo(1);
+        assertThat(summary.getFailedReasons().get(PrinterMessages.OUT_OF_PAPER)).isEqualTo(1);
+        assertThat(summary.getTimeToFirstStateMs().getMax()).isEqualTo(100);
+        assertThat(summary.getTotalTimeMs().getMax()).isEqualTo(500);
+        assertThat(summary.getPayloadBytes().getMax()).isEqualTo(payload.prepare().getByteSize());
+        assertThat(summary.getImageBytes().getMax()).isEqualTo(0);
+    }
+
+    @Test
+    public void printReportsMetricsForEachBatchPayload() {
+        PrintMetricsRegistry registry = new PrintMetricsRegistry();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withPrintMetricsListener(registry).build());
+        pool.replyStream = Observable.just(new PrintJob(PrintJob.State.PRINTED).toJson());
+
+        printerManager.print(Arrays.asList(new PrintPayload(), new PrintPayload("printer-2"))).test().assertComplete();
+
+        assertThat(registry.getPrinterIds()).containsOnly(null, "printer-2");
+        assertThat(registry.getSummary(null).getPrintedCount()).isEqualTo(1);
+        assertThat(registry.getSummary("printer-2").getPrintedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void printReportsStreamErrorAsFailure() {
+        PrintMetricsRegistry registry = new PrintMetricsRegistry();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withPrintMetricsListener(registry).build());
+        pool.replyStream = Observable.error(new IllegalStateException("service died"));
+
+        printerManager.print(new PrintPayload()).test().assertError(IllegalStateException.class);
+
+        assertThat(registry.getSummary(null).getFailedReasons().get(PrinterMessages.ERROR_PRINT_FAILED)).isEqualTo(1);
+    }
+
+    @Test
+    public void printFailsWithTimeoutWhenDeadlineExpires() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrintJob> observer = printerManager.print(new PrintPayload(), 1, TimeUnit.SECONDS).test();
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        pool.replies.onNext(new PrintJob(PrintJob.State.IN_PROGRESS).toJson());
+        scheduler.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+        observer.assertValueCount(1).assertNotComplete();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+
+        observer.assertValueCount(2).assertComplete();
+        assertThat(observer.values().get(1).getPrintJobState()).isEqualTo(PrintJob.State.FAILED);
+        assertThat(observer.values().get(1).getFailedReason()).isEqualTo(PrinterMessages.TIMEOUT);
+        assertThat(pool.replies.hasObservers()).isFalse();
+        verify(pool.clients.get(0)).closeConnection();
+    }
+
+    @Test
+    public void printUsesConfiguredDeadline() {
+        TestScheduler scheduler = new TestScheduler();
+        setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withPrintTimeout(5, TimeUnit.SECONDS).build(), scheduler);
+
+        TestObserver<PrintJob> observer = printerManager.print(new PrintPayload()).test();
+        scheduler.advanceTimeBy(4, TimeUnit.SECONDS);
+        observer.assertNoValues();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        observer.assertValueCount(1).assertComplete();
+        assertThat(observer.values().get(0).getFailedReason()).isEqualTo(PrinterMessages.TIMEOUT);
+    }
+
+    @Test
+    public void batchPrintStopsAfterTimedOutPayload() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withPrintTimeout(1, TimeUnit.SECONDS).build(),
+                                                                scheduler);
+
+        TestObserver<BatchPrintJob> observer = printerManager.print(Arrays.asList(new PrintPayload(), new PrintPayload())).test();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        observer.assertValueCount(1).assertError(PrinterTimeoutException.class);
+        assertThat(observer.values().get(0).getPrintJob().getFailedReason()).isEqualTo(PrinterMessages.TIMEOUT);
+        verify(pool.clients.get(0), times(1)).sendMessage(anyString());
+        verify(pool.clients.get(0)).closeConnection();
+    }
+
+    @Test
+    public void sendActionsReportsTimeoutAndStops() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterStatus> observer =
+                printerManager.sendActions("printer-1", PrinterMessages.ACTION_CUT_PAPER, PrinterMessages.ACTION_OPEN_CASH_DRAWER).test();
+        scheduler.advanceTimeBy(PrinterManagerConfig.DEFAULT_ACTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.TIMEOUT)).assertError(PrinterTimeoutException.class);
+        verify(pool.clients.get(0), times(1)).sendMessage(anyString());
+    }
+
+    @Test
+    public void sendActionsUsesDeadlineOfCall() {
+        TestScheduler scheduler = new TestScheduler();
+        setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterStatus> observer =
+                printerManager.sendActions("printer-1", 100, TimeUnit.MILLISECONDS, PrinterMessages.ACTION_CUT_PAPER).test();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.TIMEOUT)).assertError(PrinterTimeoutException.class);
+        assertThat(((PrinterTimeoutException) observer.errors().get(0)).getTimeoutMs()).isEqualTo(100);
+    }
+
+    @Test
+    public void statusUsesDeadlineOfCallForThisSubscriber() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+        TestObserver<PrinterStatus> other = printerManager.status("printer-1").test();
+
+        TestObserver<PrinterStatus> observer = printerManager.status("printer-1", 100, TimeUnit.MILLISECONDS).test();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.TIMEOUT)).assertComplete();
+        other.assertNoValues().assertNotComplete();
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        other.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY));
+    }
+
+    @Test
+    public void settingsUseDeadlineOfCallAndStillFillCache() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterSettingsList> observer = printerManager.getPrintersSettings(100, TimeUnit.MILLISECONDS).test();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        observer.assertError(PrinterTimeoutException.class);
+        pool.replies.onNext(createSettingsList("printer-1", null, "printer-2", null).toJson());
+        printerManager.getPrintersSettings().test().assertValueCount(1).assertComplete();
+        assertThat(pool.clients).hasSize(1);
+    }
+
+    @Test
+    public void statusReportsTimeoutWhenNoFirstStatus() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterStatus> observer = printerManager.status("printer-1").test();
+        scheduler.advanceTimeBy(PrinterManagerConfig.DEFAULT_STATUS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.TIMEOUT)).assertComplete();
+        verify(pool.clients.get(0)).closeConnection();
+        printerManager.status("printer-1").test();
+        assertThat(pool.clients).hasSize(2);
+    }
+
+    @Test
+    public void statusHasNoDeadlineAfterFirstStatus() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterStatus> observer = printerManager.status("printer-1").test();
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY)).assertNotComplete();
+    }
+
+    @Test
+    public void settingsFailWithTimeoutException() {
+        TestScheduler scheduler = new TestScheduler();
+        setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterSettingsList> observer = printerManager.getPrintersSettings().test();
+        scheduler.advanceTimeBy(PrinterManagerConfig.DEFAULT_SETTINGS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertError(PrinterTimeoutException.class);
+    }
+
+    @Test
+    public void printUsesPreferredWireFormatWhenPrinterSupportsIt() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withWireFormat(WireFormat.BINARY).build());
+        pool.replyStream = Observable.just(createSettingsList("printer-1", "binary", "printer-2", null).toJson());
+        PrintPayload firstPayload = new PrintPayload("printer-1");
+
+        assertThat(printerManager.prepare(firstPayload).getWireFormat()).isEqualTo(WireFormat.JSON);
+
+        assertThat(printerManager.prepare(new PrintPayload("printer-1")).getWireFormat()).isEqualTo(WireFormat.BINARY);
+        assertThat(printerManager.prepare(new PrintPayload("printer-2")).getWireFormat()).isEqualTo(WireFormat.JSON);
+        assertThat(printerManager.prepare(new PrintPayload("printer-3")).getWireFormat()).isEqualTo(WireFormat.JSON);
+    }
+
+    @Test
+    public void printDoesNotFetchSettingsWhenCacheIsDisabled() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder()
+                                                                        .withWireFormat(WireFormat.BINARY)
+                                                                        .withSettingsCacheTtl(0, TimeUnit.MILLISECONDS)
+                                                                        .build());
+
+        assertThat(printerManager.prepare(new PrintPayload("printer-1")).getWireFormat()).isEqualTo(WireFormat.JSON);
+
+        assertThat(pool.clients).isEmpty();
+    }
+
+    @Test
+    public void printSendsBinaryMessage() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withWireFormat(WireFormat.BINARY).build());
+        pool.replyStream = Observable.just(createSettingsList("printer-1", "binary", "printer-2", null).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Hello");
+
+        printerManager.print(payload).test();
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(pool.clients.get(1)).sendMessage(message.capture());
+        assertThat(PrintPayload.fromMessage(message.getValue()).toJson()).isEqualTo(payload.toJson());
+        assertThat(message.getValue()).isNotEqualTo(payload.toJson());
+    }
+
+    @Test
+    public void printUsesJsonByDefault() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(createSettingsList("printer-1", "binary", "printer-2", null).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+
+        assertThat(printerManager.prepare(new PrintPayload("printer-1")).getWireFormat()).isEqualTo(WireFormat.JSON);
+    }
+
+    @Test
+    public void printPutsImagesIntoStoreForPrintersThatSupportIt() throws Exception {
+        ImageStore imageStore = mock(ImageStore.class);
+        when(imageStore.put(any(Bitmap.class))).thenReturn("ref-1");
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withImageStore(imageStore).build());
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_IMAGE_STORE, "true");
+        PrinterSettings imageStorePrinter = new TestPrinterSettingsBuilder("printer-1", 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+        pool.replyStream = Observable.just(new PrinterSettingsList(new PrinterSettings[]{imageStorePrinter, createSettings("printer-2", null)}).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        pool.replyStream = Observable.just(new PrintJob(PrintJob.State.PRINTED).toJson());
+        Bitmap image = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append(image);
+
+        printerManager.print(payload).test().assertComplete();
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(pool.clients.get(1)).sendMessage(message.capture());
+        assertThat(((ImageRow) PrintPayload.fromMessage(message.getValue()).getRows()[0]).getImageRef()).isEqualTo("ref-1");
+        verify(imageStore).release("ref-1");
+
+        PrintPayload otherPayload = new PrintPayload("printer-2");
+        otherPayload.append(image);
+        assertThat(printerManager.prepare(otherPayload).getStoredImageCount()).isEqualTo(0);
+        verify(imageStore, times(1)).put(any(Bitmap.class));
+    }
+
+    @Test
+    public void batchPrintReleasesImagesOfPayloadsPreparedAheadWhenDisposed() throws Exception {
+        ImageStore imageStore = mock(ImageStore.class);
+        when(imageStore.put(any(Bitmap.class))).thenReturn("ref-1", "ref-2", "ref-3");
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder().withImageStore(imageStore).build());
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_IMAGE_STORE, "true");
+        PrinterSettings imageStorePrinter = new TestPrinterSettingsBuilder("printer-1", 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+        pool.replyStream = Observable.just(new PrinterSettingsList(new PrinterSettings[]{imageStorePrinter}).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        pool.replyStream = null;
+        PublishProcessor<PrintPayload> payloads = PublishProcessor.create();
+
+        TestObserver<BatchPrintJob> observer = printerManager.print(payloads).test();
+        for (int i = 0; i < 3; i++) {
+            PrintPayload payload = new PrintPayload("printer-1");
+            payload.append(Bitmap.createBitmap(10 + i, 10, Bitmap.Config.ARGB_8888));
+            payloads.onNext(payload);
+        }
+        verify(imageStore, times(3)).put(any(Bitmap.class));
+        verify(imageStore, never()).release(anyString());
+        observer.dispose();
+
+        verify(imageStore).release("ref-1");
+        verify(imageStore).release("ref-2");
+        verify(imageStore).release("ref-3");
+    }
+
+    @Test
+    public void registeredImagesAreSentByKeyToPrintersWithImageRegistry() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(new PrinterSettingsList(new PrinterSettings[]{createImageRegistryPrinter("printer-1"),
+                createSettings("printer-2", null)}).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        pool.replyStream = Observable.just(new PrintJob(PrintJob.State.PRINTED).toJson());
+        Bitmap logo = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        printerManager.registerImage("logo", logo).test().assertComplete();
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.appendImageRef("logo");
+        printerManager.print(payload).test().assertComplete();
+
+        List<String> messages = getSentMessages(pool);
+        assertThat(messages).hasSize(3);
+        assertThat(ImageRegistration.fromMessage(messages.get(1)).getImageKey()).isEqualTo("logo");
+        assertThat(((ImageRefRow) PrintPayload.fromMessage(messages.get(2)).getRows()[0]).getImageKey()).isEqualTo("logo");
+
+        PrintPayload otherPayload = new PrintPayload("printer-2");
+        otherPayload.appendImageRef("logo");
+        assertThat(printerManager.prepare(otherPayload).getImageKeys()).isEmpty();
+    }
+
+    @Test
+    public void registeredImagesAreSentInlineWhenServiceDoesNotKnowKey() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(new PrinterSettingsList(new PrinterSettings[]{createImageRegistryPrinter("printer-1")}).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        final Queue<PrintJob> printJobs = new LinkedList<>(Arrays.asList(new PrintJob(PrintJob.State.PRINTED),
+                new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_UNKNOWN_IMAGE, "logo"), new PrintJob(PrintJob.State.PRINTED)));
+        pool.replyStream = Observable.defer(new Callable<ObservableSource<String>>() {
+            @Override
+            public ObservableSource<String> call() throws Exception {
+                return Observable.just(printJobs.remove().toJson());
+            }
+        });
+        printerManager.registerImage("logo", Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)).test().assertComplete();
+        final PrintPayload payload = new PrintPayload("printer-1");
+        payload.appendImageRef("logo");
+        pool.replyStream = pool.replyStream.doOnNext(new Consumer<String>() {
+            @Override
+            public void accept(String reply) throws Exception {
+                // the payload is reused for the next receipt before the print service fails the first one
+                payload.reset();
+                payload.append("Next receipt");
+            }
+        });
+
+        TestObserver<PrintJob> observer = printerManager.print(payload).test();
+
+        observer.assertComplete().assertValueCount(1);
+        assertThat(observer.values().get(0).getPrintJobState()).isEqualTo(PrintJob.State.PRINTED);
+        List<String> messages = getSentMessages(pool);
+        assertThat(messages).hasSize(4);
+        assertThat(PrintPayload.fromMessage(messages.get(2)).getRows()[0]).isInstanceOf(ImageRefRow.class);
+        PrintRow[] inlineRows = PrintPayload.fromMessage(messages.get(3)).getRows();
+        assertThat(inlineRows).hasSize(1);
+        assertThat(inlineRows[0]).isInstanceOf(ImageRow.class);
+        PrintPayload logoPayload = new PrintPayload("printer-1");
+        logoPayload.appendImageRef("logo");
+        assertThat(printerManager.prepare(logoPayload).getImageKeys()).isEmpty();
+    }
+
+    @Test
+    public void registerImageDoesNotUploadWithoutImageRegistry() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(createSettingsList("printer-1", null, "printer-2", null).toJson());
+
+        printerManager.registerImage("logo", Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)).test().assertComplete();
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.appendImageRef("logo");
+
+        assertThat(pool.clients).hasSize(1);
+        PreparedPrintPayload preparedPayload = printerManager.prepare(payload);
+        assertThat(preparedPayload.getImageKeys()).isEmpty();
+        assertThat(preparedPayload.getImageRowCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void printCompressesLargePayloadsForPrintersThatSupportIt() {
+        PrintMetricsRegistry registry = new PrintMetricsRegistry();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(new PrinterManagerConfig.Builder()
+                                                                        .withCompressionThreshold(1024)
+                                                                        .withPrintMetricsListener(registry)
+                                                                        .build());
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_COMPRESSION, "true");
+        PrinterSettings compressionPrinter = new TestPrinterSettingsBuilder("printer-1", 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+        pool.replyStream = Observable.just(new PrinterSettingsList(new PrinterSettings[]{compressionPrinter, createSettings("printer-2", null)}).toJson());
+        printerManager.getPrintersSettings().test().assertComplete();
+        pool.replyStream = Observable.just(new PrintJob(PrintJob.State.PRINTED).toJson());
+        PrintPayload payload = new PrintPayload("printer-1");
+        for (int i = 0; i < 200; i++) {
+            payload.appendLeftRight(48, "Item " + i, "1.00");
+        }
+
+        printerManager.print(payload).test().assertComplete();
+
+        List<String> messages = getSentMessages(pool);
+        assertThat(PrintPayload.fromMessage(messages.get(1)).toJson()).isEqualTo(payload.toJson());
+        PrintMetricsRegistry.Summary summary = registry.getSummary("printer-1");
+        assertThat(summary.getUncompressedPayloadBytes().getMax()).isEqualTo(payload.prepare().getByteSize());
+        assertThat(summary.getPayloadBytes().getMax()).isEqualTo(messages.get(1).length());
+        assertThat(summary.getPayloadBytes().getMax()).isLessThan(summary.getUncompressedPayloadBytes().getMax());
+
+        PrintPayload otherPayload = new PrintPayload("printer-2");
+        otherPayload.append(payload);
+        assertThat(printerManager.prepare(otherPayload).isCompressed()).isFalse();
+    }
+
+    private static List<String> getSentMessages(FakeChannelClientPool pool) {
+        List<String> messages = new ArrayList<>();
+        for (ChannelClient client : pool.clients) {
+            ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+            verify(client, atLeast(0)).sendMessage(message.capture());
+            messages.addAll(message.getAllValues());
+        }
+        return messages;
+    }
+
+    private static PrinterSettings createImageRegistryPrinter(String printerId) {
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_IMAGE_REGISTRY, "true");
+        return new TestPrinterSettingsBuilder(printerId, 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+    }
+
+    private static PrinterSettingsList createSettingsList(String firstPrinterId, String firstWireFormats, String secondPrinterId,
+                                                          String secondWireFormats) {
+        return new PrinterSettingsList(new PrinterSettings[]{createSettings(firstPrinterId, firstWireFormats),
+                createSettings(secondPrinterId, secondWireFormats)});
+    }
+
+    private static PrinterSettings createSettings(String printerId, String wireFormats) {
+        Map<String, String> options = new HashMap<>();
+        if (wireFormats != null) {
+            options.put(PrinterSettings.OPTION_WIRE_FORMATS, wireFormats);
+        }
+        return new TestPrinterSettingsBuilder(printerId, 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+    }
+
+    @Test
+    public void sendActionsSendsAllActionsInOrderOverOneConnection() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+        pool.replyStream = Observable.just(new PrinterStatus(PrinterMessages.DRAWER_OPENED).toJson());
+
+        TestObserver<PrinterStatus> observer =
+                printerManager.sendActions("printer-1", PrinterMessages.ACTION_CUT_PAPER, PrinterMessages.ACTION_OPEN_CASH_DRAWER).test();
+
+        observer.assertComplete().assertValueCount(2);
+        assertThat(observer.values().get(1).getStatus()).isEqualTo(PrinterMessages.DRAWER_OPENED);
+        assertThat(pool.clients).hasSize(1);
+        InOrder inOrder = inOrder(pool.clients.get(0));
+        inOrder.verify(pool.clients.get(0)).sendMessage(new PrintAction("printer-1", PrinterMessages.ACTION_CUT_PAPER).toJson());
+        inOrder.verify(pool.clients.get(0)).sendMessage(new PrintAction("printer-1", PrinterMessages.ACTION_OPEN_CASH_DRAWER).toJson());
+        assertThat(pool.getIdleCount(PRINTER_ACTION_SERVICE_COMPONENT)).isEqualTo(1);
+    }
+
+    @Test
+    public void sendActionsWaitsForConversationToCompleteBeforeNextAction() {
+        FakeChannelClientPool pool = setupFakeChannelClientPool();
+
+        TestObserver<PrinterStatus> observer =
+                printerManager.sendActions("printer-1", PrinterMessages.ACTION_CUT_PAPER, PrinterMessages.ACTION_OPEN_CASH_DRAWER).test();
+        PublishSubject<String> firstReplies = pool.replies;
+        pool.replies = PublishSubject.create();
+        firstReplies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        firstReplies.onNext(new PrinterStatus(PrinterMessages.OUT_OF_PAPER).toJson());
+
+        verify(pool.clients.get(0), times(1)).sendMessage(anyString());
+        observer.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY)).assertNotComplete();
+        firstReplies.onComplete();
+        verify(pool.clients.get(0), times(2)).sendMessage(anyString());
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.DRAWER_OPENED).toJson());
+        pool.replies.onComplete();
+        observer.assertValues(new PrinterStatus(PrinterMessages.PRINTER_READY), new PrinterStatus(PrinterMessages.DRAWER_OPENED))
+                .assertComplete();
+        assertThat(pool.getIdleCount(PRINTER_ACTION_SERVICE_COMPONENT)).isEqualTo(1);
+    }
+
+    @Test
+    public void sendActionsClosesConnectionWhenConversationDoesNotComplete() {
+        TestScheduler scheduler = new TestScheduler();
+        FakeChannelClientPool pool = setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig(), scheduler);
+
+        TestObserver<PrinterStatus> observer =
+                printerManager.sendActions("printer-1", PrinterMessages.ACTION_CUT_PAPER, PrinterMessages.ACTION_OPEN_CASH_DRAWER).test();
+        pool.replies.onNext(new PrinterStatus(PrinterMessages.PRINTER_READY).toJson());
+        scheduler.advanceTimeBy(PrinterManagerConfig.DEFAULT_ACTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertValue(new PrinterStatus(PrinterMessages.PRINTER_READY)).assertError(PrinterTimeoutException.class);
+        verify(pool.clients.get(0), times(1)).sendMessage(anyString());
+        verify(pool.clients.get(0)).closeConnection();
+        assertThat(pool.getIdleCount(PRINTER_ACTION_SERVICE_COMPONENT)).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sendActionsRequiresActions() {
+        setupFakeChannelClientPool();
+
+        printerManager.sendActions("printer-1");
+    }
+
+    private FakeChannelClientPool setupFakeChannelClientPool() {
+        return setupFakeChannelClientPool(PrinterManagerConfig.defaultConfig());
+    }
+
+    private FakeChannelClientPool setupFakeChannelClientPool(PrinterManagerConfig config) {
+        FakeChannelClientPool pool = new FakeChannelClientPool();
+        printerManager = new PrinterManagerImpl(RuntimeEnvironment.application, config, pool);
+        return pool;
+    }
+
+    private FakeChannelClientPool setupFakeChannelClientPool(PrinterManagerConfig config, TestScheduler scheduler) {
+        FakeChannelClientPool pool = new FakeChannelClientPool();
+        printerManager = new PrinterManagerImpl(RuntimeEnvironment.application, config, pool, scheduler);
+        return pool;
+    }
+
     private void setupMockBoundMessengerService() {
         ShadowApplication shadowApplication = ShadowApplication.getInstance();
         MockMessageService mockMessageService = new MockMessageService();
 
         shadowApplication.setComponentNameAndServiceForBindService(new ComponentName(PRINT_SERVICE_PACKAGE, PRINT_MESSENGER_SERVICE_CLASS), mockMessageService.onBind(null));
 
+        addResolveInfo(PRINT_MESSENGER_SERVICE_CLASS);
+    }
+
+    private void addResolveInfo(String serviceClass) {
         Intent intent = new Intent();
-        intent.setComponent(new ComponentName(PRINT_SERVICE_PACKAGE, PRINT_MESSENGER_SERVICE_CLASS));
+        intent.setComponent(new ComponentName(PRINT_SERVICE_PACKAGE, serviceClass));
 
         ShadowPackageManager shadowPackageManager = Shadows.shadowOf(RuntimeEnvironment.application.getPackageManager());
         ResolveInfo resolveInfo = new ResolveInfo();
@@ -79,6 +816,31 @@ public class PrintManagerImplTest {
         printerManager = new PrinterManagerImpl(RuntimeEnvironment.application);
     }
 
+    private static class FakeChannelClientPool extends ChannelClientPool {
+
+        final List<ChannelClient> clients = new ArrayList<>();
+        PublishSubject<String> replies = PublishSubject.create();
+        Observable<String> replyStream;
+
+        FakeChannelClientPool() {
+            super(RuntimeEnvironment.application, 1000, new TestScheduler());
+        }
+
+        @Override
+        ChannelClient createChannelClient(ComponentName componentName) {
+            ChannelClient client = mock(ChannelClient.class);
+            when(client.isConnected()).thenReturn(true);
+            when(client.sendMessage(anyString())).thenAnswer(new Answer<Observable<String>>() {
+                @Override
+                public Observable<String> answer(InvocationOnMock invocation) throws Throwable {
+                    return replyStream != null ? replyStream : replies;
+                }
+            });
+            clients.add(client);
+            return client;
+        }
+    }
+
     private class MockMessageService extends Service {
 
         List<Message> messages = new ArrayList<>();
@@ -0,0 +1,82 @@
+package com.aevi.print;
+
+import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PrinterMessages;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class PrintMetricsRegistryTest {
+
+    private PrintMetricsRegistry registry;
+
+    @Before
+    public void setup() {
+        registry = new PrintMetricsRegistry();
+    }
+
+    @Test
+    public void willAggregatePerPrinter() {
+        registry.onPrintMetrics(metrics("printer-1", 1000, 200, PrintJob.State.PRINTED, null));
+        registry.onPrintMetrics(metrics("printer-1", 3000, 800, PrintJob.State.FAILED, PrinterMessages.OUT_OF_PAPER));
+        registry.onPrintMetrics(metrics(null, 500, 100, PrintJob.State.PRINTED, null));
+
+        PrintMetricsRegistry.Summary summary = registry.getSummary("printer-1");
+        assertThat(summary.getJobCount()).isEqualTo(2);
+        assertThat(summary.getPrintedCount()).isEqualTo(1);
+        assertThat(summary.getFailedCount()).isEqualTo(1);
+        assertThat(summary.getFailedReasons()).containsEntry(PrinterMessages.OUT_OF_PAPER, 1);
+        assertThat(summary.getPayloadBytes().getMin()).isEqualTo(1000);
+        assertThat(summary.getPayloadBytes().getMax()).isEqualTo(3000);
+        assertThat(summary.getTotalTimeMs().getMean()).isEqualTo(500);
+        assertThat(registry.getSummary("").getJobCount()).isEqualTo(1);
+        assertThat(registry.getPrinterIds()).containsOnly("printer-1", null);
+    }
+
+    @Test
+    public void willNotCountDisposedJobsAsPrintedOrFailed() {
+        registry.onPrintMetrics(metrics("printer-1", 1000, 200, null, null));
+
+        PrintMetricsRegistry.Summary summary = registry.getSummary("printer-1");
+        assertThat(summary.getJobCount()).isEqualTo(1);
+        assertThat(summary.getPrintedCount()).isEqualTo(0);
+        assertThat(summary.getFailedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void summaryIsSnapshot() {
+        registry.onPrintMetrics(metrics("printer-1", 1000, 200, PrintJob.State.PRINTED, null));
+        PrintMetricsRegistry.Summary summary = registry.getSummary("printer-1");
+
+        registry.onPrintMetrics(metrics("printer-1", 1000, 200, PrintJob.State.PRINTED, null));
+
+        assertThat(summary.getJobCount()).isEqualTo(1);
+        assertThat(summary.getTotalTimeMs().getCount()).isEqualTo(1);
+        registry.reset();
+        assertThat(registry.getSummary("printer-1").getJobCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void histogramReportsPercentileBuckets() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMin()).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getMean()).isEqualTo(50);
+        assertThat(histogram.getPercentile(50)).isEqualTo(63);
+        assertThat(histogram.getPercentile(100)).isEqualTo(100);
+        assertThat(histogram.getPercentile(0)).isEqualTo(1);
+        assertThat(new Histogram().getPercentile(50)).isEqualTo(0);
+    }
+
+    private static PrintMetrics metrics(String printerId, int payloadBytes, long totalTimeMs, PrintJob.State state, String failedReason) {
+        return new PrintMetrics(printerId, 10, payloadBytes, payloadBytes, 0, 1, 0, totalTimeMs / 2, totalTimeMs, state, failedReason);
+    }
+}
@@ -129,7 +129,7 @@ public class PrintPreviewTest {
         PrintPreview printPreview = setupValidPrintPreview(false);
 
         assertThat(printPreview.defaultFont).isNotNull();
-        assertThat(printPreview.defaultFont).isEqualTo(PrintPreview.UNKNOWN_FONT);
+        assertThat(printPreview.defaultFont).isEqualTo(PrinterSettings.UNKNOWN_FONT);
     }
 
     @Test
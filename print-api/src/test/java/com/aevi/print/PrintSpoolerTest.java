@@ -0,0 +1,181 @@
+package com.aevi.print;
+
+import android.os.Build;
+
+import com.aevi.print.model.PreparedPrintPayload;
+import com.aevi.print.model.PrintJob;
+import com.aevi.print.model.PrintPayload;
+import com.aevi.print.model.PrinterMessages;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PrintSpoolerTest {
+
+    private final List<PublishSubject<PrintJob>> printCalls = new ArrayList<>();
+    private TestScheduler scheduler;
+    private PrinterManager printerManager;
+    private PrintSpooler printSpooler;
+
+    @Before
+    public void setup() {
+        printerManager = mock(PrinterManager.class);
+        when(printerManager.print(any(PreparedPrintPayload.class))).thenAnswer(new Answer<Observable<PrintJob>>() {
+            @Override
+            public Observable<PrintJob> answer(InvocationOnMock invocation) throws Throwable {
+                PublishSubject<PrintJob> subject = PublishSubject.create();
+                printCalls.add(subject);
+                return subject;
+            }
+        });
+        when(printerManager.prepare(any(PrintPayload.class))).thenAnswer(new Answer<PreparedPrintPayload>() {
+            @Override
+            public PreparedPrintPayload answer(InvocationOnMock invocation) throws Throwable {
+                return ((PrintPayload) invocation.getArguments()[0]).prepare();
+            }
+        });
+        scheduler = new TestScheduler();
+        printSpooler = new PrintSpooler(printerManager, 2, 100, scheduler);
+    }
+
+    @Test
+    public void willSendOneJobAtATimePerPrinter() {
+        TestObserver<PrintJob> first = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        TestObserver<PrintJob> second = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        assertThat(printCalls).hasSize(1);
+        assertThat(printSpooler.getQueueDepth("printer-1")).isEqualTo(1);
+
+        printCalls.get(0).onNext(new PrintJob(PrintJob.State.IN_PROGRESS));
+        assertThat(printCalls).hasSize(1);
+
+        printCalls.get(0).onNext(new PrintJob(PrintJob.State.PRINTED));
+        first.assertValueCount(2).assertComplete();
+        assertThat(printCalls).hasSize(2);
+        assertThat(printSpooler.getQueueDepth("printer-1")).isEqualTo(0);
+
+        printCalls.get(1).onNext(new PrintJob(PrintJob.State.FAILED, PrinterMessages.OUT_OF_PAPER));
+        second.assertValueCount(1).assertComplete();
+    }
+
+    @Test
+    public void willSendToDifferentPrintersConcurrently() {
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        printSpooler.enqueue(new PrintPayload("printer-2")).test();
+        printSpooler.enqueue(new PrintPayload()).test();
+
+        assertThat(printCalls).hasSize(3);
+    }
+
+    @Test
+    public void willRetryBusyJobWithBackoff() {
+        TestObserver<PrintJob> observer = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        printCalls.get(0).onNext(new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_BUSY));
+        observer.assertNoValues();
+        assertThat(printCalls).hasSize(1);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertThat(printCalls).hasSize(2);
+
+        printCalls.get(1).onNext(new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_BUSY));
+        scheduler.advanceTimeBy(199, TimeUnit.MILLISECONDS);
+        assertThat(printCalls).hasSize(2);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(printCalls).hasSize(3);
+
+        printCalls.get(2).onNext(new PrintJob(PrintJob.State.PRINTED));
+        observer.assertValueCount(1).assertComplete();
+        assertThat(printSpooler.getStatistics("printer-1").getBusyRetries()).isEqualTo(2);
+        assertThat(printCalls).hasSize(4);
+    }
+
+    @Test
+    public void willGiveUpAfterMaxBusyRetries() {
+        TestObserver<PrintJob> observer = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        for (int i = 0; i < 3; i++) {
+            printCalls.get(i).onNext(new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_BUSY));
+            scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        }
+
+        observer.assertValueCount(1).assertComplete();
+        assertThat(observer.values().get(0).getFailedReason()).isEqualTo(PrinterMessages.ERROR_BUSY);
+        assertThat(printCalls).hasSize(3);
+    }
+
+    @Test
+    public void willRemoveQueuedJobWhenDisposed() {
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        TestObserver<PrintJob> second = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        second.dispose();
+
+        assertThat(printSpooler.getQueueDepth("printer-1")).isEqualTo(0);
+        printCalls.get(0).onNext(new PrintJob(PrintJob.State.PRINTED));
+        assertThat(printCalls).hasSize(1);
+    }
+
+    @Test
+    public void willPrepareEachSubscriptionOnSubscribe() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        Observable<PrintJob> printJobs = printSpooler.enqueue(payload);
+        verify(printerManager, never()).prepare(any(PrintPayload.class));
+
+        printJobs.test();
+        printJobs.test();
+
+        verify(printerManager, times(2)).prepare(payload);
+        assertThat(printSpooler.getQueueDepth("printer-1")).isEqualTo(1);
+    }
+
+    @Test
+    public void willDispatchNextJobWhenActiveJobErrors() {
+        TestObserver<PrintJob> first = printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        printCalls.get(0).onError(new IllegalStateException("service died"));
+
+        first.assertError(IllegalStateException.class);
+        assertThat(printCalls).hasSize(2);
+    }
+
+    @Test
+    public void willReportWaitTimes() {
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+        printSpooler.enqueue(new PrintPayload("printer-1")).test();
+
+        scheduler.advanceTimeBy(400, TimeUnit.MILLISECONDS);
+        printCalls.get(0).onNext(new PrintJob(PrintJob.State.PRINTED));
+
+        PrintSpooler.Statistics statistics = printSpooler.getStatistics("printer-1");
+        assertThat(statistics.getDispatchedCount()).isEqualTo(2);
+        assertThat(statistics.getMaxWaitMs()).isEqualTo(400);
+        assertThat(statistics.getAverageWaitMs()).isEqualTo(200);
+    }
+}
@@ -0,0 +1,29 @@
+package com.aevi.print;
+
+import android.app.Activity;
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PrinterApiTest {
+
+    @Test
+    public void defaultManagerIsSharedByTheApplication() {
+        Activity activity = Robolectric.setupActivity(Activity.class);
+
+        PrinterManager printerManager = PrinterApi.getPrinterManager(RuntimeEnvironment.application);
+
+        assertThat(PrinterApi.getPrinterManager(activity)).isSameAs(printerManager);
+        assertThat(PrinterApi.getPrinterManager(RuntimeEnvironment.application, PrinterManagerConfig.defaultConfig()))
+                .isNotSameAs(printerManager);
+    }
+}
@@ -0,0 +1,150 @@
+package com.aevi.print;
+
+import android.os.Build;
+
+import com.aevi.print.model.PaperKind;
+import com.aevi.print.model.PrinterSettings;
+import com.aevi.print.model.PrinterSettingsList;
+import com.aevi.print.model.TestPrinterSettingsBuilder;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PrinterSettingsCacheTest {
+
+    private TestScheduler scheduler;
+    private PublishSubject<PrinterSettingsList> service;
+    private int fetchCount;
+    private PrinterSettingsCache cache;
+
+    @Before
+    public void setup() {
+        scheduler = new TestScheduler();
+        service = PublishSubject.create();
+        fetchCount = 0;
+        cache = new PrinterSettingsCache(1000, scheduler, new PrinterSettingsCache.Fetcher() {
+            @Override
+            public Observable<PrinterSettingsList> fetch(PrinterSettingsRequest request) {
+                fetchCount++;
+                return service;
+            }
+        });
+    }
+
+    @Test
+    public void willCoalesceConcurrentFetches() {
+        TestObserver<PrinterSettingsList> first = cache.get(PrinterSettingsRequest.createAllRequest()).test();
+        TestObserver<PrinterSettingsList> second = cache.get(PrinterSettingsRequest.createAllRequest()).test();
+
+        PrinterSettingsList settingsList = createSettingsList("printer-1");
+        service.onNext(settingsList);
+
+        first.assertValue(settingsList);
+        second.assertValue(settingsList);
+        assertThat(fetchCount).isEqualTo(1);
+    }
+
+    @Test
+    public void willServeFreshEntryFromCache() {
+        PrinterSettingsList settingsList = populate("printer-1");
+
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValue(settingsList);
+
+        assertThat(fetchCount).isEqualTo(1);
+    }
+
+    @Test
+    public void willServeStaleEntryAndRefreshInBackground() {
+        PrinterSettingsList stale = populate("printer-1");
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValue(stale);
+        assertThat(fetchCount).isEqualTo(2);
+
+        PrinterSettingsList fresh = createSettingsList("printer-2");
+        service.onNext(fresh);
+
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValue(fresh);
+        assertThat(fetchCount).isEqualTo(2);
+    }
+
+    @Test
+    public void willKeepStaleEntryIfRefreshFails() {
+        PrinterSettingsList stale = populate("printer-1");
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+
+        PublishSubject<PrinterSettingsList> failing = service;
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValue(stale);
+        failing.onError(new IllegalStateException("service gone"));
+
+        service = PublishSubject.create();
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValue(stale);
+    }
+
+    @Test
+    public void willCacheRequestTypesSeparately() {
+        populate("printer-1");
+
+        cache.get(PrinterSettingsRequest.createDefaultRequest()).test().assertNoValues();
+
+        assertThat(fetchCount).isEqualTo(2);
+    }
+
+    @Test
+    public void willFetchAgainAfterInvalidation() {
+        populate("printer-1");
+
+        cache.invalidate();
+        TestObserver<PrinterSettingsList> observer = cache.get(PrinterSettingsRequest.createAllRequest()).test();
+
+        observer.assertNoValues();
+        assertThat(fetchCount).isEqualTo(2);
+    }
+
+    @Test
+    public void willNotCacheWhenTtlIsZero() {
+        cache = new PrinterSettingsCache(0, scheduler, new PrinterSettingsCache.Fetcher() {
+            @Override
+            public Observable<PrinterSettingsList> fetch(PrinterSettingsRequest request) {
+                fetchCount++;
+                return Observable.just(createSettingsList("printer-1"));
+            }
+        });
+
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValueCount(1);
+        cache.get(PrinterSettingsRequest.createAllRequest()).test().assertValueCount(1);
+
+        assertThat(fetchCount).isEqualTo(2);
+    }
+
+    private PrinterSettingsList populate(String printerId) {
+        TestObserver<PrinterSettingsList> observer = cache.get(PrinterSettingsRequest.createAllRequest()).test();
+        PrinterSettingsList settingsList = createSettingsList(printerId);
+        service.onNext(settingsList);
+        observer.assertValue(settingsList);
+        service = PublishSubject.create();
+        return settingsList;
+    }
+
+    private static PrinterSettingsList createSettingsList(String printerId) {
+        PrinterSettings printerSettings = new TestPrinterSettingsBuilder(printerId, 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .build();
+        return new PrinterSettingsList(new PrinterSettings[]{printerSettings});
+    }
+}
@@ -0,0 +1,159 @@
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Base64;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class BinaryPayloadCodecTest {
+
+    @Test
+    public void canRoundTripTextRows() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.setCodePage(850);
+        payload.setLanguage("fr");
+        payload.append("Prix: 12,50 \u20ac \ud83d\ude00").align(Alignment.RIGHT).underline(Underline.DOUBLE).fontStyle(FontStyle.INVERTED_EMPHASIZED);
+        payload.append("Total", new PrinterFont(300, "Large", 24, 48, false, 24, 48, null));
+
+        PrintPayload decoded = PrintPayload.fromMessage(payload.prepare(WireFormat.BINARY).getMessage());
+
+        assertThat(decoded.toJson()).isEqualTo(payload.toJson());
+    }
+
+    @Test
+    public void canRoundTripDefaults() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Hello");
+
+        PreparedPrintPayload prepared = payload.prepare(WireFormat.BINARY);
+        PrintPayload decoded = PrintPayload.fromMessage(prepared.getMessage());
+
+        assertThat(prepared.getWireFormat()).isEqualTo(WireFormat.BINARY);
+        assertThat(decoded.getPrinterId()).isNull();
+        assertThat(decoded.getLanguage()).isNull();
+        assertThat(decoded.toJson()).isEqualTo(payload.toJson());
+    }
+
+    @Test
+    public void canRoundTripImageRows() {
+        PrintPayload payload = new PrintPayload();
+        payload.append(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888), false).align(Alignment.CENTER);
+        payload.append("After image");
+
+        PreparedPrintPayload prepared = payload.prepare(WireFormat.BINARY);
+        PrintRow[] rows = PrintPayload.fromMessage(prepared.getMessage()).getRows();
+
+        assertThat(rows).hasSize(2);
+        ImageRow imageRow = (ImageRow) rows[0];
+        assertThat(imageRow.getAlignmentStyle()).isEqualTo(Alignment.CENTER);
+        assertThat(imageRow.isScaleToFit()).isFalse();
+        assertThat(imageRow.getImage()).isNotNull();
+        assertThat(((TextRow) rows[1]).getText()).isEqualTo("After image");
+        assertThat(prepared.getImageRowCount()).isEqualTo(1);
+        assertThat(prepared.getImageByteSize()).isGreaterThan(0).isLessThan(prepared.getByteSize());
+    }
+
+    @Test
+    public void canRoundTripImageRefRows() {
+        PrintPayload payload = new PrintPayload();
+        payload.appendImageRef("logo", false).align(Alignment.CENTER);
+        payload.appendImageRef("logo");
+
+        PrintRow[] rows = PrintPayload.fromMessage(payload.prepare(WireFormat.BINARY).getMessage()).getRows();
+
+        assertThat(rows).hasSize(2);
+        ImageRefRow imageRefRow = (ImageRefRow) rows[0];
+        assertThat(imageRefRow.getImageKey()).isEqualTo("logo");
+        assertThat(imageRefRow.getAlignmentStyle()).isEqualTo(Alignment.CENTER);
+        assertThat(imageRefRow.isScaleToFit()).isFalse();
+        assertThat(((ImageRefRow) rows[1]).isScaleToFit()).isTrue();
+    }
+
+    @Test
+    public void writesRepeatedImagesOnce() {
+        PrintPayload single = new PrintPayload();
+        single.append(Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+        PrintPayload repeated = new PrintPayload();
+        for (int i = 0; i < 3; i++) {
+            repeated.append(Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+        }
+
+        PreparedPrintPayload singlePrepared = single.prepare(WireFormat.BINARY);
+        PreparedPrintPayload repeatedPrepared = repeated.prepare(WireFormat.BINARY);
+        PrintRow[] decodedRows = PrintPayload.fromMessage(repeatedPrepared.getMessage()).getRows();
+
+        assertThat(repeatedPrepared.getImageByteSize()).isEqualTo(singlePrepared.getImageByteSize());
+        assertThat(repeatedPrepared.getByteSize()).isLessThanOrEqualTo(singlePrepared.getByteSize() + 8);
+        assertThat(decodedRows).hasSize(3);
+        assertThat(((ImageRow) decodedRows[2]).getImage()).isSameAs(((ImageRow) decodedRows[0]).getImage());
+    }
+
+    @Test
+    public void isMuchSmallerThanJsonForTextReports() {
+        PrintPayload payload = new PrintPayload();
+        for (int i = 0; i < 300; i++) {
+            payload.appendLeftRight(32, "Item " + i, "12.50");
+        }
+
+        int jsonSize = payload.prepare().getByteSize();
+        int binarySize = payload.prepare(WireFormat.BINARY).getByteSize();
+
+        assertThat(binarySize * 3).isLessThan(jsonSize);
+    }
+
+    @Test
+    public void fromMessageAcceptsJson() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Hello");
+
+        assertThat(PrintPayload.fromMessage(payload.toJson()).toJson()).isEqualTo(payload.toJson());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void binaryPayloadHasNoJson() {
+        new PrintPayload().prepare(WireFormat.BINARY).toJson();
+    }
+
+    @Test
+    public void rejectsMalformedMessages() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Hello");
+        byte[] valid = Base64.decode(payload.prepare(WireFormat.BINARY).getMessage().substring(BinaryPayloadCodec.MESSAGE_PREFIX.length()),
+                                     Base64.NO_WRAP);
+        byte[] truncated = new byte[valid.length - 3];
+        System.arraycopy(valid, 0, truncated, 0, truncated.length);
+
+        assertMalformed(truncated);
+        // an image table of Integer.MAX_VALUE entries
+        assertMalformed(new byte[]{1, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        // a text row with alignment 3
+        assertMalformed(new byte[]{1, 0, 0, 0, 1, 0, 3, 0});
+        // an image row referring to image 5 of an empty image table
+        assertMalformed(new byte[]{1, 0, 0, 0, 1, 1, 0, 5});
+        // a string longer than the message
+        assertMalformed(new byte[]{1, 0, 1, 100, 'a'});
+        assertMalformedMessage(BinaryPayloadCodec.MESSAGE_PREFIX + "not base 64!");
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        assertMalformedMessage(BinaryPayloadCodec.MESSAGE_PREFIX + Base64.encodeToString(bytes, Base64.NO_WRAP));
+    }
+
+    private static void assertMalformedMessage(String message) {
+        try {
+            PrintPayload.fromMessage(message);
+            fail("Decoded malformed message " + message);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).startsWith("Malformed binary payload");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class FileImageStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private FileImageStore imageStore;
+
+    @Before
+    public void setup() {
+        directory = new File(temporaryFolder.getRoot(), "images");
+        imageStore = new FileImageStore(directory);
+    }
+
+    @Test
+    public void canPutGetAndReleaseImage() throws IOException {
+        String imageRef = imageStore.put(createImage());
+
+        File file = new File(Uri.parse(imageRef).getPath());
+        assertThat(file.getParentFile()).isEqualTo(directory);
+        assertThat(file.isFile()).isTrue();
+        assertThat(imageStore.get(imageRef)).isNotNull();
+
+        imageStore.release(imageRef);
+        assertThat(file.exists()).isFalse();
+    }
+
+    @Test(expected = IOException.class)
+    public void willNotReadFilesOutsideDirectory() throws IOException {
+        File other = temporaryFolder.newFile("image-other.png");
+
+        imageStore.get(Uri.fromFile(other).toString());
+    }
+
+    @Test
+    public void willNotReleaseFilesOutsideDirectory() throws IOException {
+        File other = temporaryFolder.newFile("image-other.png");
+
+        imageStore.release(Uri.fromFile(other).toString());
+
+        assertThat(other.exists()).isTrue();
+    }
+
+    @Test
+    public void canSendImagesOutOfBandInJson() throws IOException {
+        checkOutOfBandImages(WireFormat.JSON);
+    }
+
+    @Test
+    public void canSendImagesOutOfBandInBinary() throws IOException {
+        checkOutOfBandImages(WireFormat.BINARY);
+    }
+
+    @Test
+    public void storesEachDistinctImageOnce() throws IOException {
+        PrintPayload payload = new PrintPayload();
+        payload.append(createImage());
+        payload.append("Thank you");
+        payload.append(createImage());
+
+        PreparedPrintPayload prepared = payload.prepare(WireFormat.BINARY, imageStore);
+        PrintRow[] rows = PrintPayload.fromMessage(prepared.getMessage()).getRows();
+
+        assertThat(prepared.getStoredImageCount()).isEqualTo(1);
+        assertThat(directory.list()).hasSize(1);
+        assertThat(((ImageRow) rows[2]).getImageRef()).isEqualTo(((ImageRow) rows[0]).getImageRef());
+    }
+
+    private void checkOutOfBandImages(WireFormat wireFormat) throws IOException {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Logo");
+        payload.append(createImage(), false).align(Alignment.RIGHT);
+
+        PreparedPrintPayload prepared = payload.prepare(wireFormat, imageStore);
+        PrintPayload received = PrintPayload.fromMessage(prepared.getMessage());
+
+        assertThat(prepared.getStoredImageCount()).isEqualTo(1);
+        ImageRow imageRefRow = (ImageRow) received.getRows()[1];
+        assertThat(imageRefRow.getImage()).isNull();
+        assertThat(imageRefRow.getImageRef()).startsWith("file:");
+
+        received.resolveImages(imageStore);
+
+        ImageRow imageRow = (ImageRow) received.getRows()[1];
+        assertThat(imageRow.getImage()).isNotNull();
+        assertThat(imageRow.getImageRef()).isNull();
+        assertThat(imageRow.isScaleToFit()).isFalse();
+        assertThat(imageRow.getAlignmentStyle()).isEqualTo(Alignment.RIGHT);
+
+        prepared.releaseImages();
+        assertThat(directory.list()).isEmpty();
+    }
+
+    private static Bitmap createImage() {
+        return Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+    }
+}
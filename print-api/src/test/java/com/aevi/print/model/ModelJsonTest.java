@@ -0,0 +1,162 @@
+package com.aevi.print.model;
+
+import android.os.Build;
+
+import com.aevi.util.json.JsonConverter;
+import com.aevi.util.json.JsonOption;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ModelJsonTest {
+
+    @Test
+    public void writesSameJsonAsReflection() {
+        PrintJob printJob = new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_PRINT_FAILED, "<jammed> & \"stuck\"");
+        PrinterStatus printerStatus = new PrinterStatus(PrinterMessages.PRINTER_READY);
+        PrintAction printAction = new PrintAction("printer-1", PrinterMessages.ACTION_CUT_PAPER);
+        TextRow textRow = new TextRow("Total \u20ac 12,50", 3).align(Alignment.RIGHT).underline(Underline.DOUBLE).fontStyle(FontStyle.INVERTED);
+        PrinterSettingsList settingsList = new PrinterSettingsList(new PrinterSettings[]{createSettings(), createMinimalSettings()});
+
+        assertThat(printJob.toJson()).isEqualTo(JsonConverter.serialize(printJob));
+        assertThat(new PrintJob(PrintJob.State.PRINTED).toJson()).isEqualTo(JsonConverter.serialize(new PrintJob(PrintJob.State.PRINTED)));
+        assertThat(printerStatus.toJson()).isEqualTo(JsonConverter.serialize(printerStatus));
+        assertThat(printAction.toJson()).isEqualTo(JsonConverter.serialize(printAction));
+        assertThat(textRow.toJson()).isEqualTo(JsonConverter.serialize(textRow));
+        assertThat(settingsList.toJson()).isEqualTo(JsonConverter.serialize(settingsList));
+    }
+
+    @Test
+    public void writesSamePayloadJsonAsReflection() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Hello <b>").align(Alignment.CENTER);
+        payload.appendEmptyLine();
+        payload.setLanguage("en");
+
+        assertThat(payload.toJson()).isEqualTo(JsonConverter.serialize(new ReflectivePayload(payload)));
+    }
+
+    @Test
+    public void readsReflectiveJson() {
+        PrintJob printJob = PrintJob.fromJson(JsonConverter.serialize(new PrintJob(PrintJob.State.FAILED, PrinterMessages.ERROR_BUSY, "busy")));
+        TextRow textRow = TextRow.fromJson(JsonConverter.serialize(new TextRow("Hi", 2).underline(Underline.SINGLE)));
+        PrinterSettingsList settingsList =
+                PrinterSettingsList.fromJson(JsonConverter.serialize(new PrinterSettingsList(new PrinterSettings[]{createSettings()})));
+
+        assertThat(printJob.getPrintJobState()).isEqualTo(PrintJob.State.FAILED);
+        assertThat(printJob.getFailedReason()).isEqualTo(PrinterMessages.ERROR_BUSY);
+        assertThat(printJob.getDiagnosticMessage()).isEqualTo("busy");
+        assertThat(textRow.getText()).isEqualTo("Hi");
+        assertThat(textRow.getPrinterFontId()).isEqualTo(2);
+        assertThat(textRow.getUnderlineStyle()).isEqualTo(Underline.SINGLE);
+        PrinterSettings settings = settingsList.getPrinterSettings()[0];
+        assertThat(settings.toJson()).isEqualTo(createSettings().toJson());
+        assertThat(settings.getDisplayName()).isEqualTo("Front desk");
+        assertThat(settings.getPaperDotsPerMm()).isEqualTo(7.68f);
+        assertThat(settings.getPrinterFonts()[0].getSupportedFontStyles()).containsExactly(FontStyle.NORMAL, FontStyle.EMPHASIZED);
+        assertThat(settings.getOptions()).containsEntry(PrinterSettings.OPTION_DEFAULT, "true");
+    }
+
+    @Test
+    public void readsEnumOrdinals() {
+        PrintJob printJob = PrintJob.fromJson("{\"printJobState\":1}");
+        TextRow textRow = TextRow.fromJson("{\"text\":\"Hi\",\"underline\":2,\"fontStyle\":3,\"alignment\":2}");
+
+        assertThat(printJob.getPrintJobState()).isEqualTo(PrintJob.State.PRINTED);
+        assertThat(textRow.getUnderlineStyle()).isEqualTo(Underline.DOUBLE);
+        assertThat(textRow.getFontStyle()).isEqualTo(FontStyle.INVERTED_EMPHASIZED);
+        assertThat(textRow.getAlignmentStyle()).isEqualTo(Alignment.CENTER);
+    }
+
+    @Test
+    public void skipsUnknownFieldsAndNulls() {
+        PrinterStatus printerStatus = PrinterStatus.fromJson("{\"extra\":{\"a\":[1,2]},\"status\":\"ready\",\"more\":null}");
+        TextRow textRow = TextRow.fromJson("{\"text\":\"Hi\",\"alignment\":null,\"future\":true}");
+
+        assertThat(printerStatus.getStatus()).isEqualTo("ready");
+        assertThat(textRow.getAlignmentStyle()).isEqualTo(Alignment.LEFT);
+        assertThat(textRow.getPrinterFontId()).isEqualTo(PrinterFont.DEFAULT_FONT);
+    }
+
+    @Test
+    public void readsUnknownEnumValuesAsNull() {
+        PrinterSettings settings = PrinterSettings.fromJson("{\"printerId\":\"printer-1\",\"paperKind\":\"LABEL\",\"printerFonts\":"
+                                                                    + "[{\"id\":1,\"supportedFontStyles\":[\"NORMAL\",\"BLINKING\"]}]}");
+
+        assertThat(settings.getPrinterId()).isEqualTo("printer-1");
+        assertThat(settings.getPaperKind()).isNull();
+        assertThat(settings.getPrinterFonts()[0].getSupportedFontStyles()).containsExactly(FontStyle.NORMAL, null);
+    }
+
+    @Test
+    public void skipsUnreadableSettingsInList() {
+        PrinterSettingsList settingsList = PrinterSettingsList.fromJson("{\"printerSettings\":["
+                                                                                + "{\"paperKind\":\"THERMAL\"},"
+                                                                                + "{\"printerId\":\"printer-2\",\"paperKind\":\"THERMAL\"},"
+                                                                                + "{\"printerId\":\"printer-3\"},"
+                                                                                + "{\"printerId\":\"printer-4\",\"paperKind\":\"LABEL\"}]}");
+
+        PrinterSettings[] printerSettings = settingsList.getPrinterSettings();
+        assertThat(printerSettings).hasSize(2);
+        assertThat(printerSettings[0].getPrinterId()).isEqualTo("printer-2");
+        assertThat(printerSettings[1].getPrinterId()).isEqualTo("printer-4");
+        assertThat(printerSettings[1].getPaperKind()).isNull();
+    }
+
+    private static PrinterSettings createSettings() {
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_DEFAULT, "true");
+        PrinterFont font = new TestPrinterFontBuilder()
+                .withId(1)
+                .withName("Font A")
+                .withSupportedFontStyles(new FontStyle[]{FontStyle.NORMAL, FontStyle.EMPHASIZED})
+                .build();
+        PrinterSettings settings = new TestPrinterSettingsBuilder("printer-1", 80, 72, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withPrinterFonts(new PrinterFont[]{font})
+                .withCodePages(new int[]{437, 850})
+                .withDoesSupportCodepages(true)
+                .withCommands(new String[]{PrinterMessages.ACTION_CUT_PAPER})
+                .withCanHandleCommands(true)
+                .withOptions(options)
+                .withSupportedLanguages(new String[]{"en", "fr"})
+                .build();
+        settings.setDisplayName("Front desk");
+        return settings;
+    }
+
+    private static PrinterSettings createMinimalSettings() {
+        return new TestPrinterSettingsBuilder("printer-2", 58, 48, 8f).withPaperKind(PaperKind.STANDARD).build();
+    }
+
+    /**
+     * The fields of a payload as they used to be stored, with each row wrapped in a {@link JsonOption}.
+     */
+    private static final class ReflectivePayload {
+
+        private final List<JsonOption> rows = new ArrayList<>();
+        private final int codePage;
+        private final String printerId;
+        private final String languageCode;
+
+        ReflectivePayload(PrintPayload payload) {
+            for (PrintRow row : payload.getRowView()) {
+                rows.add(new JsonOption(row));
+            }
+            this.codePage = payload.getCodePage();
+            this.printerId = payload.getPrinterId();
+            this.languageCode = payload.getLanguage();
+        }
+    }
+}
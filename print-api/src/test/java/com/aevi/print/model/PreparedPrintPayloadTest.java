@@ -0,0 +1,111 @@
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.aevi.util.json.JsonConverter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PreparedPrintPayloadTest {
+
+    @Test
+    public void willSerializeSnapshotOfPayload() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Hello");
+        String expected = payload.toJson();
+
+        PreparedPrintPayload prepared = payload.prepare();
+        payload.append("World");
+
+        assertThat(prepared.toJson()).isEqualTo(expected);
+        assertThat(prepared.getRowCount()).isEqualTo(1);
+        assertThat(prepared.getPrinterId()).isEqualTo("printer-1");
+        assertThat(prepared.hasPrinterId()).isTrue();
+    }
+
+    @Test
+    public void willReportSummary() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Hello");
+        payload.append(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+
+        PreparedPrintPayload prepared = payload.prepare();
+
+        assertThat(prepared.getRowCount()).isEqualTo(2);
+        assertThat(prepared.getImageRowCount()).isEqualTo(1);
+        assertThat(prepared.hasPrinterId()).isFalse();
+        assertThat(prepared.toString()).isEqualTo("rows=2,images=1,bytes=" + prepared.getByteSize());
+    }
+
+    @Test
+    public void willCompressLargePayloads() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        for (int i = 0; i < 200; i++) {
+            payload.appendLeftRight(48, "Item " + i, "1.00");
+        }
+        PreparedPrintPayload prepared = payload.prepare();
+
+        PreparedPrintPayload compressed = prepared.compress(1024);
+
+        assertThat(compressed.isCompressed()).isTrue();
+        assertThat(compressed.getUncompressedByteSize()).isEqualTo(prepared.getByteSize());
+        assertThat(compressed.getByteSize()).isLessThan(prepared.getByteSize() / 4);
+        assertThat(compressed.getRowCount()).isEqualTo(200);
+        assertThat(PrintPayload.fromMessage(compressed.getMessage()).toJson()).isEqualTo(prepared.toJson());
+        assertThat(prepared.compress(prepared.getByteSize())).isSameAs(prepared);
+        assertThat(compressed.compress(0)).isSameAs(compressed);
+    }
+
+    @Test
+    public void willKeepSourceOfPayloadWithImageKeys() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.appendImageRef("logo");
+        for (int i = 0; i < 200; i++) {
+            payload.appendLeftRight(48, "Item " + i, "1.00");
+        }
+        PrintPayload frozen = payload.freeze();
+
+        PreparedPrintPayload prepared = frozen.prepare();
+
+        assertThat(prepared.getImageKeySource()).isSameAs(frozen);
+        assertThat(prepared.compress(1024).getImageKeySource()).isSameAs(frozen);
+        assertThat(new PrintPayload("printer-1").prepare().getImageKeySource()).isNull();
+
+        PreparedPrintPayload preparedLive = payload.prepare();
+        payload.reset();
+        assertThat(preparedLive.getImageKeySource()).isEqualTo(frozen);
+    }
+
+    @Test
+    public void willCountUtf8Bytes() throws Exception {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Prix: 12,50 \u20ac \u00e9t\u00e9 \ud83d\ude00");
+
+        PreparedPrintPayload prepared = payload.prepare();
+
+        assertThat(prepared.getByteSize()).isEqualTo(prepared.toJson().getBytes("UTF-8").length);
+    }
+
+    @Test
+    public void willSerializeLikePayloadAndCountImageBytes() throws Exception {
+        PrintPayload payload = new PrintPayload("printer \"1\"");
+        payload.append("Hello");
+        payload.append(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        payload.setCodePage(850);
+        payload.setLanguage("fr");
+
+        PreparedPrintPayload prepared = payload.prepare();
+
+        assertThat(prepared.toJson()).isEqualTo(payload.toJson());
+        Bitmap image = ((ImageRow) payload.getRows()[1]).getImage();
+        assertThat(prepared.getImageByteSize()).isEqualTo(JsonConverter.serialize(image).getBytes("UTF-8").length);
+    }
+}
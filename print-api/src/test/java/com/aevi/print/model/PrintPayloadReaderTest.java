@@ -0,0 +1,115 @@
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PrintPayloadReaderTest {
+
+    @Test
+    public void writeJsonMatchesToJson() throws IOException {
+        PrintPayload payload = createPayload();
+
+        StringWriter writer = new StringWriter();
+        payload.writeJson(writer);
+
+        assertThat(writer.toString()).isEqualTo(payload.toJson());
+    }
+
+    @Test
+    public void canReadRowsOneAtATime() throws IOException {
+        PrintPayload payload = createPayload();
+        PrintPayloadReader reader = new PrintPayloadReader(new StringReader(payload.toJson()));
+
+        assertThat(reader.hasNextRow()).isTrue();
+        TextRow first = (TextRow) reader.nextRow();
+        assertThat(first.getText()).isEqualTo("<a=b> \u00e9t\u00e9");
+        assertThat(first.getAlignmentStyle()).isEqualTo(Alignment.CENTER);
+        assertThat(first.getUnderlineStyle()).isEqualTo(Underline.SINGLE);
+        assertThat(first.getFontStyle()).isEqualTo(FontStyle.EMPHASIZED);
+        assertThat(reader.nextRow()).isInstanceOf(ImageRow.class);
+        assertThat(reader.hasNextRow()).isFalse();
+        assertThat(reader.getCodePage()).isEqualTo(437);
+        assertThat(reader.getPrinterId()).isEqualTo("printer-1");
+        assertThat(reader.getLanguage()).isEqualTo("fr");
+    }
+
+    @Test
+    public void canReadWholePayload() throws IOException {
+        PrintPayload payload = createPayload();
+
+        PrintPayload read = new PrintPayloadReader(new StringReader(payload.toJson())).readPayload();
+
+        assertThat(read.toJson()).isEqualTo(payload.toJson());
+    }
+
+    @Test
+    public void canReadFirstRowBeforeRestHasArrived() throws IOException {
+        PrintPayload payload = new PrintPayload();
+        payload.append("First");
+        payload.append("Second");
+        String json = payload.toJson();
+        String partial = json.substring(0, json.lastIndexOf("{\"value\""));
+
+        PrintPayloadReader reader = new PrintPayloadReader(new StringReader(partial));
+
+        assertThat(((TextRow) reader.nextRow()).getText()).isEqualTo("First");
+        try {
+            reader.hasNextRow();
+            throw new AssertionError("Expected end of input");
+        } catch (EOFException e) {
+            // expected, the second row has not arrived
+        }
+    }
+
+    @Test
+    public void willSkipUnknownFields() throws IOException {
+        String json = "{\"version\":2,\"rows\":[{\"value\":{\"text\":\"Hi\",\"extra\":[1]},\"type\":\"com.aevi.print.model.TextRow\"}],"
+                + "\"codePage\":-1,\"future\":{\"a\":1}}";
+
+        PrintPayload read = new PrintPayloadReader(new StringReader(json)).readPayload();
+
+        assertThat(read.getRows()).hasSize(1);
+        assertThat(((TextRow) read.getRows()[0]).getText()).isEqualTo("Hi");
+        assertThat(((TextRow) read.getRows()[0]).getAlignmentStyle()).isEqualTo(Alignment.LEFT);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void fromJsonFailsWithParseExceptionForRowThatIsNotAnObject() {
+        PrintPayload.fromJson("{\"rows\":[5]}");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void fromJsonFailsWithParseExceptionForMalformedNumber() {
+        PrintPayload.fromJson("{\"rows\":[],\"codePage\":\"abc\"}");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fieldsAreOnlyAvailableAfterRows() throws IOException {
+        new PrintPayloadReader(new StringReader(createPayload().toJson())).getCodePage();
+    }
+
+    private static PrintPayload createPayload() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("<a=b> \u00e9t\u00e9").align(Alignment.CENTER).underline(Underline.SINGLE).fontStyle(FontStyle.EMPHASIZED);
+        payload.append(Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888));
+        payload.setCodePage(437);
+        payload.setLanguage("fr");
+        return payload;
+    }
+}
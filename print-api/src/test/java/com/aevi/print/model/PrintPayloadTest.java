@@ -8,6 +8,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.Collections;
+
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
 @Config(sdk = Build.VERSION_CODES.LOLLIPOP)
@@ -39,6 +41,40 @@ public class PrintPayloadTest {
         assertThat(row.getText()).isEqualTo("==============================");
     }
 
+    @Test
+    public void canAppendWrappedText() {
+        PrintPayload payload = new PrintPayload();
+        PrinterFont font = new TestPrinterFontBuilder().withId(3).withNumColumns(10).build();
+
+        int rows = payload.appendWrapped("Please keep your receipt", font);
+
+        assertThat(rows).isEqualTo(3);
+        assertThat(((TextRow) payload.getRowView().get(0)).getText()).isEqualTo("Please ");
+        assertThat(((TextRow) payload.getRowView().get(1)).getText()).isEqualTo("keep your ");
+        assertThat(((TextRow) payload.getRowView().get(2)).getText()).isEqualTo("receipt");
+        assertThat(((TextRow) payload.getRowView().get(2)).getPrinterFontId()).isEqualTo(3);
+    }
+
+    @Test
+    public void canEstimatePrintCost() throws Exception {
+        PrinterFont font = new TestPrinterFontBuilder().withId(1).withIsDefault(true).withNumColumns(10).withLineHeight(20).build();
+        PrinterSettings settings = new TestPrinterSettingsBuilder("printer-1", 58, 48, 8f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withPrinterFonts(new PrinterFont[]{font})
+                .build();
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append("Total \u20ac 5");
+        payload.append("Thank you for visiting");
+        payload.append(getBitmap());
+        payload.append(Bitmap.createBitmap(768, 400, Bitmap.Config.ARGB_8888));
+
+        PrintEstimate estimate = payload.estimate(settings);
+
+        assertThat(estimate.getByteSize()).isEqualTo(payload.toJson().getBytes("UTF-8").length);
+        assertThat(estimate.getHeight()).isEqualTo(20 * 4 + 100 + 16 + 200 + 16 + 16);
+        assertThat(estimate.getPaperLength()).isEqualTo(estimate.getHeight() / 8f);
+    }
+
     @Test
     public void canAddText() {
         PrintPayload payload = new PrintPayload();
@@ -74,6 +110,215 @@ public class PrintPayloadTest {
         assertThat(imageRow.isScaleToFit()).isTrue();
     }
 
+    @Test
+    public void rowViewReadsRowsWithoutCopying() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Header");
+        payload.append(getBitmap());
+        PrintRows rows = payload.getRowView();
+        payload.append("Footer");
+
+        assertThat(rows).isSameAs(payload.getRowView());
+        assertThat(rows.size()).isEqualTo(3);
+        assertThat(((TextRow) rows.get(2)).getText()).isEqualTo("Footer");
+        assertThat(rows).containsExactly(payload.getRows());
+        assertThat(rows.ofType(ImageRow.class)).containsExactly((ImageRow) payload.getRows()[1]);
+        assertThat(rows.ofType(TextRow.class)).hasSize(2);
+    }
+
+    @Test
+    public void canAppendPayloadToItself() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Line");
+
+        payload.append(payload);
+
+        assertThat(payload.getRowView().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void appendingFrozenPayloadLinksItsRows() {
+        PrintPayload header = new PrintPayload();
+        header.append("Shop").align(Alignment.CENTER);
+        header.append("High Street");
+        PrintPayload frozenHeader = header.freeze();
+        header.append("Not in the snapshot");
+
+        PrintPayload receipt = new PrintPayload("printer-1");
+        receipt.append(frozenHeader);
+        receipt.append("Total 12.50");
+        receipt.append(frozenHeader);
+        PrintPayload copied = new PrintPayload("printer-1");
+        copied.append("Shop").align(Alignment.CENTER);
+        copied.append("High Street");
+        copied.append("Total 12.50");
+        copied.append("Shop").align(Alignment.CENTER);
+        copied.append("High Street");
+
+        assertThat(frozenHeader.isFrozen()).isTrue();
+        assertThat(frozenHeader.freeze()).isSameAs(frozenHeader);
+        assertThat(frozenHeader.getRowView().size()).isEqualTo(2);
+        assertThat(receipt.getRowView().get(3)).isSameAs(frozenHeader.getRowView().get(0));
+        assertThat(receipt.toJson()).isEqualTo(copied.toJson());
+        assertThat(PrintPayload.fromJson(receipt.toJson()).getRows()).hasSize(5);
+    }
+
+    @Test
+    public void changingRowsAfterFreezingDoesNotChangeSnapshot() {
+        PrintPayload header = new PrintPayload();
+        TextRow shop = header.append("Shop");
+        PrintPayload frozenHeader = header.freeze();
+        PrintPayload receipt = new PrintPayload();
+        receipt.setTextRowPool(new TextRowPool(4));
+        TextRow total = receipt.append("Total 12.50");
+        receipt.append(frozenHeader);
+        PrintPayload frozenReceipt = receipt.freeze();
+        String json = frozenReceipt.toJson();
+        int hash = frozenReceipt.hashCode();
+
+        shop.align(Alignment.CENTER);
+        receipt.reset();
+        assertThat(receipt.append("Total 99.00")).isSameAs(total);
+
+        assertThat(frozenReceipt.hashCode()).isEqualTo(hash);
+        assertThat(frozenReceipt.toJson()).isEqualTo(json);
+        assertThat(((TextRow) frozenReceipt.getRowView().get(0)).getText()).isEqualTo("Total 12.50");
+        assertThat(((TextRow) frozenHeader.getRowView().get(0)).getAlignmentStyle()).isEqualTo(Alignment.LEFT);
+        assertThat(frozenReceipt.getRowView().get(1)).isSameAs(frozenHeader.getRowView().get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void frozenPayloadCanNotBeChanged() {
+        PrintPayload payload = new PrintPayload();
+        payload.append("Header");
+
+        payload.freeze().append("More");
+    }
+
+    @Test
+    public void resetPayloadReusesPooledRows() {
+        TextRowPool pool = new TextRowPool(4);
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.setTextRowPool(pool);
+        TextRow first = payload.append("Ticket 1").align(Alignment.RIGHT);
+        payload.append(getBitmap());
+
+        payload.reset();
+        TextRow second = payload.append("Ticket 2");
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getText()).isEqualTo("Ticket 2");
+        assertThat(second.getAlignmentStyle()).isEqualTo(Alignment.LEFT);
+        assertThat(payload.getRowView().size()).isEqualTo(1);
+        assertThat(payload.getPrinterId()).isEqualTo("printer-1");
+        assertThat(pool.getFreeCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void resetWillNotRecycleFrozenRows() {
+        TextRowPool pool = new TextRowPool(4);
+        PrintPayload payload = new PrintPayload();
+        payload.setTextRowPool(pool);
+        payload.append("Header");
+        PrintPayload header = payload.freeze();
+
+        payload.reset();
+        payload.append("Ticket");
+
+        assertThat(pool.getFreeCount()).isEqualTo(0);
+        assertThat(((TextRow) header.getRowView().get(0)).getText()).isEqualTo("Header");
+        assertThat(payload.getRowView().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void frozenPayloadsWithSameContentAreEqual() {
+        Bitmap stamp = getBitmap();
+        stamp.setPixel(1, 1, 0xff000000);
+        PrintPayload first = createReceipt(getBitmap()).freeze();
+        PrintPayload second = createReceipt(getBitmap()).freeze();
+        PrintPayload stamped = createReceipt(stamp).freeze();
+        PrintPayload notFrozen = createReceipt(getBitmap());
+
+        assertThat(second).isEqualTo(first);
+        assertThat(second.hashCode()).isEqualTo(first.hashCode());
+        assertThat(stamped).isNotEqualTo(first);
+        assertThat(notFrozen).isNotEqualTo(first);
+        assertThat(first).isNotEqualTo(notFrozen);
+    }
+
+    @Test
+    public void frozenPayloadIsSerializedOnce() {
+        PrintPayload frozen = createReceipt(getBitmap()).freeze();
+
+        assertThat(frozen.toJson()).isSameAs(frozen.toJson());
+        assertThat(frozen.toJson()).isEqualTo(createReceipt(getBitmap()).toJson());
+        assertThat(frozen.prepare()).isSameAs(frozen.prepare());
+        assertThat(frozen.prepare(WireFormat.BINARY)).isNotSameAs(frozen.prepare());
+    }
+
+    @Test
+    public void withImagesReplacesKnownImageRefs() {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.setCodePage(850);
+        payload.appendImageRef("logo").align(Alignment.RIGHT);
+        payload.appendImageRef("stamp");
+        Bitmap logo = getBitmap();
+
+        PrintPayload withImages = payload.withImages(Collections.singletonMap("logo", logo));
+
+        assertThat(withImages.getPrinterId()).isEqualTo("printer-1");
+        assertThat(withImages.getCodePage()).isEqualTo(850);
+        ImageRow imageRow = (ImageRow) withImages.getRows()[0];
+        assertThat(imageRow.getImage()).isSameAs(logo);
+        assertThat(imageRow.getAlignmentStyle()).isEqualTo(Alignment.RIGHT);
+        assertThat(((ImageRefRow) withImages.getRows()[1]).getImageKey()).isEqualTo("stamp");
+        assertThat(payload.getRows()[0]).isInstanceOf(ImageRefRow.class);
+        assertThat(payload.withImages(Collections.<String, Bitmap>emptyMap())).isSameAs(payload);
+    }
+
+    @Test
+    public void willStoreEqualImagesOnce() {
+        PrintPayload payload = new PrintPayload();
+        Bitmap logo = getBitmap();
+        Bitmap logoCopy = getBitmap();
+        Bitmap stamp = getBitmap();
+        stamp.setPixel(1, 1, 0xff000000);
+
+        payload.append(logo);
+        payload.append(logoCopy).align(Alignment.RIGHT);
+        payload.append(stamp);
+        PrintPayload receipt = new PrintPayload();
+        receipt.append(getBitmap());
+        receipt.append(payload);
+
+        assertThat(((ImageRow) payload.getRows()[1]).getImage()).isSameAs(logo);
+        assertThat(((ImageRow) payload.getRows()[1]).getAlignmentStyle()).isEqualTo(Alignment.RIGHT);
+        assertThat(((ImageRow) payload.getRows()[2]).getImage()).isSameAs(stamp);
+        Bitmap receiptLogo = ((ImageRow) receipt.getRows()[0]).getImage();
+        assertThat(((ImageRow) receipt.getRows()[1]).getImage()).isSameAs(receiptLogo);
+        assertThat(((ImageRow) receipt.getRows()[2]).getImage()).isSameAs(receiptLogo);
+        assertThat(((ImageRow) receipt.getRows()[2]).getAlignmentStyle()).isEqualTo(Alignment.RIGHT);
+        assertThat(((ImageRow) receipt.getRows()[3]).getImage()).isNotSameAs(receiptLogo);
+    }
+
+    @Test
+    public void willCompareImagesRowByRow() {
+        PrintPayload payload = new PrintPayload();
+        Bitmap logo = getBitmap();
+        Bitmap logoCopy = getBitmap();
+        Bitmap footer = getBitmap();
+        footer.setPixel(99, 99, 0xff000000);
+
+        payload.append(logo);
+        payload.append(logoCopy);
+        payload.append(logoCopy);
+        payload.append(footer);
+
+        assertThat(((ImageRow) payload.getRows()[1]).getImage()).isSameAs(logo);
+        assertThat(((ImageRow) payload.getRows()[2]).getImage()).isSameAs(logo);
+        assertThat(((ImageRow) payload.getRows()[3]).getImage()).isSameAs(footer);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void appendNullWillThrow() {
         PrintPayload payload = new PrintPayload();
@@ -152,6 +397,14 @@ public class PrintPayloadTest {
         assertThat(textRow.getPrinterFontId()).isEqualTo(56);
     }
 
+    private PrintPayload createReceipt(Bitmap logo) {
+        PrintPayload payload = new PrintPayload("printer-1");
+        payload.append(logo).align(Alignment.CENTER);
+        payload.append("Receipt").fontStyle(FontStyle.EMPHASIZED);
+        payload.appendLeftRight(20, "Total", "4.50");
+        return payload;
+    }
+
     private Bitmap getBitmap() {
         Bitmap.Config conf = Bitmap.Config.ARGB_8888;
         return Bitmap.createBitmap(100, 100, conf);
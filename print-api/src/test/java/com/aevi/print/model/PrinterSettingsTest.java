@@ -7,6 +7,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
 @Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest=Config.NONE)
@@ -29,4 +32,35 @@ public class PrinterSettingsTest {
         assertThat(printerSettings.getDisplayName()).isEqualTo("display-name");
         assertThat(printerSettings.getPrinterId()).isEqualTo("printer-id");
     }
+
+    @Test
+    public void checkSupportedWireFormats() {
+        Map<String, String> options = new HashMap<>();
+        options.put(PrinterSettings.OPTION_WIRE_FORMATS, "foo, binary");
+        PrinterSettings printerSettings = new TestPrinterSettingsBuilder("printer-id", 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withOptions(options)
+                .build();
+
+        assertThat(printerSettings.supportsWireFormat(WireFormat.BINARY)).isTrue();
+        assertThat(printerSettings.supportsWireFormat(WireFormat.JSON)).isTrue();
+        assertThat(getPrinterSettings().supportsWireFormat(WireFormat.BINARY)).isFalse();
+        assertThat(getPrinterSettings().supportsWireFormat(WireFormat.JSON)).isTrue();
+    }
+
+    @Test
+    public void checkFontLookup() {
+        PrinterFont fontA = new TestPrinterFontBuilder().withId(1).build();
+        PrinterFont fontB = new TestPrinterFontBuilder().withId(2).withIsDefault(true).build();
+        PrinterSettings printerSettings = new TestPrinterSettingsBuilder("printer-id", 80, 75, 7.68f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withPrinterFonts(new PrinterFont[]{fontA, fontB})
+                .build();
+
+        assertThat(printerSettings.getDefaultFont()).isSameAs(fontB);
+        assertThat(printerSettings.getFont(PrinterFont.DEFAULT_FONT)).isSameAs(fontB);
+        assertThat(printerSettings.getFont(1)).isSameAs(fontA);
+        assertThat(printerSettings.getFont(3)).isSameAs(PrinterSettings.UNKNOWN_FONT);
+        assertThat(getPrinterSettings().getDefaultFont()).isSameAs(PrinterSettings.UNKNOWN_FONT);
+    }
 }
@@ -0,0 +1,142 @@
+package com.aevi.print.model;
+
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ReceiptTemplateTest {
+
+    private final TableLayout items = new TableLayout.Builder()
+            .addColumn(3, Alignment.LEFT, TableLayout.Overflow.WRAP)
+            .addColumn(1, Alignment.RIGHT, TableLayout.Overflow.TRUNCATE)
+            .build();
+
+    @Test
+    public void bindsSameRowsAsAppendingThem() {
+        ReceiptTemplate.Compiled compiled = createTemplate().compile(createSettings());
+
+        PrintPayload payload = compiled.bind()
+                .addRow("items", "Flat white", "3.20")
+                .addRow("items", "Almond croissant", "2.80")
+                .set("total", "6.00")
+                .set("reference", "#1234")
+                .toPayload();
+
+        PrintPayload expected = new PrintPayload("printer-1");
+        expected.append("Coffee Shop").align(Alignment.CENTER).fontStyle(FontStyle.EMPHASIZED);
+        expected.appendLineOfChar(24, "-");
+        expected.appendTableRow(items, 24, "Item", "Price");
+        expected.appendTableRow(items, 24, "Flat white", "3.20");
+        expected.appendTableRow(items, 24, "Almond croissant", "2.80");
+        expected.appendLineOfChar(24, "-");
+        expected.appendLeftRight(24, "Total", "6.00");
+        expected.append("#1234").align(Alignment.CENTER);
+        expected.append("Thank you").align(Alignment.CENTER);
+        assertThat(payload.toJson()).isEqualTo(expected.toJson());
+    }
+
+    @Test
+    public void sharesFixedRowsBetweenReceipts() {
+        ReceiptTemplate template = createTemplate();
+        ReceiptTemplate.Compiled compiled = template.compile(createSettings());
+
+        PrintPayload first = compiled.bind().set("total", "1.00").set("reference", "#1").toPayload();
+        PrintPayload second = compiled.bind().set("total", "200.00").set("reference", "#2").toPayload();
+
+        assertThat(template.getFieldNames()).containsExactly("items", "total", "reference");
+        assertThat(second.getRowView().get(0)).isSameAs(first.getRowView().get(0));
+        assertThat(((TextRow) first.getRowView().get(4)).getText()).isEqualTo("Total               1.00");
+        assertThat(((TextRow) second.getRowView().get(4)).getText()).isEqualTo("Total             200.00");
+    }
+
+    @Test
+    public void reusesPayloadAndPooledRows() {
+        ReceiptTemplate.Compiled compiled = new ReceiptTemplate.Builder().text("Coffee Shop").field("reference").build().compile(createSettings());
+        PrintPayload reuse = new PrintPayload();
+        reuse.setTextRowPool(new TextRowPool(4));
+
+        assertThat(compiled.bind().set("reference", "#1").toPayload(reuse)).isSameAs(reuse);
+        PrintRow firstRow = reuse.getRowView().get(1);
+        compiled.bind().set("reference", "#2").toPayload(reuse);
+
+        assertThat(reuse.getPrinterId()).isEqualTo("printer-1");
+        assertThat(reuse.getRowView()).hasSize(2);
+        assertThat(reuse.getRowView().get(1)).isSameAs(firstRow);
+        assertThat(reuse.toJson()).isEqualTo(compiled.bind().set("reference", "#2").toPayload().toJson());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void bindingWithoutFieldValueWillThrow() {
+        ReceiptTemplate.Compiled compiled = createTemplate().compile(createSettings());
+
+        compiled.bind().set("total", "1.00").toPayload();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compilingForPrinterWithoutFontWillThrow() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder().withFont(7).text("Header").build();
+
+        template.compile(createSettings());
+    }
+
+    @Test
+    public void appliesFontStyleToLeftRightAndTableRows() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder()
+                .withFontStyle(FontStyle.INVERTED)
+                .table("items", items)
+                .leftRight("Total", "total")
+                .build();
+
+        PrintPayload payload = template.compile(createSettings()).bind()
+                .addRow("items", "Flat white", "3.20")
+                .set("total", "3.20")
+                .toPayload();
+
+        for (PrintRow row : payload.getRowView()) {
+            assertThat(((TextRow) row).getFontStyle()).isEqualTo(FontStyle.INVERTED);
+        }
+        assertThat(payload.getRowView()).hasSize(2);
+    }
+
+    @Test
+    public void compilesWithUnknownFontForPrinterWithoutFonts() {
+        ReceiptTemplate template = new ReceiptTemplate.Builder().withFont(7).lineOfChar('=').leftRight("Total", "total").build();
+        PrinterSettings settings = new TestPrinterSettingsBuilder("printer-1", 58, 48, 8f)
+                .withPaperKind(PaperKind.THERMAL)
+                .build();
+
+        PrintPayload payload = template.compile(settings).bind().set("total", "1.00").toPayload();
+
+        int columns = PrinterSettings.UNKNOWN_FONT.getNumColumns();
+        assertThat(((TextRow) payload.getRowView().get(0)).getText()).hasSize(columns);
+        assertThat(((TextRow) payload.getRowView().get(1)).getText()).hasSize(columns).endsWith(" 1.00");
+    }
+
+    private ReceiptTemplate createTemplate() {
+        return new ReceiptTemplate.Builder()
+                .withAlignment(Alignment.CENTER).withFontStyle(FontStyle.EMPHASIZED).text("Coffee Shop")
+                .withAlignment(Alignment.LEFT).withFontStyle(FontStyle.NORMAL).lineOfChar('-')
+                .tableRow(items, "Item", "Price")
+                .table("items", items)
+                .lineOfChar('-')
+                .leftRight("Total", "total")
+                .withAlignment(Alignment.CENTER).field("reference")
+                .text("Thank you")
+                .build();
+    }
+
+    private static PrinterSettings createSettings() {
+        PrinterFont font = new TestPrinterFontBuilder().withId(1).withIsDefault(true).withNumColumns(24).build();
+        return new TestPrinterSettingsBuilder("printer-1", 58, 48, 8f)
+                .withPaperKind(PaperKind.THERMAL)
+                .withPrinterFonts(new PrinterFont[]{font})
+                .build();
+    }
+}
@@ -0,0 +1,24 @@
+package com.aevi.print.model;
+
+import android.graphics.Bitmap;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+/**
+ * Robolectric's bitmap shadow only copies all pixels at once, whereas the image table reads images one row at a time.
+ */
+@Implements(Bitmap.class)
+public class ShadowRegionBitmap extends ShadowBitmap {
+
+    @Implementation
+    @Override
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                pixels[offset + row * stride + column] = getPixel(x + column, y + row);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.aevi.print.model;
+
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class TableLayoutTest {
+
+    @Test
+    public void willShareWidthByRatio() {
+        TableLayout tableLayout = new TableLayout.Builder()
+                .addColumn(3, Alignment.LEFT, TableLayout.Overflow.WRAP)
+                .addColumn(1, Alignment.RIGHT, TableLayout.Overflow.TRUNCATE)
+                .build();
+
+        assertThat(tableLayout.getColumnWidth(0, 32)).isEqualTo(24);
+        assertThat(tableLayout.getColumnWidth(1, 32)).isEqualTo(7);
+        assertThat(tableLayout.getColumnWidth(0, 48)).isEqualTo(36);
+        assertThat(tableLayout.getColumnWidth(1, 48)).isEqualTo(11);
+    }
+
+    @Test
+    public void willWrapBetweenWordsAndAlignColumns() {
+        PrinterFont font = new TestPrinterFontBuilder().withId(2).withNumColumns(20).build();
+        TableLayout tableLayout = new TableLayout.Builder()
+                .addColumn(2, Alignment.LEFT, TableLayout.Overflow.WRAP)
+                .addColumn(1, Alignment.RIGHT, TableLayout.Overflow.TRUNCATE)
+                .build();
+        PrintPayload payload = new PrintPayload();
+
+        int lines = payload.appendTableRow(tableLayout, font, "Large flat white with oat milk", "12.50");
+
+        assertThat(lines).isEqualTo(3);
+        assertThat(((TextRow) payload.getRowView().get(0)).getText()).isEqualTo("Large flat     12.50");
+        assertThat(((TextRow) payload.getRowView().get(1)).getText()).isEqualTo("white with");
+        assertThat(((TextRow) payload.getRowView().get(2)).getText()).isEqualTo("oat milk");
+        assertThat(((TextRow) payload.getRowView().get(0)).getPrinterFontId()).isEqualTo(2);
+    }
+
+    @Test
+    public void willTruncateAndCenter() {
+        TableLayout tableLayout = new TableLayout.Builder()
+                .addColumn(1, Alignment.LEFT, TableLayout.Overflow.TRUNCATE)
+                .addColumn(1, Alignment.CENTER, TableLayout.Overflow.TRUNCATE)
+                .withColumnGap(0)
+                .build();
+        PrintPayload payload = new PrintPayload();
+
+        payload.appendTableRow(tableLayout, 10, "ABCDEFGH", "1");
+        payload.appendTableRow(tableLayout, 10, null, "xyz");
+
+        assertThat(payload.getRowView().size()).isEqualTo(2);
+        assertThat(((TextRow) payload.getRowView().get(0)).getText()).isEqualTo("ABCDE  1");
+        assertThat(((TextRow) payload.getRowView().get(1)).getText()).isEqualTo("      xyz");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void willRejectWrongNumberOfCells() {
+        TableLayout tableLayout = new TableLayout.Builder().addColumn(1, Alignment.LEFT, TableLayout.Overflow.WRAP).build();
+
+        new PrintPayload().appendTableRow(tableLayout, 10, "a", "b");
+    }
+}
@@ -0,0 +1,41 @@
+package com.aevi.print.model;
+
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+@Config(sdk = Build.VERSION_CODES.LOLLIPOP, manifest = Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class TextWrapperTest {
+
+    @Test
+    public void willBreakBetweenWords() {
+        assertThat(TextWrapper.wrap("Thank you for shopping with us", 12))
+                .containsExactly("Thank you ", "for shopping", "with us");
+    }
+
+    @Test
+    public void willBreakWordsLongerThanALine() {
+        assertThat(TextWrapper.wrap("Ref ABCDEFGHIJKLMNOP", 8)).containsExactly("Ref ", "ABCDEFGH", "IJKLMNOP");
+    }
+
+    @Test
+    public void willBreakAtNewLines() {
+        assertThat(TextWrapper.wrap("Line one\r\n\nLine two\n", 20)).containsExactly("Line one", " ", "Line two");
+        assertThat(TextWrapper.wrap("No columns\nknown", 0)).containsExactly("No columns", "known");
+        assertThat(TextWrapper.wrap("", 20)).isEmpty();
+    }
+
+    @Test
+    public void willCacheWrappedLines() {
+        String text = "Goods remain the property of the shop until paid in full";
+
+        assertThat(TextWrapper.wrap(text, 20)).isSameAs(TextWrapper.wrap(text, 20));
+        assertThat(TextWrapper.wrap(text, 20)).isNotSameAs(TextWrapper.wrap(text, 30));
+    }
+}